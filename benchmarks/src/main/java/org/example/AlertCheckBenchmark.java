@@ -0,0 +1,109 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 价格提醒判断（一轮全市场价格更新）：原来 checkPriceAlerts 对每条提醒查价格、比较，与 AlertIndex 只访问被穿越的目标价对比。
+ * 不含网络请求和通知发送，被触发的提醒只计数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlertCheckBenchmark {
+
+    private static final int TICKS = 16; // 预先生成的价格轮数，循环使用
+
+    @Param({ "500" })
+    public int symbolCount;
+
+    @Param({ "100", "10000" })
+    public int alertCount;
+
+    private List<String> symbols;
+    private List<BinanceCombinedServer.PriceAlert> alerts;
+    private AlertIndex index;
+    private List<Map<String, BigDecimal>> ticks;
+    private int tick;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        symbols = BenchData.symbols(symbolCount);
+        Map<String, Double> base = new HashMap<>();
+        for (String symbol : symbols)
+            base.put(symbol, 0.01 + random.nextDouble() * 1000);
+
+        // 每轮价格在基准价 ±1% 内随机游走
+        ticks = new ArrayList<>(TICKS);
+        for (int t = 0; t < TICKS; t++) {
+            Map<String, BigDecimal> prices = new HashMap<>();
+            for (String symbol : symbols) {
+                double p = base.get(symbol) * (1 + (random.nextDouble() - 0.5) * 0.02);
+                prices.put(symbol, BigDecimal.valueOf(p).setScale(6, RoundingMode.HALF_UP));
+            }
+            ticks.add(prices);
+        }
+
+        // 目标价分布在基准价 ±5% 内，大部分不会在一轮中被穿越
+        alerts = new ArrayList<>(alertCount);
+        for (int i = 0; i < alertCount; i++) {
+            String symbol = symbols.get(random.nextInt(symbolCount));
+            double target = base.get(symbol) * (1 + (random.nextDouble() - 0.5) * 0.1);
+            BinanceCombinedServer.PriceAlert alert = new BinanceCombinedServer.PriceAlert(symbol,
+                    BigDecimal.valueOf(target).setScale(6, RoundingMode.HALF_UP), "price_reached", "continuous");
+            alerts.add(alert);
+        }
+        index = AlertIndex.build(alerts);
+    }
+
+    private Map<String, BigDecimal> last() {
+        return ticks.get(tick);
+    }
+
+    private Map<String, BigDecimal> next() {
+        tick = tick + 1 == TICKS ? 0 : tick + 1;
+        return ticks.get(tick);
+    }
+
+    @Benchmark
+    public int legacyLinearScan() {
+        Map<String, BigDecimal> lastPrices = last();
+        Map<String, BigDecimal> currentPrices = next();
+        int triggered = 0;
+        for (BinanceCombinedServer.PriceAlert alert : alerts) {
+            if (!alert.enabled || !"price_reached".equals(alert.type))
+                continue;
+            BigDecimal currentPrice = currentPrices.get(alert.symbol);
+            BigDecimal lastPrice = lastPrices.get(alert.symbol);
+            if (currentPrice == null || lastPrice == null)
+                continue;
+            if (lastPrice.compareTo(alert.targetPrice) < 0 && currentPrice.compareTo(alert.targetPrice) >= 0)
+                triggered++;
+            else if (lastPrice.compareTo(alert.targetPrice) > 0 && currentPrice.compareTo(alert.targetPrice) <= 0)
+                triggered++;
+        }
+        return triggered;
+    }
+
+    @Benchmark
+    public int indexCrossed() {
+        Map<String, BigDecimal> lastPrices = last();
+        Map<String, BigDecimal> currentPrices = next();
+        int triggered = 0;
+        for (String symbol : index.symbols()) {
+            BigDecimal currentPrice = currentPrices.get(symbol);
+            BigDecimal lastPrice = lastPrices.get(symbol);
+            if (currentPrice != null && lastPrice != null)
+                triggered += index.crossed(symbol, lastPrice, currentPrice).size();
+        }
+        return triggered;
+    }
+}
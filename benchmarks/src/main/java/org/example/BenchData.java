@@ -0,0 +1,78 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 基准测试用的合成数据，不依赖网络，固定随机种子保证每次运行数据一致。
+ */
+final class BenchData {
+
+    static final String[] INTERVALS = { "5m", "10m", "15m", "30m", "40m", "50m", "60m", "120m", "240m" };
+    static final int[] WINDOW_LENGTHS = { 1, 2, 3, 6, 8, 10, 12, 24, 48 };
+    static final long KLINE_INTERVAL_MS = 5 * 60 * 1000;
+
+    private BenchData() {
+    }
+
+    static List<String> symbols(int count) {
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            list.add("SYM" + i + "USDT");
+        return list;
+    }
+
+    /** 每个币种 depth 根随机游走的 5m K 线 */
+    static Map<String, List<BinanceCombinedServer.CandleRaw>> rawKlines(List<String> symbols, int depth, long seed) {
+        Random random = new Random(seed);
+        Map<String, List<BinanceCombinedServer.CandleRaw>> map = new HashMap<>();
+        for (String symbol : symbols) {
+            double price = 0.01 + random.nextDouble() * 1000;
+            List<BinanceCombinedServer.CandleRaw> list = new ArrayList<>(depth);
+            for (int i = 0; i < depth; i++) {
+                double open = price;
+                double close = open * (1 + random.nextGaussian() * 0.01);
+                double high = Math.max(open, close) * (1 + random.nextDouble() * 0.005);
+                double low = Math.min(open, close) * (1 - random.nextDouble() * 0.005);
+                double volume = random.nextDouble() * 100000;
+                list.add(new BinanceCombinedServer.CandleRaw(i * KLINE_INTERVAL_MS, decimal(open), decimal(high),
+                        decimal(low), decimal(close), decimal(volume)));
+                price = close;
+            }
+            map.put(symbol, list);
+        }
+        return map;
+    }
+
+    /** 与 rawKlines 相同的数据写入 CandleSeries */
+    static Map<String, CandleSeries> series(Map<String, List<BinanceCombinedServer.CandleRaw>> raw, int capacity) {
+        Map<String, CandleSeries> map = new HashMap<>();
+        for (Map.Entry<String, List<BinanceCombinedServer.CandleRaw>> e : raw.entrySet()) {
+            CandleSeries series = new CandleSeries(capacity, WINDOW_LENGTHS);
+            series.reset(e.getValue());
+            map.put(e.getKey(), series);
+        }
+        return map;
+    }
+
+    /** 与币安 /fapi/v1/klines 响应格式一致的 JSON（价格、成交量为字符串，后面带上其余字段） */
+    static byte[] klineJson(List<BinanceCombinedServer.CandleRaw> candles) {
+        StringBuilder sb = new StringBuilder("[");
+        for (BinanceCombinedServer.CandleRaw c : candles) {
+            if (sb.length() > 1)
+                sb.append(',');
+            sb.append('[').append(c.openTime).append(",\"").append(c.open.toPlainString()).append("\",\"")
+                    .append(c.high.toPlainString()).append("\",\"").append(c.low.toPlainString()).append("\",\"")
+                    .append(c.close.toPlainString()).append("\",\"").append(c.volume.toPlainString()).append("\",")
+                    .append(c.openTime + KLINE_INTERVAL_MS - 1).append(",\"")
+                    .append(c.volume.multiply(c.close).toPlainString()).append("\",1234,\"")
+                    .append(c.volume.toPlainString()).append("\",\"0\",\"0\"]");
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal decimal(double v) {
+        return BigDecimal.valueOf(v).setScale(6, BigDecimal.ROUND_HALF_UP);
+    }
+}
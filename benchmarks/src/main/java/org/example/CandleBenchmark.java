@@ -0,0 +1,105 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个币种的窗口聚合：原来每次刷新对每个周期 subList + stream 求 high/low 再构造 BigDecimal 的 Candle，
+ * 与 CandleSeries / WindowAggregator 增量维护（追加一根收盘 K 线）和整段重建对比。
+ * <p>
+ * {@code candleConstructor} 单独测量 Candle 构造函数中 change / amplitude 的 BigDecimal 除法；
+ * {@code rollupAppend} 测量 1d / 1w 长窗口（CandleRollup 分层汇总）的追加与查询。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CandleBenchmark {
+
+    @Param({ "100", "576" })
+    public int historyDepth;
+
+    private List<BinanceCombinedServer.CandleRaw> raw;
+    private CandleSeries series;
+    private CandleSeries longSeries; // 1d、1w 窗口
+    private long nextOpenTime;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        List<String> symbols = BenchData.symbols(1);
+        raw = BenchData.rawKlines(symbols, historyDepth, 42).get(symbols.get(0));
+        series = new CandleSeries(historyDepth, BenchData.WINDOW_LENGTHS);
+        series.reset(raw);
+        longSeries = new CandleSeries(historyDepth, RankingEngine.windowLengths(new String[] { "1d", "1w" }));
+        longSeries.reset(raw);
+        nextOpenTime = raw.get(raw.size() - 1).openTime + BenchData.KLINE_INTERVAL_MS;
+    }
+
+    @Benchmark
+    public Object legacyAggregate() {
+        BinanceCombinedServer.Candle last = null;
+        for (String interval : BenchData.INTERVALS) {
+            int needed = Integer.parseInt(interval.replace("m", "")) / 5;
+            if (raw.size() < needed)
+                continue;
+            List<BinanceCombinedServer.CandleRaw> sub = raw.subList(raw.size() - needed, raw.size());
+            BigDecimal high = sub.stream().map(r -> r.high).max(BigDecimal::compareTo).get();
+            BigDecimal low = sub.stream().map(r -> r.low).min(BigDecimal::compareTo).get();
+            last = new BinanceCombinedServer.Candle("SYM0USDT", sub.get(0).open, high, low,
+                    sub.get(sub.size() - 1).close);
+        }
+        return last;
+    }
+
+    @Benchmark
+    public Object candleConstructor() {
+        BinanceCombinedServer.CandleRaw c = raw.get(cursor);
+        cursor = cursor + 1 == raw.size() ? 0 : cursor + 1;
+        return new BinanceCombinedServer.Candle("SYM0USDT", c.open, c.high, c.low, c.close);
+    }
+
+    @Benchmark
+    public double incrementalAppend() {
+        // 追加一根新 K 线（上一根收盘，窗口队列增量更新），然后读取全部窗口
+        BinanceCombinedServer.CandleRaw c = raw.get(cursor);
+        cursor = cursor + 1 == raw.size() ? 0 : cursor + 1;
+        series.update(nextOpenTime, c.open.doubleValue(), c.high.doubleValue(), c.low.doubleValue(),
+                c.close.doubleValue(), c.volume.doubleValue());
+        nextOpenTime += BenchData.KLINE_INTERVAL_MS;
+        WindowAggregator windows = series.windows();
+        double sum = 0;
+        for (int w = 0; w < windows.windowCount(); w++) {
+            if (windows.ready(w))
+                sum += windows.high(w) - windows.low(w);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double rollupAppend() {
+        BinanceCombinedServer.CandleRaw c = raw.get(cursor);
+        cursor = cursor + 1 == raw.size() ? 0 : cursor + 1;
+        longSeries.update(nextOpenTime, c.open.doubleValue(), c.high.doubleValue(), c.low.doubleValue(),
+                c.close.doubleValue(), c.volume.doubleValue());
+        nextOpenTime += BenchData.KLINE_INTERVAL_MS;
+        WindowAggregator windows = longSeries.windows();
+        double sum = 0;
+        for (int w = 0; w < windows.windowCount(); w++) {
+            if (windows.ready(w))
+                sum += windows.high(w) - windows.low(w);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Object fullRebuild() {
+        series.windows().rebuild();
+        return series;
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个 K 线响应的解析 + 写入 CandleSeries：原来的「String → Gson JsonArray → BigDecimal」与
+ * KlineParser 流式解析对比。3 根对应增量刷新，100 根对应全量刷新。
+ * <p>
+ * 分配量用 {@code java -jar target/benchmarks.jar KlineParse -prof gc} 查看 gc.alloc.rate.norm。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KlineParseBenchmark {
+
+    @Param({ "3", "100" })
+    public int klineCount;
+
+    private byte[] json;
+    private CandleSeries series;
+
+    @Setup
+    public void setup() {
+        List<String> symbols = BenchData.symbols(1);
+        json = BenchData.klineJson(BenchData.rawKlines(symbols, klineCount, 42).get(symbols.get(0)));
+        series = new CandleSeries(576, BenchData.WINDOW_LENGTHS);
+    }
+
+    @Benchmark
+    public Object legacyGsonTree() {
+        // 与原 fetch5mKlines 一致：先把响应读成 String，再建树、逐字段转 BigDecimal
+        String body = new String(json, StandardCharsets.UTF_8);
+        JsonArray arr = new Gson().fromJson(body, JsonArray.class);
+        List<BinanceCombinedServer.CandleRaw> list = new ArrayList<>();
+        for (JsonElement el : arr) {
+            JsonArray k = el.getAsJsonArray();
+            long openTime = k.get(0).getAsLong();
+            BigDecimal open = k.get(1).getAsBigDecimal();
+            BigDecimal high = k.get(2).getAsBigDecimal();
+            BigDecimal low = k.get(3).getAsBigDecimal();
+            BigDecimal close = k.get(4).getAsBigDecimal();
+            BigDecimal volume = k.get(5).getAsBigDecimal();
+            list.add(new BinanceCombinedServer.CandleRaw(openTime, open, high, low, close, volume));
+        }
+        series.reset(list);
+        return series;
+    }
+
+    @Benchmark
+    public Object streaming() throws IOException {
+        series.reset(KlineParser.parse(new ByteArrayInputStream(json), klineCount));
+        return series;
+    }
+}
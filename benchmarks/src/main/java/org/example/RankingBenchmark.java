@@ -0,0 +1,110 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 排行榜：原来的「全部币种 BigDecimal 聚合 + 全量排序 + limit」与 RankingEngine（TopK + 周期并行）对比。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankingBenchmark {
+
+    private static final int TOP = 20;
+
+    @Param({ "500", "5000" })
+    public int symbolCount;
+
+    @Param({ "100", "576" })
+    public int historyDepth;
+
+    private List<String> symbols;
+    private Map<String, List<BinanceCombinedServer.CandleRaw>> raw;
+    private Map<String, CandleSeries> series;
+    private RankingEngine changeOnly;
+    private RankingEngine changeAndAmplitude;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        symbols = BenchData.symbols(symbolCount);
+        raw = BenchData.rawKlines(symbols, historyDepth, 42);
+        series = BenchData.series(raw, 576);
+        pool = new ForkJoinPool(Math.min(BenchData.INTERVALS.length, Runtime.getRuntime().availableProcessors()));
+
+        Map<RankingEngine.Metric, Integer> metrics = new EnumMap<>(RankingEngine.Metric.class);
+        metrics.put(RankingEngine.Metric.CHANGE, TOP);
+        changeOnly = new RankingEngine(BenchData.INTERVALS, metrics, pool);
+        metrics.put(RankingEngine.Metric.AMPLITUDE, TOP);
+        changeAndAmplitude = new RankingEngine(BenchData.INTERVALS, metrics, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Object legacyFullSort() {
+        Map<String, Map<String, BinanceCombinedServer.Candle>> allMap = new HashMap<>();
+        for (String symbol : symbols) {
+            List<BinanceCombinedServer.CandleRaw> klines = raw.get(symbol);
+            Map<String, BinanceCombinedServer.Candle> map = new HashMap<>();
+            for (String interval : BenchData.INTERVALS) {
+                int needed = Integer.parseInt(interval.replace("m", "")) / 5;
+                if (klines.size() >= needed) {
+                    List<BinanceCombinedServer.CandleRaw> sub = klines.subList(klines.size() - needed, klines.size());
+                    BigDecimal high = sub.stream().map(r -> r.high).max(BigDecimal::compareTo).get();
+                    BigDecimal low = sub.stream().map(r -> r.low).min(BigDecimal::compareTo).get();
+                    map.put(interval, new BinanceCombinedServer.Candle(symbol, sub.get(0).open, high, low,
+                            sub.get(sub.size() - 1).close));
+                }
+            }
+            allMap.put(symbol, map);
+        }
+        Map<String, Map<String, List<BinanceCombinedServer.Candle>>> result = new LinkedHashMap<>();
+        for (String interval : BenchData.INTERVALS) {
+            List<BinanceCombinedServer.Candle> candles = new ArrayList<>();
+            for (String symbol : symbols) {
+                Map<String, BinanceCombinedServer.Candle> m = allMap.get(symbol);
+                BinanceCombinedServer.Candle c = m.get(interval);
+                Map<String, Map<String, BigDecimal>> others = new HashMap<>();
+                for (String i2 : BenchData.INTERVALS) {
+                    BinanceCombinedServer.Candle c2 = m.get(i2);
+                    Map<String, BigDecimal> map2 = new HashMap<>();
+                    map2.put("change", c2.change);
+                    map2.put("amplitude", c2.amplitude);
+                    others.put(i2, map2);
+                }
+                c.others = others;
+                candles.add(c);
+            }
+            Map<String, List<BinanceCombinedServer.Candle>> intervalMap = new HashMap<>();
+            intervalMap.put("change", candles.stream()
+                    .sorted((a, b) -> b.change.compareTo(a.change))
+                    .limit(TOP)
+                    .collect(Collectors.toList()));
+            result.put(interval, intervalMap);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Object topKChange() {
+        return changeOnly.rank(symbols, series);
+    }
+
+    @Benchmark
+    public Object topKChangeAndAmplitude() {
+        return changeAndAmplitude.rank(symbols, series);
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 离线回放整条流水线：每次回放 symbolCount 个币种 × steps 根 5m K 线（K 线写入与窗口聚合、各周期排行、强势币规则、
+ * 由 K 线推出的价格路径检查价格提醒）。单位为每次回放的毫秒数，吞吐 = symbolCount × steps / 耗时。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayBenchmark {
+
+    @Param({ "500" })
+    public int symbolCount;
+
+    @Param({ "2016" }) // 一周
+    public int steps;
+
+    @Param({ "0", "1000" })
+    public int alertCount;
+
+    private List<ReplayEngine.Input> inputs;
+    private ReplayEngine engine;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        List<String> symbols = BenchData.symbols(symbolCount);
+        Map<String, List<BinanceCombinedServer.CandleRaw>> raw = BenchData.rawKlines(symbols, steps, 42);
+        inputs = new ArrayList<>(symbolCount);
+        for (String symbol : symbols)
+            inputs.add(new ReplayEngine.Input(symbol, KlineBatch.of(raw.get(symbol)), null));
+
+        // 目标价分布在各币种首根开盘价 ±5% 内
+        Random random = new Random(42);
+        List<BinanceCombinedServer.PriceAlert> alerts = new ArrayList<>(alertCount);
+        for (int i = 0; i < alertCount; i++) {
+            String symbol = symbols.get(random.nextInt(symbolCount));
+            double target = raw.get(symbol).get(0).open.doubleValue() * (1 + (random.nextDouble() - 0.5) * 0.1);
+            alerts.add(new BinanceCombinedServer.PriceAlert(symbol,
+                    BigDecimal.valueOf(target).setScale(6, RoundingMode.HALF_UP), "price_reached", "continuous"));
+        }
+
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        Map<RankingEngine.Metric, Integer> metrics = new EnumMap<>(RankingEngine.Metric.class);
+        metrics.put(RankingEngine.Metric.CHANGE, 20);
+        // 不存在的规则文件 -> 内置默认规则
+        StrongRuleEngine rules = new StrongRuleEngine(Paths.get("strong_rules.bench-missing.json"), pool);
+        engine = new ReplayEngine(BenchData.INTERVALS, metrics, 576, rules, alerts, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Object replay() {
+        return engine.run(inputs);
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /data 的序列化：排行榜结果转 JSON（与 BinanceCombinedServer.PRETTY_GSON 相同的配置），
+ * 以及生成 JsonSnapshot（UTF-8 字节 + gzip + ETag），每轮刷新执行一次。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({ "500", "5000" })
+    public int symbolCount;
+
+    private final Gson prettyGson = new GsonBuilder().setPrettyPrinting().create();
+    private Map<String, Map<String, List<BinanceCombinedServer.Candle>>> rank;
+    private String json;
+
+    @Setup
+    public void setup() {
+        List<String> symbols = BenchData.symbols(symbolCount);
+        Map<String, CandleSeries> series = BenchData.series(BenchData.rawKlines(symbols, 100, 42), 576);
+        Map<RankingEngine.Metric, Integer> metrics = new EnumMap<>(RankingEngine.Metric.class);
+        metrics.put(RankingEngine.Metric.CHANGE, 20);
+        metrics.put(RankingEngine.Metric.AMPLITUDE, 20);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        rank = new RankingEngine(BenchData.INTERVALS, metrics, pool).rank(symbols, series);
+        pool.shutdown();
+        json = prettyGson.toJson(rank);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return prettyGson.toJson(rank);
+    }
+
+    @Benchmark
+    public Object snapshotOnly() {
+        return JsonSnapshot.of(json);
+    }
+
+    @Benchmark
+    public Object toJsonAndSnapshot() {
+        return JsonSnapshot.of(prettyGson.toJson(rank));
+    }
+}
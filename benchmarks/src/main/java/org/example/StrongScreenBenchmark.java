@@ -0,0 +1,105 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 强势币筛选：原来逐个币种顺序执行写死的两组条件，与 StrongRuleEngine（并行 + 按 K 线版本号复用结果）对比。
+ * <p>
+ * changedPercent 为每轮刷新中最新 K 线发生变化的币种比例：推送模式下通常只有一部分币种在两次刷新之间有新成交，
+ * 100 表示全部重新计算。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrongScreenBenchmark {
+
+    private static final int STRONG_KLINE_COUNT = 6;
+
+    @Param({ "500", "5000" })
+    public int symbolCount;
+
+    @Param({ "100", "576" })
+    public int historyDepth;
+
+    @Param({ "10", "100" })
+    public int changedPercent;
+
+    private List<String> symbols;
+    private Map<String, CandleSeries> series;
+    private StrongRuleEngine engine;
+    private int rotation;
+
+    @Setup
+    public void setup() {
+        symbols = BenchData.symbols(symbolCount);
+        series = BenchData.series(BenchData.rawKlines(symbols, historyDepth, 42), historyDepth);
+        // 不存在的规则文件 -> 内置默认规则，与 legacy 条件相同
+        engine = new StrongRuleEngine(Paths.get("strong_rules.bench-missing.json"), ForkJoinPool.commonPool());
+        engine.evaluate(symbols, series);
+    }
+
+    // 把 changedPercent 比例的币种的最后一根 K 线原样重写一次，只让版本号变化
+    private void touch() {
+        int changed = symbolCount * changedPercent / 100;
+        for (int i = 0; i < changed; i++) {
+            CandleSeries s = series.get(symbols.get((rotation + i) % symbolCount));
+            synchronized (s) {
+                int last = s.size() - 1;
+                s.update(s.openTime(last), s.open(last), s.high(last), s.low(last), s.close(last), s.volume(last));
+            }
+        }
+        rotation = (rotation + changed) % symbolCount;
+    }
+
+    @Benchmark
+    public Object legacySequential() {
+        touch();
+        List<String> strongs = new ArrayList<>();
+        for (String symbol : symbols) {
+            CandleSeries s = series.get(symbol);
+            synchronized (s) {
+                if (s.size() >= STRONG_KLINE_COUNT && legacyIsStrong(s))
+                    strongs.add(symbol);
+            }
+        }
+        return strongs;
+    }
+
+    @Benchmark
+    public Object ruleEngine() {
+        touch();
+        return engine.evaluate(symbols, series);
+    }
+
+    // 与 StrongRuleEngine 引入前 BinanceCombinedServer.isStrongCoin 的判断相同（去掉日志）
+    private static boolean legacyIsStrong(CandleSeries series) {
+        int last = series.size() - 1;
+        int first = series.size() - STRONG_KLINE_COUNT;
+        double highMax = 0;
+        for (int i = first; i <= last; i++)
+            highMax = Math.max(highMax, series.high(i));
+        double current = series.close(last);
+        double firstOpen = series.open(first);
+        double currentOpen = series.open(last);
+
+        double denominator = highMax - firstOpen;
+        double posRatio = denominator > 0 ? (current - firstOpen) / denominator : 0;
+        double cumChange = firstOpen > 0 ? (current - firstOpen) * 100 / firstOpen : 0;
+        if (posRatio >= 0.7 && cumChange >= 9)
+            return true;
+
+        double current5mChange = currentOpen > 0 ? (current - currentOpen) * 100 / currentOpen : 0;
+        double previousMaxVolume = 0;
+        for (int i = first; i < last; i++)
+            previousMaxVolume = Math.max(previousMaxVolume, series.volume(i));
+        return previousMaxVolume > 0 && series.volume(last) >= previousMaxVolume * 4.0 && current5mChange >= 5;
+    }
+}
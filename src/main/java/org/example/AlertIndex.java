@@ -0,0 +1,119 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 启用中的提醒的只读索引，提醒列表变化时整体重建后替换。
+ * <p>
+ * 价格提醒按交易对分组，每组以目标价为键放在 {@link TreeMap} 中。价格从 last 变为 current 时：
+ * <ul>
+ * <li>上涨：只访问目标价在 (last, current] 内的提醒</li>
+ * <li>下跌：只访问目标价在 [current, last) 内的提醒</li>
+ * </ul>
+ * 与逐条判断「last &lt; target &amp;&amp; current &gt;= target」或「last &gt; target &amp;&amp; current &lt;= target」等价，
+ * 每次检查的开销取决于被穿越的提醒数而不是提醒总数。
+ * <p>
+ * 盈亏类提醒依赖整个账户的持仓数据，数量很少，仍按列表逐条判断。
+ */
+final class AlertIndex {
+
+    static final AlertIndex EMPTY = build(Collections.emptyList());
+
+    private final Map<String, NavigableMap<BigDecimal, List<BinanceCombinedServer.PriceAlert>>> priceTargets;
+    private final List<BinanceCombinedServer.PriceAlert> pnlAlerts;
+    private final int priceAlertCount;
+
+    private AlertIndex(Map<String, NavigableMap<BigDecimal, List<BinanceCombinedServer.PriceAlert>>> priceTargets,
+            List<BinanceCombinedServer.PriceAlert> pnlAlerts, int priceAlertCount) {
+        this.priceTargets = priceTargets;
+        this.pnlAlerts = pnlAlerts;
+        this.priceAlertCount = priceAlertCount;
+    }
+
+    static AlertIndex build(Collection<BinanceCombinedServer.PriceAlert> alerts) {
+        Map<String, NavigableMap<BigDecimal, List<BinanceCombinedServer.PriceAlert>>> priceTargets = new HashMap<>();
+        List<BinanceCombinedServer.PriceAlert> pnlAlerts = new ArrayList<>();
+        int priceAlertCount = 0;
+        for (BinanceCombinedServer.PriceAlert alert : alerts) {
+            if (!alert.enabled)
+                continue;
+            if ("price_reached".equals(alert.type)) {
+                if (alert.symbol == null || alert.symbol.isEmpty() || alert.targetPrice == null)
+                    continue;
+                priceTargets.computeIfAbsent(alert.symbol, s -> new TreeMap<>())
+                        .computeIfAbsent(alert.targetPrice, t -> new ArrayList<>(1)).add(alert);
+                priceAlertCount++;
+            } else if (isPnlType(alert.type)) {
+                pnlAlerts.add(alert);
+            }
+        }
+        return new AlertIndex(priceTargets, pnlAlerts, priceAlertCount);
+    }
+
+    static boolean isPnlType(String type) {
+        return "profit_reached".equals(type) || "loss_reached".equals(type) || "profit_step".equals(type)
+                || "loss_step".equals(type);
+    }
+
+    /** 提醒已启用且冷却时间已过（checkPriceCrossing 与离线回放共用） */
+    static boolean ready(BinanceCombinedServer.PriceAlert alert, long now) {
+        return alert.enabled && now - alert.lastTriggerTime >= (long) alert.cooldownSeconds * 1000;
+    }
+
+    /**
+     * 记录一次触发；一次性提醒触发后禁用。
+     *
+     * @return 提醒是否被禁用（需要重建索引）
+     */
+    static boolean markTriggered(BinanceCombinedServer.PriceAlert alert, long now) {
+        alert.lastTriggerTime = now;
+        if (!"once".equals(alert.frequency))
+            return false;
+        alert.isTriggered = true;
+        alert.enabled = false;
+        return true;
+    }
+
+    boolean isEmpty() {
+        return priceAlertCount == 0 && pnlAlerts.isEmpty();
+    }
+
+    boolean hasPriceAlerts() {
+        return priceAlertCount > 0;
+    }
+
+    boolean hasPnlAlerts() {
+        return !pnlAlerts.isEmpty();
+    }
+
+    int priceAlertCount() {
+        return priceAlertCount;
+    }
+
+    /** 有价格提醒的交易对 */
+    Set<String> symbols() {
+        return priceTargets.keySet();
+    }
+
+    List<BinanceCombinedServer.PriceAlert> pnlAlerts() {
+        return pnlAlerts;
+    }
+
+    /** 价格从 last 变为 current 时被穿越（含到达）的提醒，按穿越顺序排列 */
+    List<BinanceCombinedServer.PriceAlert> crossed(String symbol, BigDecimal last, BigDecimal current) {
+        NavigableMap<BigDecimal, List<BinanceCombinedServer.PriceAlert>> targets = priceTargets.get(symbol);
+        int cmp = last.compareTo(current);
+        if (targets == null || cmp == 0)
+            return Collections.emptyList();
+        NavigableMap<BigDecimal, List<BinanceCombinedServer.PriceAlert>> range = cmp < 0
+                ? targets.subMap(last, false, current, true)
+                : targets.subMap(current, true, last, false).descendingMap();
+        if (range.isEmpty())
+            return Collections.emptyList();
+        List<BinanceCombinedServer.PriceAlert> result = new ArrayList<>();
+        for (List<BinanceCombinedServer.PriceAlert> list : range.values())
+            result.addAll(list);
+        return result;
+    }
+}
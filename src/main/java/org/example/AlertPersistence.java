@@ -0,0 +1,130 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 价格提醒的延迟写入（write-behind）持久化。
+ * <p>
+ * 磁盘上是一份快照（{@code price_alerts.json}，格式不变）加一个只追加的变更日志（{@code price_alerts.json.log}，
+ * 每行一条提醒的完整 JSON，按 id 覆盖快照中的同名提醒）：
+ * <ul>
+ * <li>提醒触发后只调用 {@link #markDirty} 记录脏提醒，后台每 flushIntervalMs 把脏提醒追加到日志，
+ * 同一提醒在一个周期内多次变化只写一行</li>
+ * <li>日志超过 {@link #COMPACT_THRESHOLD} 行时重写快照并清空日志</li>
+ * <li>快照的原子替换和日志的回放由 {@link SnapshotLog} 负责</li>
+ * <li>整体替换（POST /price-alerts）直接重写快照；正常退出时由 shutdown hook 刷出剩余的变更</li>
+ * </ul>
+ */
+final class AlertPersistence {
+
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private final SnapshotLog files;
+    private final long flushIntervalMs;
+    private final Supplier<List<BinanceCombinedServer.PriceAlert>> alerts;
+    private final Gson prettyGson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson gson = new Gson();
+    private final Map<String, BinanceCombinedServer.PriceAlert> dirty = new LinkedHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "alert-persistence");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** alerts 提供当前完整的提醒列表，重写快照时使用 */
+    AlertPersistence(Path snapshotPath, long flushIntervalMs, Supplier<List<BinanceCombinedServer.PriceAlert>> alerts) {
+        this.files = new SnapshotLog(snapshotPath, "价格提醒");
+        this.flushIntervalMs = flushIntervalMs;
+        this.alerts = alerts;
+    }
+
+    void start() {
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "alert-persistence-shutdown"));
+    }
+
+    // ------------------- 加载 -------------------
+
+    /** 读取快照并回放日志；快照不存在时返回空列表 */
+    synchronized List<BinanceCombinedServer.PriceAlert> load() throws IOException {
+        Map<String, BinanceCombinedServer.PriceAlert> byId = new LinkedHashMap<>();
+        byte[] snapshot = files.readSnapshot();
+        if (snapshot != null) {
+            BinanceCombinedServer.PriceAlert[] arr = gson.fromJson(new String(snapshot, StandardCharsets.UTF_8),
+                    BinanceCombinedServer.PriceAlert[].class);
+            if (arr != null) {
+                for (BinanceCombinedServer.PriceAlert alert : arr)
+                    byId.put(alert.id, alert);
+            }
+        }
+        files.replay(entry -> {
+            BinanceCombinedServer.PriceAlert alert = gson.fromJson(entry, BinanceCombinedServer.PriceAlert.class);
+            if (alert == null || alert.id == null)
+                return false;
+            byId.put(alert.id, alert);
+            return true;
+        });
+        return new ArrayList<>(byId.values());
+    }
+
+    // ------------------- 写入 -------------------
+
+    /** 记录一条提醒发生了变化（例如触发时间、启用状态），由后台合并写入 */
+    synchronized void markDirty(BinanceCombinedServer.PriceAlert alert) {
+        dirty.put(alert.id, alert);
+    }
+
+    /** 提醒列表被整体替换：立即重写快照并清空日志 */
+    synchronized void saveAll() throws IOException {
+        writeSnapshot();
+        dirty.clear();
+    }
+
+    /** 把脏提醒追加到日志，日志过长时压缩成快照 */
+    synchronized void flush() throws IOException {
+        if (dirty.isEmpty())
+            return;
+        // 写入失败时脏提醒保留在 dirty 中，下个周期重试
+        if (files.entries() + dirty.size() > COMPACT_THRESHOLD) {
+            writeSnapshot();
+            dirty.clear();
+            return;
+        }
+        // 已经被整体替换掉的提醒不再写入，否则加载时会被日志重新加回来
+        Set<BinanceCombinedServer.PriceAlert> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(alerts.get());
+        StringBuilder sb = new StringBuilder();
+        int written = 0;
+        for (BinanceCombinedServer.PriceAlert alert : dirty.values()) {
+            if (current.contains(alert)) {
+                sb.append(gson.toJson(alert)).append('\n');
+                written++;
+            }
+        }
+        if (written > 0)
+            files.append(sb.toString(), written);
+        dirty.clear();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Throwable e) {
+            System.err.println("❌ 价格提醒写入失败: " + e.getMessage());
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        files.writeSnapshot(prettyGson.toJson(alerts.get()).getBytes(StandardCharsets.UTF_8), 0);
+    }
+}
@@ -0,0 +1,270 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 山寨币合约指数（AltFuturesIndex）：每根 5m K 线收盘后，取最近 30 分钟成交额最大的前 N 个币种，
+ * 按成交额加权计算 30 分钟涨跌幅：
+ *
+ * <pre>
+ * index = Σ(ΔP_i × V_i) / ΣV_i
+ * ΔP_i  = (收盘价 - 30 分钟前开盘价) / 30 分钟前开盘价 × 100
+ * V_i   = Σ(成交量 × 收盘价)，即 30 分钟成交额的近似值
+ * </pre>
+ *
+ * 完全基于内存中的 {@link CandleSeries} 计算，不额外请求接口。每个收盘时间点只计算一次并追加到历史，
+ * 刷新间隔内错过的收盘点（例如按需刷新模式下无人访问）在下一次更新时用缓冲区中的历史 K 线补算。
+ * <p>
+ * 历史保存在 {@link TimeSeriesStore}（每条记录为 时间戳 + 指数值），{@link #range} 按时间二分定位区间，
+ * 点数超过上限时用 LTTB 降采样。
+ */
+final class AltFuturesIndex {
+
+    /** 不计入山寨币指数的主流币 */
+    private static final Set<String> EXCLUDED = new HashSet<>(Arrays.asList("BTCUSDT", "ETHUSDT"));
+    private static final double READY_RATIO = 0.9; // 九成币种拿到收盘 K 线后即可计算
+
+    private final int poolSize;
+    private final int klineCount;
+    private final long intervalMs;
+    private final TimeSeriesStore store;
+
+    AltFuturesIndex(int poolSize, int klineCount, long intervalMs, TimeSeriesStore store) {
+        this.poolSize = poolSize;
+        this.klineCount = klineCount;
+        this.intervalMs = intervalMs;
+        this.store = store;
+    }
+
+    // ------------------- 历史 -------------------
+
+    long size() {
+        return store.size();
+    }
+
+    long lastTime() {
+        return store.isEmpty() ? 0 : store.lastTimestamp();
+    }
+
+    /** 追加一个点，时间不晚于最后一个点的忽略 */
+    boolean append(long timestamp, double value) throws IOException {
+        return store.append(timestamp, value);
+    }
+
+    void flush() {
+        store.flush();
+    }
+
+    /** 从旧的 JSON 历史迁移（按时间排序，重复或更早的点忽略） */
+    void load(List<BinanceCombinedServer.IndexPoint> points) throws IOException {
+        List<BinanceCombinedServer.IndexPoint> sorted = new ArrayList<>(points);
+        sorted.sort(Comparator.comparingLong(BinanceCombinedServer.IndexPoint::getTimestamp));
+        for (BinanceCombinedServer.IndexPoint p : sorted) {
+            if (p.value != null)
+                append(p.timestamp, p.value.doubleValue());
+        }
+    }
+
+    /** [from, to] 区间内的点，maxPoints > 0 且点数超出时用 LTTB 降采样 */
+    List<BinanceCombinedServer.IndexPoint> range(long from, long to, int maxPoints) {
+        long count = store.count(from, to);
+        List<BinanceCombinedServer.IndexPoint> result = new ArrayList<>();
+        if (count == 0)
+            return result;
+        long[] times = new long[(int) count];
+        double[] values = new double[(int) count];
+        int[] n = { 0 };
+        store.scan(from, to, (t, v) -> {
+            if (n[0] < times.length) { // 扫描期间可能有新点追加
+                times[n[0]] = t;
+                values[n[0]] = v[0];
+                n[0]++;
+            }
+        });
+        if (maxPoints <= 0 || n[0] <= maxPoints) {
+            for (int i = 0; i < n[0]; i++)
+                result.add(new BinanceCombinedServer.IndexPoint(times[i], values[i]));
+        } else {
+            for (int i : lttb(times, values, 0, n[0], maxPoints))
+                result.add(new BinanceCombinedServer.IndexPoint(times[i], values[i]));
+        }
+        return result;
+    }
+
+    // ------------------- 计算 -------------------
+
+    /**
+     * 为最后一个点之后、已经收盘的每个 5m 时间点计算指数并追加。
+     *
+     * @return 新增的点数
+     */
+    int update(Collection<String> symbols, Map<String, CandleSeries> cache, long now) throws IOException {
+        long latest = now / intervalMs * intervalMs; // 最近一个已经到达的收盘时间点
+        long first = earliestComputable(symbols, cache);
+        long last = lastTime();
+        long start = last > 0 ? Math.max(first, (last / intervalMs + 1) * intervalMs) : first;
+        int added = 0;
+        for (long closeTime = start; closeTime <= latest; closeTime += intervalMs) {
+            // 最新的收盘点要等大多数币种拿到收盘后的数据，错过的历史点直接计算
+            if (closeTime == latest && !closedForMost(symbols, cache, closeTime))
+                break;
+            double value = compute(symbols, cache, closeTime);
+            if (!Double.isNaN(value) && append(closeTime, value))
+                added++;
+        }
+        return added;
+    }
+
+    /** 收盘时间为 closeTime 的指数值（该时间点之前 klineCount 根 K 线），数据不足时为 NaN */
+    double compute(Collection<String> symbols, Map<String, CandleSeries> cache, long closeTime) {
+        String[] names = symbols.toArray(new String[0]);
+        double[] change = new double[names.length];
+        double[] tradeValue = new double[names.length];
+        Arrays.fill(tradeValue, Double.NaN);
+        long firstOpen = closeTime - klineCount * intervalMs;
+        for (int s = 0; s < names.length; s++) {
+            if (EXCLUDED.contains(names[s]))
+                continue;
+            CandleSeries series = cache.get(names[s]);
+            if (series == null)
+                continue;
+            synchronized (series) {
+                // 只使用已收盘的 K 线：缓冲区里必须已经有 closeTime 之后的一根
+                if (series.isEmpty() || series.lastOpenTime() < closeTime)
+                    continue;
+                int end = indexOf(series, closeTime - intervalMs);
+                int begin = end - klineCount + 1;
+                if (end < 0 || begin < 0 || series.openTime(begin) != firstOpen)
+                    continue;
+                double open = series.open(begin);
+                if (open <= 0)
+                    continue;
+                double value = 0;
+                for (int i = begin; i <= end; i++)
+                    value += series.volume(i) * series.close(i);
+                change[s] = (series.close(end) - open) / open * 100;
+                tradeValue[s] = value;
+            }
+        }
+        double weighted = 0, total = 0;
+        for (int s : RankingEngine.topK(tradeValue, poolSize)) {
+            weighted += change[s] * tradeValue[s];
+            total += tradeValue[s];
+        }
+        return total > 0 ? weighted / total : Double.NaN;
+    }
+
+    // openTime 对应的下标，不存在时为 -1；K 线连续时直接按间隔定位
+    private int indexOf(CandleSeries series, long openTime) {
+        int guess = series.size() - 1 - (int) ((series.lastOpenTime() - openTime) / intervalMs);
+        if (guess >= 0 && guess < series.size() && series.openTime(guess) == openTime)
+            return guess;
+        int lo = 0, hi = series.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long t = series.openTime(mid);
+            if (t == openTime)
+                return mid;
+            if (t < openTime)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return -1;
+    }
+
+    private boolean closedForMost(Collection<String> symbols, Map<String, CandleSeries> cache, long closeTime) {
+        int total = 0, closed = 0;
+        for (String symbol : symbols) {
+            CandleSeries series = cache.get(symbol);
+            if (series == null)
+                continue;
+            synchronized (series) {
+                if (series.isEmpty())
+                    continue;
+                total++;
+                if (series.lastOpenTime() >= closeTime)
+                    closed++;
+            }
+        }
+        return total > 0 && closed >= total * READY_RATIO;
+    }
+
+    // 缓冲区中最早可以计算的收盘时间点（取各币种中位数，避免个别新上线币种影响）
+    private long earliestComputable(Collection<String> symbols, Map<String, CandleSeries> cache) {
+        List<Long> firsts = new ArrayList<>();
+        for (String symbol : symbols) {
+            CandleSeries series = cache.get(symbol);
+            if (series == null)
+                continue;
+            synchronized (series) {
+                if (!series.isEmpty())
+                    firsts.add(series.openTime(0));
+            }
+        }
+        if (firsts.isEmpty())
+            return Long.MAX_VALUE;
+        Collections.sort(firsts);
+        return firsts.get(firsts.size() / 2) + klineCount * intervalMs;
+    }
+
+    // ------------------- 降采样 -------------------
+
+    /**
+     * Largest-Triangle-Three-Buckets 降采样：保留首尾两点，中间分成 threshold - 2 个桶，
+     * 每个桶选出与前一个选中点、下一个桶均值构成三角形面积最大的点，能保留曲线的峰谷形状。
+     *
+     * @return 选中点在原数组中的下标（升序）
+     */
+    static int[] lttb(long[] t, double[] v, int from, int to, int threshold) {
+        int n = to - from;
+        if (threshold >= n) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++)
+                all[i] = from + i;
+            return all;
+        }
+        if (threshold < 3) // 桶数不足，只保留最新的点（以及第一个点）
+            return threshold == 2 ? new int[] { from, to - 1 } : new int[] { to - 1 };
+        int[] selected = new int[threshold];
+        int k = 0;
+        selected[k++] = from;
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int a = from;
+        for (int b = 0; b < threshold - 2; b++) {
+            // 下一个桶的平均点
+            int nextStart = from + 1 + (int) ((b + 1) * bucketSize);
+            int nextEnd = Math.min(from + 1 + (int) ((b + 2) * bucketSize), to);
+            if (b == threshold - 3) {
+                nextStart = to - 1;
+                nextEnd = to;
+            }
+            double avgT = 0, avgV = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgT += t[i];
+                avgV += v[i];
+            }
+            int count = Math.max(1, nextEnd - nextStart);
+            avgT /= count;
+            avgV /= count;
+
+            // 当前桶中面积最大的点
+            int start = from + 1 + (int) (b * bucketSize);
+            int end = from + 1 + (int) ((b + 1) * bucketSize);
+            double maxArea = -1;
+            int best = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((t[a] - avgT) * (v[i] - v[a]) - (t[a] - t[i]) * (avgV - v[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = i;
+                }
+            }
+            selected[k++] = best;
+            a = best;
+        }
+        selected[k] = to - 1;
+        return selected;
+    }
+}
@@ -4,69 +4,178 @@ import com.google.gson.*;
 import com.google.gson.annotations.SerializedName;
 import spark.Spark;
 
-import javax.net.ssl.HttpsURLConnection;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class BinanceCombinedServer {
 
     // ------------------- 公共配置 -------------------
-    private static final String EXCHANGE_INFO_URL = "https://fapi.binance.com/fapi/v1/exchangeInfo";
-    private static final String KLINES_URL = "https://fapi.binance.com/fapi/v1/klines";
-    private static final String TICKER_PRICE_URL = "https://fapi.binance.com/fapi/v1/ticker/price";
-    private static final String POSITION_RISK_URL = "https://fapi.binance.com/fapi/v2/positionRisk";
-    private static final String WX_PUSHER_URL = "https://wxpusher.zjiecode.com/api/send/message/simple-push";
+    // 合约 REST 地址，可指向本地模拟服务（org.example.mock.MockBinanceServer）做压测
+    private static final String FAPI_BASE_URL = getenvOrDefault("binance_fapi_base", "https://fapi.binance.com");
+    private static final String EXCHANGE_INFO_URL = FAPI_BASE_URL + "/fapi/v1/exchangeInfo";
+    private static final String KLINES_URL = FAPI_BASE_URL + "/fapi/v1/klines";
+    private static final String TICKER_PRICE_URL = FAPI_BASE_URL + "/fapi/v1/ticker/price";
+    private static final String POSITION_RISK_URL = FAPI_BASE_URL + "/fapi/v2/positionRisk";
+    private static final String LEVERAGE_BRACKET_URL = FAPI_BASE_URL + "/fapi/v1/leverageBracket";
+    private static final String PREMIUM_INDEX_URL = FAPI_BASE_URL + "/fapi/v1/premiumIndex";
+    private static final String LISTEN_KEY_URL = FAPI_BASE_URL + "/fapi/v1/listenKey";
+    private static final String WX_PUSHER_URL = getenvOrDefault("wxpusher_url",
+            "https://wxpusher.zjiecode.com/api/send/message/simple-push");
     private static final String WX_PUSHER_SPT = "SPT_czS4n18uCRSQTUJtPSr1ZiRa3737";
+    // 🌟 通知异步发送：提醒判断只入队，同一接收方的通知按最小间隔发送，期间到达的合并成一条摘要
+    private static final NotificationDispatcher NOTIFIER = new NotificationDispatcher(WX_PUSHER_URL,
+            Integer.parseInt(getenvOrDefault("wxpusher_workers", "2")), 1000,
+            Long.parseLong(getenvOrDefault("wxpusher_min_interval_ms", "1000")));
 
     // 🌟 币安 API Key（用于获取 MMR 数据）
     private static final String BINANCE_API_KEY = "piFGDiG2hwjXzKiC0OfoP6CMhHSGcyWVDBhJlFNR7EZuS0ooZodwOScTQrx9uOXk";
     private static final String BINANCE_SECRET_KEY = "UpUsxSklT2PCfxYgoDmMrQMMUoTTY4k73pEYNs9Gxg9vGpSdaFjrnhw13eHjUl4B";
-    private static final int THREADS = 50;
     private static final int DEFAULT_REFRESH_SECONDS = 35;
-    private static final String[] INTERVALS = { "5m", "10m", "15m", "30m", "40m", "50m", "60m", "120m", "240m" };
+    // 🌟 排行榜周期，rank_intervals 可追加 1d、1w 等长周期（超过 240m 的窗口由高周期 K 线分层汇总，不需要拉取更多 5m）
+    private static final String[] INTERVALS = RankingEngine.intervals(System.getenv("rank_intervals"));
+    // 每个 INTERVALS 对应的 5m K 线根数，由 CandleSeries 内的 WindowAggregator 增量维护
+    private static final int[] WINDOW_LENGTHS = RankingEngine.windowLengths(INTERVALS);
     private static final int TOP_CHANGE = 20;
     private static final int TOP_AMPLITUDE = 20;
+    // 振幅榜默认关闭（rank_amplitude=true 开启），TopK 选择下开启的额外开销很小
+    private static final boolean RANK_AMPLITUDE = "true".equalsIgnoreCase(System.getenv("rank_amplitude"));
     private static final int KLINE_COUNT = 100; // 取最近 12 根 5m K 线
-    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS);
-
-    // 🌟 新增配置：指数文件路径
+    // 每个币种在内存中保留的 5m K 线根数（环形缓冲区容量，默认 48 小时），增量刷新会逐步把历史补满
+    private static final int KLINE_HISTORY_CAPACITY = Integer.parseInt(getenvOrDefault("kline_history", "576"));
+    private static final RankingEngine RANKING_ENGINE = new RankingEngine(INTERVALS, rankMetrics(),
+            new ForkJoinPool(Math.min(INTERVALS.length, Runtime.getRuntime().availableProcessors())));
+
+    // ------------------- 运行指标 -------------------
+    // 🌟 GET /metrics 输出 Prometheus 文本格式；计数器和直方图基于 LongAdder，并发记录无锁
+    private static final Metrics METRICS = new Metrics();
+    private static final Metrics.Histogram REFRESH_DURATION = METRICS.histogram("dashboard_refresh_duration_seconds",
+            "一轮排行榜刷新（拉取 K 线、排行、筛选、序列化）的耗时");
+    private static final Metrics.Histogram DATA_SERIALIZE_DURATION = METRICS.histogram(
+            "dashboard_data_serialize_duration_seconds", "/data 快照序列化（JSON + gzip + ETag）的耗时");
+    private static final Metrics.Histogram ALERT_CHECK_DURATION = METRICS.histogram(
+            "dashboard_alert_check_duration_seconds", "一次 checkPriceAlerts 轮询（含行情/持仓请求）的耗时");
+    private static final Metrics.Counter KLINE_FETCH_FAILED = METRICS.counter("dashboard_kline_fetch_failed_total",
+            "失败的 K 线请求数（HTTP 错误或异常）");
+    private static final Metrics.Counter KLINE_FETCH_EMPTY = METRICS.counter("dashboard_kline_fetch_empty_total",
+            "成功但没有返回 K 线的请求数");
+    private static final Metrics.Counter KLINES_FETCHED = METRICS.counter("dashboard_klines_fetched_total",
+            "通过 REST 拉取的 K 线根数");
+
+    // 币安合约 REST 每分钟请求权重上限（IP 维度），所有币安请求经调度器按权重限速
+    private static final int BINANCE_WEIGHT_LIMIT = Integer.parseInt(getenvOrDefault("binance_weight_limit", "2400"));
+    private static final RequestScheduler REQUEST_SCHEDULER = new RequestScheduler(BINANCE_WEIGHT_LIMIT,
+            PooledHttpClient.MAX_REQUESTS_PER_HOST, METRICS.histogram("binance_request_duration_seconds",
+                    "币安 REST 请求从发出到响应的耗时（不含排队）", "endpoint"));
+    // 同步等待币安响应的上限（含排队），防止限流暂停期间 Jetty 线程和提醒线程一直阻塞
+    private static final long REQUEST_TIMEOUT_MS = TimeUnit.SECONDS
+            .toMillis(Long.parseLong(getenvOrDefault("request_timeout_seconds", "30")));
+
+    // 🌟 新增配置：指数文件路径（旧的 JSON 格式，启动时迁移到 INDEX_STORE_DIR）
     private static final String INDEX_FILE_PATH = "alt_futures_index_history.json";
+    // 指数历史存储目录（内存映射的分段文件），index_retention_days 之前的段在滚动时删除
+    private static final String INDEX_STORE_DIR = getenvOrDefault("index_store_dir", "alt_futures_index");
+    private static final long INDEX_RETENTION_MS = TimeUnit.DAYS
+            .toMillis(Long.parseLong(getenvOrDefault("index_retention_days", "365")));
+    private static final int INDEX_SEGMENT_RECORDS = 8640; // 每段 30 天的 5m 点
     // 🌟 新增配置：指数计算参数
     private static final int INDEX_POOL_SIZE = 50; // Top 50 活跃币种
     private static final int INDEX_KLINE_COUNT = 6; // 30分钟 = 6 * 5m K线
+    private static final int INDEX_DEFAULT_RESOLUTION = 1000; // /index 默认最多返回的点数
 
     // ------------------- 缓存 -------------------
-    private static volatile Map<String, List<CandleRaw>> klineCache = new ConcurrentHashMap<>();
+    private static final Map<String, CandleSeries> klineCache = new ConcurrentHashMap<>();
     private static final Map<String, Map<String, List<Candle>>> rankCache = new LinkedHashMap<>();
     private static volatile List<String> strongCache = new ArrayList<>();
-    // 🌟 新增缓存：用于存储指数历史数据
-    private static volatile List<IndexPoint> indexHistoryCache = new ArrayList<>();
-    // ------------------- 指数计算控制 -------------------
-    private static final long INDEX_CALCULATION_INTERVAL_MS = 3 * 60 * 1000; // 3 分钟的毫秒数 (180,000 ms)
-    private static volatile long lastIndexCalculationTime = 0; // 记录上次指数计算的时间点
+    // 🌟 每次刷新后预先序列化好的 /data 与 /strong 响应（含 gzip 和 ETag），接口直接输出字节
+    private static final Gson PRETTY_GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static volatile JsonSnapshot dataSnapshot = JsonSnapshot.of("{}");
+    private static volatile JsonSnapshot strongSnapshot = JsonSnapshot.of("[]");
+    // 🌟 WebSocket 推送（/stream）：快照变化时推给所有打开的页面，每次更新只拼装一次消息
+    private static final PushChannel PUSH = new PushChannel();
+    // 🌟 山寨币指数：每根 5m K 线收盘后由内存中的 K 线计算一个点，启动时打开存储后赋值
+    private static volatile AltFuturesIndex altIndex;
+    // 🌟 已收盘 K 线归档（kline_archive_dir 不为空时开启），保留 kline_archive_days 天
+    private static final String KLINE_ARCHIVE_DIR = getenvOrDefault("kline_archive_dir", "");
+    private static final CandleArchive KLINE_ARCHIVE = KLINE_ARCHIVE_DIR.isEmpty() ? null
+            : new CandleArchive(Paths.get(KLINE_ARCHIVE_DIR),
+                    TimeUnit.DAYS.toMillis(Long.parseLong(getenvOrDefault("kline_archive_days", "30"))));
 
     // ------------------- 按需刷新控制 -------------------
     private static volatile long lastRefreshTime = 0; // 记录上次数据刷新时间
-    private static final long REFRESH_INTERVAL_MS = DEFAULT_REFRESH_SECONDS * 1000; // 刷新间隔(毫秒)
-    private static volatile boolean isRefreshing = false; // 防止并发刷新
+    // 刷新间隔(毫秒)，refresh_seconds 可调整（例如压测时缩短）
+    private static final long REFRESH_INTERVAL_MS = Long
+            .parseLong(getenvOrDefault("refresh_seconds", String.valueOf(DEFAULT_REFRESH_SECONDS))) * 1000;
+    private static final AtomicBoolean isRefreshing = new AtomicBoolean(false); // 同一时间只允许一个后台刷新
+    // refresh_mode=continuous：后台按 REFRESH_INTERVAL 持续刷新；默认 on_demand：有请求且数据过期时才触发后台刷新
+    private static final boolean CONTINUOUS_REFRESH = "continuous".equalsIgnoreCase(System.getenv("refresh_mode"));
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "data-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // ------------------- K 线推送模式 -------------------
+    // kline_mode=ws 时通过 WebSocket 订阅 <symbol>@kline_5m，只在首次/断线后用 REST 补种
+    private static final boolean KLINE_STREAM_MODE = "ws".equalsIgnoreCase(System.getenv("kline_mode"));
+    private static final String KLINE_STREAM_URL = getenvOrDefault("kline_stream_url",
+            "wss://fstream.binance.com/stream");
+    private static final long STREAM_REFRESH_INTERVAL_MS = 3 * 1000; // 推送模式下只做本地计算，可以更频繁
+    private static final long KLINE_INTERVAL_MS = 5 * 60 * 1000;
+    private static volatile KlineStreamClient klineStream;
+    private static final Set<String> pendingSeeds = ConcurrentHashMap.newKeySet(); // 需要重新补种的币种
+
+    // ------------------- 价格提醒推送模式 -------------------
+    // alert_mode=ws 时价格提醒由全市场价格推送驱动，每次推送逐个交易对判断穿越；断线期间回退到 REST 轮询
+    private static final boolean ALERT_STREAM_MODE = "ws".equalsIgnoreCase(System.getenv("alert_mode"));
+    private static final String ALERT_STREAM_URL = getenvOrDefault("alert_stream_url",
+            "wss://fstream.binance.com/stream?streams=!ticker@arr");
+    private static volatile PriceStreamClient priceStream;
+    private static final Object PRICE_ALERT_LOCK = new Object(); // 推送线程与轮询线程共用 lastPrices
+
+    // ------------------- 持仓推送模式 -------------------
+    // position_mode=ws 时通过用户数据流 + 标记价格推送在本地维护持仓盈亏，positionRisk 只用于定期对账
+    private static final boolean POSITION_STREAM_MODE = "ws".equalsIgnoreCase(System.getenv("position_mode"));
+    private static final String USER_STREAM_URL = getenvOrDefault("user_stream_url", "wss://fstream.binance.com/stream");
+    private static final long POSITION_RECONCILE_MS = TimeUnit.SECONDS
+            .toMillis(Long.parseLong(getenvOrDefault("position_reconcile_seconds", "60")));
+    private static volatile PositionTracker positionTracker;
+    private static final Object PNL_ALERT_LOCK = new Object(); // 推送线程与轮询线程共用 lastPnls
+
+    // ------------------- 增量刷新 -------------------
+    // 默认只拉取最后一根 K 线及之后新增的 K 线，kline_delta=false 时回退为每次全量拉取 KLINE_COUNT 根
+    private static final boolean KLINE_DELTA_MODE = !"false".equalsIgnoreCase(System.getenv("kline_delta"));
 
     // 🌟 新增配置：DCA 配置文件路径
     private static final String DCA_FILE_PATH = "dca_settings_history.json";
-    private static volatile String dcaSettingsCache = "{\"groups\":[],\"groupIdCounter\":0,\"globalRowIdCounter\":0,\"globalWalletBalance\":\"\"}";
+    // 🌟 带版本号的 DCA 配置：ETag 条件读取、JSON Patch 增量修改、If-Match 乐观并发
+    private static final DcaStore DCA_STORE = new DcaStore(Paths.get(DCA_FILE_PATH),
+            "{\"groups\":[],\"groupIdCounter\":0,\"globalRowIdCounter\":0,\"globalWalletBalance\":\"\"}");
 
     // 🌟 新增配置：价格提醒配置文件路径
     private static final String PRICE_ALERT_FILE_PATH = "price_alerts.json";
-    private static List<PriceAlert> priceAlerts = new CopyOnWriteArrayList<>();
+    private static volatile List<PriceAlert> priceAlerts = new CopyOnWriteArrayList<>(); // 整体替换时换成新列表
+    // 🌟 触发后的状态变化延迟合并写入变更日志，整体替换时重写快照
+    private static final AlertPersistence ALERT_STORE = new AlertPersistence(Paths.get(PRICE_ALERT_FILE_PATH),
+            1000, () -> priceAlerts);
     private static Map<String, BigDecimal> lastPrices = new ConcurrentHashMap<>();
     private static Map<String, BigDecimal> lastPnls = new ConcurrentHashMap<>();
+    // 🌟 启用中提醒的索引（按交易对 + 目标价），提醒列表变化后整体重建
+    private static volatile AlertIndex alertIndex = AlertIndex.EMPTY;
+    private static final Object ALERT_INDEX_LOCK = new Object(); // 串行化重建，最后一次重建一定读到最新的列表
 
     // 🌟 全局变量：存储最新的总盈亏
     private static volatile BigDecimal globalTotalPnL = BigDecimal.ZERO;
@@ -104,9 +213,11 @@ public class BinanceCombinedServer {
 
     static class StrongCoin {
         String symbol;
+        String rule; // 命中的筛选规则名
 
-        StrongCoin(String s) {
+        StrongCoin(String s, String rule) {
             symbol = s;
+            this.rule = rule;
         }
     }
 
@@ -120,21 +231,12 @@ public class BinanceCombinedServer {
             this.value = value.setScale(4, RoundingMode.HALF_UP); // 保留 4 位小数
         }
 
-        public long getTimestamp() {
-            return timestamp;
+        public IndexPoint(long timestamp, double value) {
+            this(timestamp, BigDecimal.valueOf(value));
         }
-    }
 
-    // 🌟 新增数据模型：用于指数计算时的排序和暂存
-    private static class IndexData {
-        String symbol;
-        BigDecimal change; // Delta P_i (30分钟价格变动百分比)
-        BigDecimal tradeValue; // V_i (30分钟总成交额 / 交易价值)
-
-        public IndexData(String symbol, BigDecimal change, BigDecimal tradeValue) {
-            this.symbol = symbol;
-            this.change = change;
-            this.tradeValue = tradeValue;
+        public long getTimestamp() {
+            return timestamp;
         }
     }
 
@@ -168,76 +270,127 @@ public class BinanceCombinedServer {
     private static volatile long cachedSymbolsTime = 0;
     private static final long SYMBOLS_CACHE_DURATION = 60 * 60 * 1000; // 10分钟
 
-    // 强势币使用的 K 线根数（6 根 5m -> 30 分钟）
-    private static final int STRONG_KLINE_COUNT = 6;
+    // 🌟 强势币筛选规则文件（不存在时使用内置默认规则），修改后下一次刷新自动生效
+    private static final StrongRuleEngine STRONG_RULES = new StrongRuleEngine(
+            Paths.get(getenvOrDefault("strong_rules_file", "strong_rules.json")), ForkJoinPool.commonPool());
 
     public static void main(String[] args) throws Exception {
         initProxy();
+        registerMetrics();
         loadDcaSettingsFromFile();
         Spark.port(4567);
         Spark.staticFiles.location("/public");
+        Spark.webSocket("/stream", PUSH.endpoint()); // WebSocket 路由必须在 HTTP 路由之前注册
 
         loadPriceAlertsFromFile();
+        openIndexStore();
+        if (ALERT_STREAM_MODE) {
+            startPriceStream();
+        }
+        if (POSITION_STREAM_MODE) {
+            startPositionTracker();
+        }
 
         // 🌟 价格提醒：每 3 秒检查一次（需要实时监控）
         ScheduledExecutorService alertScheduler = Executors.newScheduledThreadPool(1);
         alertScheduler.scheduleAtFixedRate(() -> {
+            long startNanos = System.nanoTime();
             try {
                 checkPriceAlerts();
+                ALERT_CHECK_DURATION.observeSince(startNanos);
             } catch (Throwable e) {
                 // 必须捕获 Throwable，否则 Error 会导致调度器永久停止
                 e.printStackTrace();
             }
         }, 3, 3, TimeUnit.SECONDS);
 
-        // 🌟 排行榜数据：改为按需刷新（用户访问时才调用币安API，节省资源）
-        // 移除了原来的定时刷新任务，改为在 /data 和 /strong 接口中按需刷新
+        // 🌟 排行榜数据：默认按需刷新（用户访问时才调用币安API，节省资源），刷新在后台进行，接口只读快照
+        // refresh_mode=continuous 时改为后台持续刷新
+        if (CONTINUOUS_REFRESH) {
+            ScheduledExecutorService refreshScheduler = Executors.newScheduledThreadPool(1);
+            refreshScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    refreshIfNeeded();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }, 0, 1, TimeUnit.SECONDS);
+        } else {
+            triggerRefresh(); // 启动时先预热一份快照，避免第一个请求拿到空数据
+            // 有页面订阅推送时视为一直有人在看，按刷新间隔继续刷新
+            ScheduledExecutorService pushScheduler = Executors.newScheduledThreadPool(1);
+            pushScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    if (PUSH.subscriberCount() > 0)
+                        refreshIfNeeded();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        }
 
         Spark.get("/data", (req, res) -> {
-            res.type("application/json; charset=UTF-8");
             // 🌟 按需刷新：检查缓存是否过期
             refreshIfNeeded();
-            return new GsonBuilder().setPrettyPrinting().create().toJson(rankCache);
+            return serveSnapshot(req, res, dataSnapshot);
         });
 
         Spark.get("/strong", (req, res) -> {
-            res.type("application/json; charset=UTF-8");
             // 🌟 按需刷新：检查缓存是否过期
             refreshIfNeeded();
-            return new GsonBuilder().setPrettyPrinting().create()
-                    .toJson(strongCache.stream().map(StrongCoin::new).collect(Collectors.toList()));
+            return serveSnapshot(req, res, strongSnapshot);
         });
 
-        // 🌟 新增接口：获取 DCA 配置
-        Spark.get("/dca-settings", (req, res) -> {
-            res.type("application/json; charset=UTF-8");
-            return dcaSettingsCache;
+        Spark.get("/metrics", (req, res) -> {
+            res.type("text/plain; version=0.0.4; charset=utf-8");
+            return METRICS.scrape();
         });
 
-        // 🌟 新增接口：同步 DCA 配置 (全量覆盖)
+        // 🌟 新增接口：获取 DCA 配置（支持 If-None-Match / gzip）
+        Spark.get("/dca-settings", (req, res) -> serveSnapshot(req, res, DCA_STORE.current().snapshot));
+
+        // 🌟 新增接口：同步 DCA 配置 (全量覆盖，带 If-Match 时做并发检查)
         Spark.post("/dca-settings", (req, res) -> {
             String body = req.body();
             if (body != null && !body.isEmpty()) {
-                dcaSettingsCache = body;
-                saveDcaSettingsToFile(body);
-                return "{\"status\":\"ok\"}";
+                return updateDcaSettings(res, () -> DCA_STORE.replace(body, req.headers("If-Match")));
             }
             res.status(400);
             return "{\"status\":\"error\",\"message\":\"Empty body\"}";
         });
 
+        // 🌟 新增接口：增量修改 DCA 配置，请求体为 JSON Patch 数组（add/remove/replace/test）
+        Spark.patch("/dca-settings", (req, res) -> {
+            JsonArray ops;
+            try {
+                ops = new Gson().fromJson(req.body(), JsonArray.class);
+            } catch (JsonParseException e) {
+                ops = null;
+            }
+            if (ops == null) {
+                res.status(400);
+                res.type("application/json; charset=UTF-8");
+                return "{\"status\":\"error\",\"message\":\"Body must be a JSON Patch array\"}";
+            }
+            JsonArray patch = ops;
+            return updateDcaSettings(res, () -> DCA_STORE.patch(patch, req.headers("If-Match")));
+        });
+
         // 🌟 新增接口：代理获取 MMR 数据（因为币安 API 需要 CORS 或认证）
         Spark.get("/mmr-data", (req, res) -> {
             res.type("application/json; charset=UTF-8");
+            String paused = rejectIfPaused(res);
+            if (paused != null)
+                return paused;
             try {
                 String symbol = req.queryParams("symbol");
-                String baseUrl = "https://fapi.binance.com/fapi/v1/leverageBracket";
                 String queryParams = "";
                 if (symbol != null && !symbol.isEmpty()) {
                     queryParams = "symbol=" + URLEncoder.encode(symbol, "UTF-8");
                 }
                 // 🌟 使用带签名的请求方法
-                String result = httpGetWithSignature(baseUrl, queryParams);
+                String result = httpGetWithSignature(LEVERAGE_BRACKET_URL, queryParams,
+                        RequestScheduler.Priority.NORMAL);
                 return result;
             } catch (Exception e) {
                 e.printStackTrace();
@@ -258,16 +411,19 @@ public class BinanceCombinedServer {
             if (body != null && !body.isEmpty()) {
                 try {
                     PriceAlert[] alerts = new Gson().fromJson(body, PriceAlert[].class);
-                    priceAlerts.clear();
+                    List<PriceAlert> replaced = new ArrayList<>();
                     if (alerts != null) {
                         for (PriceAlert alert : alerts) {
                             if (alert.id == null || alert.id.isEmpty()) {
                                 alert.id = UUID.randomUUID().toString();
                             }
-                            priceAlerts.add(alert);
+                            replaced.add(alert);
                         }
                     }
-                    savePriceAlertsToFile();
+                    // 先建好新列表再一次性替换，重建索引时不会读到清空或只加了一半的列表
+                    priceAlerts = new CopyOnWriteArrayList<>(replaced);
+                    rebuildAlertIndex();
+                    ALERT_STORE.saveAll();
                     return "{\"status\":\"ok\"}";
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -282,15 +438,17 @@ public class BinanceCombinedServer {
         // 🌟 新增接口：获取标记价格
         Spark.get("/mark-price", (req, res) -> {
             res.type("application/json; charset=UTF-8");
+            String paused = rejectIfPaused(res);
+            if (paused != null)
+                return paused;
             try {
                 String symbol = req.queryParams("symbol");
                 if (symbol == null || symbol.isEmpty()) {
                     res.status(400);
                     return "{\"error\":\"Missing symbol\"}";
                 }
-                String url = "https://fapi.binance.com/fapi/v1/premiumIndex?symbol="
-                        + URLEncoder.encode(symbol, "UTF-8");
-                String result = httpGet(url);
+                String url = PREMIUM_INDEX_URL + "?symbol=" + URLEncoder.encode(symbol, "UTF-8");
+                String result = httpGet(url, RequestScheduler.Priority.NORMAL);
                 return result;
             } catch (Exception e) {
                 e.printStackTrace();
@@ -299,219 +457,363 @@ public class BinanceCombinedServer {
             }
         });
 
+        // 🌟 新增接口：山寨币指数历史，from/to 为毫秒时间戳，resolution 为最多返回的点数（LTTB 降采样）
+        Spark.get("/index", (req, res) -> {
+            res.type("application/json; charset=UTF-8");
+            refreshIfNeeded();
+            try {
+                long from = parseLongParam(req.queryParams("from"), Long.MIN_VALUE);
+                long to = parseLongParam(req.queryParams("to"), Long.MAX_VALUE);
+                int resolution = (int) parseLongParam(req.queryParams("resolution"), INDEX_DEFAULT_RESOLUTION);
+                AltFuturesIndex index = altIndex;
+                return index == null ? "[]" : new Gson().toJson(index.range(from, to, resolution));
+            } catch (NumberFormatException e) {
+                res.status(400);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "Invalid number: " + e.getMessage());
+                return error.toString();
+            }
+        });
+
         // 🌟 新增接口：获取全局总盈亏
         Spark.get("/current-pnl", (req, res) -> {
             res.type("application/json; charset=UTF-8");
-            return "{\"totalPnL\": " + (globalTotalPnL != null ? globalTotalPnL.toString() : "\"0\"") + "}";
+            return pnlJson(globalTotalPnL);
         });
 
     }
 
     // ------------------- 刷新逻辑 -------------------
 
-    // 🌟 按需刷新：只有当缓存过期时才刷新数据
-    private static synchronized void refreshIfNeeded() {
+    // 🌟 按需刷新：缓存过期时在后台触发一次刷新，调用方立即返回，继续使用上一份快照
+    private static void refreshIfNeeded() {
         long now = System.currentTimeMillis();
-        // 如果距离上次刷新不足间隔时间，或者正在刷新中，直接返回
-        if ((now - lastRefreshTime) < REFRESH_INTERVAL_MS || isRefreshing) {
+        long interval = KLINE_STREAM_MODE ? STREAM_REFRESH_INTERVAL_MS : REFRESH_INTERVAL_MS;
+        // 如果距离上次刷新不足间隔时间，直接返回
+        if ((now - lastRefreshTime) < interval) {
             return;
         }
-        isRefreshing = true;
-        try {
-            refreshAllData();
-            lastRefreshTime = System.currentTimeMillis();
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            isRefreshing = false;
+        triggerRefresh();
+    }
+
+    // 🌟 单飞刷新：已有刷新在进行时直接返回，不排队、不阻塞请求线程
+    private static void triggerRefresh() {
+        if (!isRefreshing.compareAndSet(false, true)) {
+            return;
         }
+        REFRESH_EXECUTOR.execute(() -> {
+            long startNanos = System.nanoTime();
+            try {
+                refreshAllData();
+                lastRefreshTime = System.currentTimeMillis();
+                REFRESH_DURATION.observeSince(startNanos);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                isRefreshing.set(false);
+            }
+        });
     }
 
     private static void refreshAllData() throws Exception {
         long start = System.currentTimeMillis();
         List<String> symbols = getAllSymbolsCached();
-        Map<String, List<CandleRaw>> newKlineCache = new ConcurrentHashMap<>();
-
-        // 一次拉取所有交易对 K 线
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (String symbol : symbols) {
-            futures.add(CompletableFuture.runAsync(() -> {
-                // 🌟 fetch5mKlines 现在返回带时间戳的 CandleRaw
-                List<CandleRaw> klines = fetch5mKlines(symbol, KLINE_COUNT);
-                if (klines != null && !klines.isEmpty())
-                    newKlineCache.put(symbol, klines);
-            }, EXECUTOR));
-        }
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        List<String> ranked = symbols; // 参与本轮排行、筛选的币种
 
-        long used = System.currentTimeMillis() - start;
-        System.out.println("全部请求完成，耗时：" + used + "ms");
-
-        klineCache = newKlineCache;
-
-        // ---------------- 排行榜逻辑 ---------------- (代码保持不变，省略以保持简洁，但请在您的文件中保留)
-        // ... (原有的排行榜逻辑)
-        Map<String, Map<String, Candle>> allMap = new ConcurrentHashMap<>();
-        for (String symbol : klineCache.keySet()) {
-            List<CandleRaw> klines = klineCache.get(symbol);
-            if (klines == null || klines.isEmpty())
-                continue;
-            Map<String, Candle> map = new HashMap<>();
-
-            // 遍历所有 INTERVALS，计算需要多少根 5m K 线
-            for (String interval : INTERVALS) {
-                int minutes = Integer.parseInt(interval.replace("m", ""));
-                int needed = minutes / 5;
-                if (klines.size() >= needed) {
-                    List<CandleRaw> sub = klines.subList(klines.size() - needed, klines.size());
-                    map.put(interval, aggregate(symbol, sub));
-                }
+        if (KLINE_STREAM_MODE) {
+            // 🌟 推送模式：K 线由 WebSocket 持续更新，这里只补种缺失的币种
+            seedStreamKlines(symbols);
+        } else {
+            // 一次提交所有交易对 K 线请求（异步，由 REQUEST_SCHEDULER 按权重限速），原地写入各自的环形缓冲区
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            Set<String> failed = ConcurrentHashMap.newKeySet();
+            for (String symbol : symbols) {
+                CandleSeries series = klineCache.computeIfAbsent(symbol,
+                        s -> new CandleSeries(KLINE_HISTORY_CAPACITY, WINDOW_LENGTHS));
+                futures.add(refreshKlinesAsync(symbol, series).thenAccept(ok -> {
+                    if (!ok)
+                        failed.add(symbol);
+                }));
             }
-            allMap.put(symbol, map);
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            klineCache.keySet().retainAll(symbols); // 清理已下架的币种
+            // 拉取失败的币种不参与本轮排行，但保留已缓存的 K 线和窗口状态，下一轮仍可增量拉取
+            if (!failed.isEmpty())
+                ranked = symbols.stream().filter(s -> !failed.contains(s)).collect(Collectors.toList());
+
+            long used = System.currentTimeMillis() - start;
+            System.out.println("全部请求完成，耗时：" + used + "ms，本轮拉取 K 线：" + fetchedCandles.getAndSet(0) + " 根，失败请求："
+                    + failedKlineFetches.getAndSet(0) + "，已用权重：" + REQUEST_SCHEDULER.usedWeight() + "，当前并发："
+                    + REQUEST_SCHEDULER.concurrency());
         }
 
-        // 构建排行榜
-        for (String interval : INTERVALS) {
-            List<Candle> candles = new ArrayList<>();
+        // ---------------- 排行榜逻辑 ----------------
+        // 🌟 各周期并行计算，每个榜单只保留前 K 名，不再全量排序
+        rankCache.putAll(RANKING_ENGINE.rank(ranked, klineCache));
+
+        // ---------------- 强势币逻辑 ----------------
+        // 🌟 规则引擎并行筛选，K 线没有变化的币种复用上次结果
+        List<StrongRuleEngine.Match> strongs = STRONG_RULES.evaluate(ranked, klineCache);
+        strongCache = strongs.stream().map(m -> m.symbol).collect(Collectors.toList());
+
+        // 🌟 一次刷新只序列化一次，所有请求共享同一份字节
+        long serializeStart = System.nanoTime();
+        dataSnapshot = JsonSnapshot.of(PRETTY_GSON.toJson(rankCache));
+        DATA_SERIALIZE_DURATION.observeSince(serializeStart);
+        strongSnapshot = JsonSnapshot.of(
+                PRETTY_GSON.toJson(strongs.stream().map(m -> new StrongCoin(m.symbol, m.rule)).collect(Collectors.toList())));
+        PUSH.publish(PushChannel.DATA, dataSnapshot);
+        PUSH.publish(PushChannel.STRONG, strongSnapshot);
+
+        // ---------------- 山寨币指数 ----------------
+        // 🌟 只在有新的 K 线收盘时追加点，没有额外的接口请求
+        AltFuturesIndex index = altIndex;
+        if (index != null && index.update(ranked, klineCache, System.currentTimeMillis()) > 0)
+            index.flush();
+
+        // ---------------- K 线归档 ----------------
+        if (KLINE_ARCHIVE != null) {
+            int archived = 0;
             for (String symbol : symbols) {
-                Map<String, Candle> m = allMap.get(symbol);
-                if (m != null && m.containsKey(interval)) {
-                    Candle c = m.get(interval);
-                    Map<String, Map<String, BigDecimal>> others = new HashMap<>();
-                    for (String i2 : INTERVALS) {
-                        Candle c2 = m.get(i2);
-                        if (c2 != null) {
-                            Map<String, BigDecimal> map2 = new HashMap<>();
-                            map2.put("change", c2.change);
-                            map2.put("amplitude", c2.amplitude);
-                            others.put(i2, map2);
-                        }
-                    }
-                    c.others = others;
-                    candles.add(c);
-                }
+                CandleSeries series = klineCache.get(symbol);
+                if (series != null)
+                    archived += KLINE_ARCHIVE.archiveClosed(symbol, series);
             }
-            Map<String, List<Candle>> intervalMap = new HashMap<>();
-            intervalMap.put("change", candles.stream()
-                    .sorted((a, b) -> b.change.compareTo(a.change))
-                    .limit(TOP_CHANGE)
-                    .collect(Collectors.toList()));
-            // 振幅排行榜数据去掉
-            // intervalMap.put("amplitude", candles.stream()
-            // .sorted((a, b) -> b.amplitude.compareTo(a.amplitude))
-            // .limit(TOP_AMPLITUDE)
-            // .collect(Collectors.toList()));
-            rankCache.put(interval, intervalMap);
+            if (archived > 0)
+                KLINE_ARCHIVE.flush();
         }
+    }
 
-        // ---------------- 强势币逻辑 ---------------- (代码保持不变，省略以保持简洁，但请在您的文件中保留)
-        List<String> strongs = new ArrayList<>();
-        // ... (原有的强势币逻辑，这里不再重复粘贴)
-
-        for (String symbol : symbols) {
-            List<CandleRaw> rawsAll = klineCache.get(symbol);
-            if (rawsAll == null || rawsAll.size() < STRONG_KLINE_COUNT)
-                continue;
-
-            // ... (原有的强势币计算逻辑)
-
-            // ------------------- 核心变量定义 -------------------
-            List<CandleRaw> lastN = rawsAll.subList(rawsAll.size() - STRONG_KLINE_COUNT, rawsAll.size());
-            BigDecimal highMax = lastN.stream().map(c -> c.high).max(BigDecimal::compareTo).orElse(BigDecimal.ZERO);
-            BigDecimal current = lastN.get(lastN.size() - 1).close;
-            BigDecimal firstOpen = lastN.get(0).open;
-            BigDecimal currentOpen = lastN.get(lastN.size() - 1).open; // 当前 5m K 线的开盘价
-
-            // ... (计算 PosRatio, CumChange, MaxVol, isComboOne, isVolumeSpikeAndSurge 等)
-
-            // ----------------------------------------------------
-            // (A) 组合一：价格位置、累计涨幅、最大成交额
-            // ----------------------------------------------------
-            boolean isComboOne = false;
-
-            // 1. PosRatio 计算
-            BigDecimal posRatio = BigDecimal.ZERO;
-            BigDecimal denominator = highMax.subtract(firstOpen);
-            if (denominator.compareTo(BigDecimal.ZERO) > 0) {
-                posRatio = current.subtract(firstOpen).divide(denominator, 8, RoundingMode.HALF_UP);
-            }
+    // ------------------- 运行指标 -------------------
+
+    // 🌟 注册抓取时读取的仪表和外部计数，数据源都是已有的状态，不增加记录开销
+    private static void registerMetrics() {
+        METRICS.gauge("dashboard_snapshot_age_seconds", "快照生成至今的秒数", "snapshot=\"data\"",
+                () -> (System.currentTimeMillis() - dataSnapshot.createdAt) / 1000.0);
+        METRICS.gauge("dashboard_snapshot_age_seconds", "快照生成至今的秒数", "snapshot=\"strong\"",
+                () -> (System.currentTimeMillis() - strongSnapshot.createdAt) / 1000.0);
+        METRICS.gauge("dashboard_symbols", "内存中维护 K 线的交易对数", klineCache::size);
+        METRICS.gauge("dashboard_strong_coins", "当前强势币数量", () -> strongCache.size());
+
+        METRICS.gauge("binance_used_weight", "币安响应头报告的 1 分钟已用权重", REQUEST_SCHEDULER::usedWeight);
+        METRICS.gauge("binance_weight_limit", "币安 1 分钟请求权重上限", () -> BINANCE_WEIGHT_LIMIT);
+        METRICS.gauge("binance_scheduler_concurrency", "请求调度器当前允许的并发数", REQUEST_SCHEDULER::concurrency);
+        METRICS.gauge("binance_scheduler_queued", "请求调度器中排队的请求数", REQUEST_SCHEDULER::queued);
+
+        METRICS.gauge("dashboard_alerts", "提醒数量", "state=\"configured\"", () -> priceAlerts.size());
+        METRICS.gauge("dashboard_alerts", "提醒数量", "state=\"price_enabled\"", () -> alertIndex.priceAlertCount());
+        METRICS.gauge("dashboard_alerts", "提醒数量", "state=\"pnl_enabled\"", () -> alertIndex.pnlAlerts().size());
+
+        METRICS.counter("wxpusher_messages_sent_total", "成功发送的 WxPusher 消息数（摘要算一条）", "", NOTIFIER::sent);
+        METRICS.counter("wxpusher_notifications_merged_total", "被合并进摘要的通知数", "", NOTIFIER::merged);
+        METRICS.counter("wxpusher_send_failures_total", "WxPusher 发送失败次数（含重试）", "", NOTIFIER::failed);
+        METRICS.counter("wxpusher_notifications_dropped_total", "队列已满或重试耗尽而丢弃的通知数", "", NOTIFIER::dropped);
+        METRICS.gauge("wxpusher_pending", "待发送的通知数", NOTIFIER::pending);
+
+        METRICS.gauge("push_subscribers", "/stream 推送的在线订阅数", PUSH::subscriberCount);
+        METRICS.counter("push_frames_sent_total", "已推送的消息数", "", PUSH::sent);
+        METRICS.counter("push_frames_skipped_total", "慢客户端被更新消息覆盖而跳过的消息数", "", PUSH::skipped);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        METRICS.gauge("jvm_memory_heap_used_bytes", "已用堆内存", () -> memory.getHeapMemoryUsage().getUsed());
+        METRICS.gauge("jvm_memory_heap_committed_bytes", "已提交堆内存", () -> memory.getHeapMemoryUsage().getCommitted());
+        METRICS.gauge("jvm_memory_heap_max_bytes", "最大堆内存", () -> memory.getHeapMemoryUsage().getMax());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = "gc=\"" + Metrics.escape(gc.getName()) + "\"";
+            METRICS.counter("jvm_gc_collections_total", "GC 次数", labels, gc::getCollectionCount);
+            METRICS.counter("jvm_gc_collection_seconds_total", "GC 累计耗时", labels,
+                    () -> gc.getCollectionTime() / 1000.0);
+        }
+        METRICS.gauge("jvm_threads_live", "存活线程数", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
 
-            // 2. CumChange 计算
-            BigDecimal cumChange = BigDecimal.ZERO;
-            if (firstOpen.compareTo(BigDecimal.ZERO) > 0) {
-                cumChange = current.subtract(firstOpen).multiply(new BigDecimal("100"))
-                        .divide(firstOpen, 8, RoundingMode.HALF_UP);
-            }
+    // 🌟 输出预序列化的快照：ETag 未变化返回 304，客户端支持 gzip 时直接输出压缩好的字节
+    private static Object serveSnapshot(spark.Request req, spark.Response res, JsonSnapshot snapshot)
+            throws IOException {
+        res.type("application/json; charset=UTF-8");
+        res.header("ETag", snapshot.etag);
+        res.header("Cache-Control", "no-cache");
+        res.header("Vary", "Accept-Encoding");
+        // 快照生成至今的毫秒数，便于前端判断数据新鲜度
+        res.header("X-Snapshot-Age", String.valueOf(System.currentTimeMillis() - snapshot.createdAt));
+        if (snapshot.matches(req.headers("If-None-Match"))) {
+            res.status(304);
+            return "";
+        }
+        String acceptEncoding = req.headers("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        byte[] body = gzip ? snapshot.gzip : snapshot.json;
+        javax.servlet.http.HttpServletResponse raw = res.raw();
+        if (gzip)
+            raw.setHeader("Content-Encoding", "gzip");
+        raw.setContentLength(body.length);
+        // 直接写入并提交响应，Spark 检测到已提交后不会再次序列化或压缩
+        OutputStream out = raw.getOutputStream();
+        out.write(body);
+        out.flush();
+        return "";
+    }
 
-            // 3. MaxVol 计算 (Volume * Close 的最大值)
-            BigDecimal maxVol = lastN.stream()
-                    .map(c -> c.volume.multiply(c.close))
-                    .max(BigDecimal::compareTo)
-                    .orElse(BigDecimal.ZERO);
-
-            // 组合一判断
-            if (posRatio.compareTo(new BigDecimal("0.7")) >= 0 &&
-                    cumChange.compareTo(new BigDecimal("9")) >= 0) {
-                isComboOne = true;
-                System.out.println("强势币：" + symbol + ",区间百分比:" + posRatio + "，累计涨幅：" + cumChange);
-            }
+    // ------------------- K 线推送 -------------------
 
-            // ----------------------------------------------------
-            // (B) 组合二：成交量突增 AND 5m 暴涨（新逻辑）
-            // ----------------------------------------------------
-            boolean isVolumeSpikeAndSurge = false;
+    // 🌟 订阅所有交易对的 5m K 线推送，并对未补种（或断线后需要重新补种）的币种走一次 REST
+    private static void seedStreamKlines(List<String> symbols) {
+        if (klineStream == null) {
+            klineStream = new KlineStreamClient(KLINE_STREAM_URL, new KlineStreamClient.Listener() {
+                @Override
+                public void onKline(String symbol, CandleRaw candle, boolean closed) {
+                    applyStreamKline(symbol, candle);
+                }
 
-            // 1. 计算当前 5m 涨幅
-            BigDecimal current5mChange = BigDecimal.ZERO;
-            if (currentOpen.compareTo(BigDecimal.ZERO) > 0) {
-                current5mChange = current.subtract(currentOpen).multiply(new BigDecimal("100"))
-                        .divide(currentOpen, 8, RoundingMode.HALF_UP);
-            }
+                @Override
+                public void onResubscribed(Collection<String> resubscribed) {
+                    // 断线期间可能漏掉收盘 K 线，已有缓存的币种需要重新补种
+                    for (String symbol : resubscribed) {
+                        if (klineCache.containsKey(symbol))
+                            pendingSeeds.add(symbol);
+                    }
+                }
+            });
+        }
+        klineStream.ensureSubscribed(symbols);
 
-            // 2. 当前 K 线的原始成交量
-            BigDecimal currentVolume = lastN.get(lastN.size() - 1).volume;
+        List<String> toSeed = new ArrayList<>();
+        for (String symbol : symbols) {
+            CandleSeries series = klineCache.get(symbol);
+            if (series == null || series.isEmpty() || pendingSeeds.contains(symbol))
+                toSeed.add(symbol);
+        }
+        if (toSeed.isEmpty())
+            return;
 
-            // 3. 前 N-1 根 K 线的最大原始成交量
-            BigDecimal previousMaxVolume = lastN.subList(0, lastN.size() - 1)
-                    .stream()
-                    .map(c -> c.volume)
-                    .max(BigDecimal::compareTo)
-                    .orElse(BigDecimal.ZERO);
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String symbol : toSeed) {
+            pendingSeeds.remove(symbol);
+            CandleSeries series = klineCache.computeIfAbsent(symbol,
+                    s -> new CandleSeries(KLINE_HISTORY_CAPACITY, WINDOW_LENGTHS));
+            futures.add(refreshKlinesAsync(symbol, series).thenAccept(ok -> {
+                if (!ok)
+                    pendingSeeds.add(symbol); // 失败的下次刷新再补
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        System.out.println("[K线推送] 补种 " + toSeed.size() + " 个交易对，耗时：" + (System.currentTimeMillis() - start)
+                + "ms，已连接分片：" + klineStream.connectedShards());
+    }
 
-            // 组合二判断： [成交量突增] AND [5m 涨幅 >= 5%]
-            if (previousMaxVolume.compareTo(BigDecimal.ZERO) > 0) {
-                // Condition 1: Volume Spike
-                boolean volumeCondition = currentVolume
-                        .compareTo(previousMaxVolume.multiply(new BigDecimal("4.0"))) >= 0;// 成交量4倍量爆量
+    // 🌟 用推送的 K 线更新缓存：同一根 K 线原地替换，新 K 线追加，缓冲区满时覆盖最旧的
+    private static void applyStreamKline(String symbol, CandleRaw candle) {
+        CandleSeries series = klineCache.get(symbol);
+        if (series == null)
+            return;
+        synchronized (series) {
+            // 未补种的币种直接忽略，补种完成后由后续推送覆盖最后一根
+            if (series.isEmpty())
+                return;
+            if (candle.openTime > series.lastOpenTime() + KLINE_INTERVAL_MS) {
+                // 中间缺了 K 线（例如漏掉了收盘推送），交给下一次刷新重新补种
+                pendingSeeds.add(symbol);
+                return;
+            }
+            series.update(candle.openTime, candle.open.doubleValue(), candle.high.doubleValue(),
+                    candle.low.doubleValue(), candle.close.doubleValue(), candle.volume.doubleValue());
+        }
+    }
 
-                // Condition 2: Price Surge (5m Change >= 5%)
-                boolean surgeCondition = current5mChange.compareTo(new BigDecimal("5")) >= 0;// 涨幅大于5
+    // ------------------- 增量 K 线 -------------------
 
-                if (volumeCondition && surgeCondition) {
-                    isVolumeSpikeAndSurge = true;
-                    System.out.println("强势币：" + symbol + ",当前涨幅:" + surgeCondition + "，成交量倍数：" + volumeCondition);
+    // 🌟 刷新单个币种的 K 线：增量模式下从最后一根 K 线（可能尚未收盘）的 openTime 开始请求并合并，
+    // 否则全量拉取 KLINE_COUNT 根。结果为 false 表示没有可用数据
+    private static CompletableFuture<Boolean> refreshKlinesAsync(String symbol, CandleSeries series) {
+        long lastOpenTime;
+        synchronized (series) {
+            lastOpenTime = series.lastOpenTime();
+        }
+        // 最后一根本身 + 之后新产生的 K 线，多要一根防止边界上刚好收盘
+        long missing = (System.currentTimeMillis() - lastOpenTime) / KLINE_INTERVAL_MS + 2;
+        if (KLINE_DELTA_MODE && lastOpenTime > 0 && missing < KLINE_COUNT) {
+            return fetch5mKlinesAsync(symbol, lastOpenTime, (int) missing).thenCompose(delta -> {
+                if (delta.isEmpty())
+                    return CompletableFuture.completedFuture(true); // 请求失败沿用旧数据
+                if (delta.openTime[0] <= lastOpenTime + KLINE_INTERVAL_MS) {
+                    series.merge(delta);
+                    return seedRollupIfNeeded(symbol, series);
                 }
-            }
+                return fullRefreshKlinesAsync(symbol, series); // 出现断档，走全量
+            });
+        }
+        return fullRefreshKlinesAsync(symbol, series);
+    }
 
-            // ----------------------------------------------------
-            // (C) 最终或逻辑 (OR Logic)
-            // ----------------------------------------------------
-            if (isComboOne || isVolumeSpikeAndSurge) {
-                strongs.add(symbol);
+    private static CompletableFuture<Boolean> fullRefreshKlinesAsync(String symbol, CandleSeries series) {
+        return fetch5mKlinesAsync(symbol, 0, KLINE_COUNT).thenCompose(klines -> {
+            if (klines.isEmpty())
+                return CompletableFuture.completedFuture(false);
+            synchronized (series) {
+                CandleRollup rollup = series.windows() == null ? null : series.windows().rollup();
+                if (rollup != null)
+                    rollup.prepareReset(klines.openTime[0]);
+                series.reset(klines);
             }
+            return seedRollupIfNeeded(symbol, series);
+        });
+    }
 
+    // 🌟 长周期窗口（1d 等）：首次拉取、出现断档或上次填充失败时，用交易所原生的 15m/1h/4h/1d K 线填充分层汇总，
+    // 每层只需几十根，只请求尚未填充的层，之后由收盘的 5m K 线增量维护
+    private static CompletableFuture<Boolean> seedRollupIfNeeded(String symbol, CandleSeries series) {
+        CandleRollup rollup = series.windows() == null ? null : series.windows().rollup();
+        List<Integer> levels = new ArrayList<>();
+        synchronized (series) {
+            if (rollup != null) {
+                for (int level = 0; level < rollup.levelCount(); level++) {
+                    if (rollup.needsSeed(level))
+                        levels.add(level);
+                }
+            }
+        }
+        if (levels.isEmpty())
+            return CompletableFuture.completedFuture(true);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[levels.size()];
+        for (int i = 0; i < futures.length; i++) {
+            int l = levels.get(i);
+            futures[i] = fetchKlinesAsync(symbol, rollup.interval(l), 0, rollup.seedLimit(l)).thenAccept(batch -> {
+                if (batch.isEmpty())
+                    return; // 该层仍标记为未填充，下一轮刷新再补
+                synchronized (series) {
+                    rollup.seed(l, batch, series.lastOpenTime());
+                }
+            });
         }
-        strongCache = strongs;
+        return CompletableFuture.allOf(futures).thenApply(v -> true);
     }
 
     // ------------------- 工具方法 -------------------
+    private static Map<RankingEngine.Metric, Integer> rankMetrics() {
+        Map<RankingEngine.Metric, Integer> metrics = new EnumMap<>(RankingEngine.Metric.class);
+        metrics.put(RankingEngine.Metric.CHANGE, TOP_CHANGE);
+        if (RANK_AMPLITUDE)
+            metrics.put(RankingEngine.Metric.AMPLITUDE, TOP_AMPLITUDE);
+        return metrics;
+    }
+
+    private static long parseLongParam(String value, long defaultValue) {
+        return (value == null || value.isEmpty()) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    static String getenvOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return (value == null || value.isEmpty()) ? defaultValue : value;
+    }
+
     private static List<String> getAllSymbolsCached() throws Exception {
         long now = System.currentTimeMillis();
         if (!cachedSymbols.isEmpty() && (now - cachedSymbolsTime < SYMBOLS_CACHE_DURATION)) {
             return cachedSymbols;
         }
 
-        String json = httpGet(EXCHANGE_INFO_URL);
+        String json = httpGet(EXCHANGE_INFO_URL, RequestScheduler.Priority.NORMAL);
         if (json == null || json.isEmpty())
             return Collections.emptyList();
         Gson gson = new Gson();
@@ -538,64 +840,67 @@ public class BinanceCombinedServer {
     }
 
     static int count = 0;
+    private static final AtomicInteger fetchedCandles = new AtomicInteger(); // 本轮刷新实际拉取的 K 线根数
+    private static final AtomicInteger failedKlineFetches = new AtomicInteger(); // 本轮刷新失败的 K 线请求数
+
+    private static CompletableFuture<KlineBatch> fetch5mKlinesAsync(String symbol, long startTime, int limit) {
+        return fetchKlinesAsync(symbol, "5m", startTime, limit);
+    }
 
-    private static List<CandleRaw> fetch5mKlines(String symbol, int limit) {
+    // startTime > 0 时只返回 openTime >= startTime 的 K 线；请求失败时记录原因并返回空列表
+    private static CompletableFuture<KlineBatch> fetchKlinesAsync(String symbol, String interval, long startTime,
+            int limit) {
+        String url;
         try {
-            long start = System.currentTimeMillis();
-            String url = KLINES_URL + "?symbol=" + URLEncoder.encode(symbol, "UTF-8") + "&interval=5m&limit=" + limit;
-            String json = httpGet(url);
+            url = KLINES_URL + "?symbol=" + URLEncoder.encode(symbol, "UTF-8") + "&interval=" + interval + "&limit="
+                    + limit;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        if (startTime > 0)
+            url += "&startTime=" + startTime;
+        long start = System.currentTimeMillis();
+        // 批量 K 线优先级最低，由调度器按请求权重限速，不会挤占提醒和持仓查询；
+        // 响应体由 KlineParser 直接从流中解析成基本类型数组
+        PooledHttpClient.BodyParser parser = in -> KlineParser.parse(in, limit);
+        return REQUEST_SCHEDULER.submit(url, RequestScheduler.Priority.LOW, parser).thenApply(result -> {
+            if (!result.isSuccessful()) {
+                failedKlineFetches.incrementAndGet();
+                KLINE_FETCH_FAILED.inc();
+                System.err.println("[K线] " + symbol + " 请求失败 (HTTP " + result.code + "): " + result.body);
+                return new KlineBatch(0);
+            }
+            KlineBatch batch = (KlineBatch) result.parsed;
             long end = System.currentTimeMillis() - start;
             if (count % 300 == 0) {// 每三百次请求打一次日志
-                System.out.println("接口返回,symbol:" + symbol + "耗时：" + end + ",json:" + json);
+                System.out.println("接口返回,symbol:" + symbol + "耗时：" + end + ",K线根数:" + batch.size());
                 System.out.println("-------------------------------------------");
             }
             count++;
-            if (json == null || json.isEmpty())
-                return Collections.emptyList();
-            Gson gson = new Gson();
-            JsonArray arr = gson.fromJson(json, JsonArray.class);
-            List<CandleRaw> list = new ArrayList<>();
-            for (JsonElement el : arr) {
-                JsonArray k = el.getAsJsonArray();
-                long openTime = k.get(0).getAsLong(); // 🌟 获取 K 线起始时间戳
-                BigDecimal open = k.get(1).getAsBigDecimal();
-                BigDecimal high = k.get(2).getAsBigDecimal();
-                BigDecimal low = k.get(3).getAsBigDecimal();
-                BigDecimal close = k.get(4).getAsBigDecimal();
-                BigDecimal volume = k.get(5).getAsBigDecimal();
-                list.add(new CandleRaw(openTime, open, high, low, close, volume)); // 🌟 传入时间戳
-            }
-            return list;
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            return Collections.emptyList();
-        }
-    }
-
-    private static Candle aggregate(String symbol, List<CandleRaw> raws) {
-        BigDecimal open = raws.get(0).open;
-        BigDecimal close = raws.get(raws.size() - 1).close;
-        BigDecimal high = raws.stream().map(r -> r.high).max(BigDecimal::compareTo).get();
-        BigDecimal low = raws.stream().map(r -> r.low).min(BigDecimal::compareTo).get();
-        return new Candle(symbol, open, high, low, close);
+            fetchedCandles.addAndGet(batch.size());
+            KLINES_FETCHED.add(batch.size());
+            if (batch.isEmpty())
+                KLINE_FETCH_EMPTY.inc();
+            return batch;
+        }).exceptionally(e -> {
+            failedKlineFetches.incrementAndGet();
+            KLINE_FETCH_FAILED.inc();
+            System.err.println("[K线] " + symbol + " 请求异常: " + e.getMessage());
+            return new KlineBatch(0);
+        });
     }
 
     // 🌟 新增：高频价格检查逻辑
     private static void checkPriceAlerts() {
         // 🌟 只有当存在启用的提醒时才调用币安API
-        List<PriceAlert> enabledAlerts = priceAlerts.stream().filter(a -> a.enabled).collect(Collectors.toList());
-        if (enabledAlerts.isEmpty())
+        AlertIndex index = alertIndex;
+        if (index.isEmpty())
             return;
 
-        // 分类提醒：价格类 vs 盈亏类
-        boolean hasPriceAlerts = enabledAlerts.stream().anyMatch(a -> "price_reached".equals(a.type));
-        boolean hasPnLAlerts = enabledAlerts.stream()
-                .anyMatch(a -> "profit_reached".equals(a.type) || "loss_reached".equals(a.type)
-                        || "profit_step".equals(a.type) || "loss_step".equals(a.type)); // 🐛 修复：步进类型同样需要拉取持仓数据
-
         Map<String, BigDecimal> currentTickerPrices = new HashMap<>();
-        if (hasPriceAlerts) {
-            String json = httpGet(TICKER_PRICE_URL);
+        // 🌟 推送已连接时价格提醒由 onStreamPrice 处理，这里只负责盈亏提醒
+        if (index.hasPriceAlerts() && !priceStreamConnected()) {
+            String json = httpGet(TICKER_PRICE_URL, RequestScheduler.Priority.HIGH);
             if (json != null && !json.isEmpty()) {
                 JsonArray arr = new Gson().fromJson(json, JsonArray.class);
                 for (JsonElement el : arr) {
@@ -605,84 +910,47 @@ public class BinanceCombinedServer {
             }
         }
 
-        JsonArray positions = null;
-        if (hasPnLAlerts) {
-            String json = httpGetWithSignature(POSITION_RISK_URL, "");
-            if (json != null && !json.contains("\"error\"")) {
-                positions = new Gson().fromJson(json, JsonArray.class);
-            } else {
-                System.err.println("[盈亏查询] ❌ 获取持仓失败: " + json);
-            }
+        // 🌟 持仓推送在线时盈亏提醒由 onTrackedPnl 实时处理，否则轮询 positionRisk
+        Map<String, BigDecimal> currentPnLMap = null;
+        if (index.hasPnlAlerts() && !positionTrackerLive()) { // 🐛 修复：步进类型同样需要拉取持仓数据
+            currentPnLMap = fetchPositionPnL();
         }
 
-        // 🌟 提取并计算所有当前的 PnL 情况（只处理有实际持仓的记录）
-        Map<String, BigDecimal> currentPnLMap = new HashMap<>();
-        if (positions != null) {
-            BigDecimal totalAccPnL = BigDecimal.ZERO;
-            int activeCount = 0;
-            for (JsonElement p : positions) {
-                JsonObject obj = p.getAsJsonObject();
-                BigDecimal posAmt = obj.get("positionAmt").getAsBigDecimal();
-                if (posAmt.compareTo(BigDecimal.ZERO) == 0)
-                    continue; // 跳过无持仓的
-                activeCount++;
-                BigDecimal pnl = obj.get("unRealizedProfit").getAsBigDecimal();
-                String sym = obj.get("symbol").getAsString();
-                currentPnLMap.put(sym, currentPnLMap.getOrDefault(sym, BigDecimal.ZERO).add(pnl));
-                totalAccPnL = totalAccPnL.add(pnl);
+        long now = System.currentTimeMillis();
+        // 🌟 价格提醒：每个交易对只访问本次价格变动穿越的目标价
+        if (!currentTickerPrices.isEmpty()) {
+            synchronized (PRICE_ALERT_LOCK) {
+                for (String symbol : index.symbols()) {
+                    BigDecimal currentPrice = currentTickerPrices.get(symbol);
+                    BigDecimal lastPrice = lastPrices.get(symbol);
+                    if (currentPrice != null && lastPrice != null)
+                        checkPriceCrossing(index, symbol, lastPrice, currentPrice, now);
+                }
+                lastPrices.putAll(currentTickerPrices);
             }
-            currentPnLMap.put("ACCOUNT", totalAccPnL);
-            globalTotalPnL = totalAccPnL; // 🌟 更新全局总盈亏
-            System.out.println("[盈亏查询] 实际持仓: " + activeCount + " 个，总盈亏: " + totalAccPnL);
         }
 
-        long now = System.currentTimeMillis();
-        for (PriceAlert alert : enabledAlerts) {
-            try {
-                // 🌟 冷却时间检查
-                if (now - alert.lastTriggerTime < (long) alert.cooldownSeconds * 1000) {
-                    continue;
-                }
+        // 🌟 盈亏提醒
+        if (currentPnLMap != null) {
+            checkPnlAlerts(index, currentPnLMap, now);
+        }
+    }
 
-                if ("price_reached".equals(alert.type)) {
-                    // 原有的价格提醒逻辑
-                    if (alert.symbol == null || alert.symbol.isEmpty() || alert.targetPrice == null)
+    // 🌟 按当前各交易对及全账户（ACCOUNT）的未实现盈亏判断盈亏提醒，轮询与推送共用
+    private static void checkPnlAlerts(AlertIndex index, Map<String, BigDecimal> currentPnLMap, long now) {
+        synchronized (PNL_ALERT_LOCK) {
+            for (PriceAlert alert : index.pnlAlerts()) {
+                try {
+                    // 🌟 冷却时间检查
+                    if (!alert.enabled || now - alert.lastTriggerTime < (long) alert.cooldownSeconds * 1000) {
                         continue;
-
-                    BigDecimal currentPrice = currentTickerPrices.get(alert.symbol);
-                    BigDecimal lastPrice = lastPrices.get(alert.symbol);
-
-                    if (currentPrice != null) {
-                        if (lastPrice != null) {
-                            boolean triggered = false;
-                            if (lastPrice.compareTo(alert.targetPrice) < 0
-                                    && currentPrice.compareTo(alert.targetPrice) >= 0)
-                                triggered = true;
-                            else if (lastPrice.compareTo(alert.targetPrice) > 0
-                                    && currentPrice.compareTo(alert.targetPrice) <= 0)
-                                triggered = true;
-
-                            if (triggered) {
-                                System.out.println("🚨 触发价格提醒: " + alert.symbol + " 当前价: " + currentPrice + " 目标价: "
-                                        + alert.targetPrice);
-                                sendWxPusherNotification(alert, currentPrice, alert.targetPrice);
-                                alert.lastTriggerTime = now;
-                                if ("once".equals(alert.frequency)) {
-                                    alert.isTriggered = true;
-                                    alert.enabled = false;
-                                }
-                                savePriceAlertsToFile();
-                            }
-                        }
                     }
-                } else if ("profit_reached".equals(alert.type) || "loss_reached".equals(alert.type)
-                        || "profit_step".equals(alert.type) || "loss_step".equals(alert.type)) {
+
                     // 🌟 盈亏提醒逻辑 (支持固定阈值和步进)
-                    if (positions == null || alert.targetPrice == null
-                            || alert.targetPrice.compareTo(BigDecimal.ZERO) <= 0)
+                    if (alert.targetPrice == null || alert.targetPrice.compareTo(BigDecimal.ZERO) <= 0)
                         continue;
 
-                    String pnlKey = (alert.symbol == null || alert.symbol.trim().isEmpty()) ? "ACCOUNT"
+                    String pnlKey = (alert.symbol == null || alert.symbol.trim().isEmpty()) ? PositionTracker.ACCOUNT_KEY
                             : alert.symbol.trim().toUpperCase();
                     BigDecimal currentPnL = currentPnLMap.getOrDefault(pnlKey, BigDecimal.ZERO);
                     BigDecimal lastPnL = lastPnls.get(pnlKey);
@@ -707,12 +975,7 @@ public class BinanceCombinedServer {
                                         + targetThreshold;
                                 // 🌟 传递固定阈值作为显示目标
                                 sendWxPusherNotification(alert, currentPnL, alert.targetPrice);
-                                alert.lastTriggerTime = now;
-                                if ("once".equals(alert.frequency)) {
-                                    alert.isTriggered = true;
-                                    alert.enabled = false;
-                                }
-                                savePriceAlertsToFile();
+                                markTriggered(alert, now);
                             }
                         } else {
                             // 🌟 步进逻辑 (每逢 X)
@@ -758,12 +1021,7 @@ public class BinanceCombinedServer {
                                 System.out.println("🚨 触发盈亏提醒 (" + alert.type + "): " + scope + " " + triggerMsg
                                         + " 当前PnL: " + currentPnL);
                                 sendWxPusherNotification(alert, currentPnL, crossedBoundary);
-                                alert.lastTriggerTime = now;
-                                if ("once".equals(alert.frequency)) {
-                                    alert.isTriggered = true;
-                                    alert.enabled = false;
-                                }
-                                savePriceAlertsToFile();
+                                markTriggered(alert, now);
                             }
                         }
                     } else {
@@ -784,24 +1042,171 @@ public class BinanceCombinedServer {
                             String scope = (alert.symbol == null || alert.symbol.isEmpty()) ? "全账户" : alert.symbol;
                             System.out.println("🚨 触发初始盈亏提醒: " + scope + " 当前盈亏: " + currentPnL);
                             sendWxPusherNotification(alert, currentPnL, initialBoundary);
-                            alert.lastTriggerTime = now;
-                            if ("once".equals(alert.frequency)) {
-                                alert.isTriggered = true;
-                                alert.enabled = false;
-                            }
-                            savePriceAlertsToFile();
+                            markTriggered(alert, now);
                         }
                     }
+                } catch (Exception e) {
+                    System.err.println("❌ 处理提醒时出错: " + alert.symbol);
+                    e.printStackTrace();
                 }
+            }
+
+            // 🌟 循环结束后更新所有状态，确保每个提醒在当前循环中都能看到相同的“上一次状态”
+            lastPnls.putAll(currentPnLMap);
+        }
+    }
+
+    // 签名请求 positionRisk 并汇总未实现盈亏（只处理有实际持仓的记录），失败时返回 null
+    private static Map<String, BigDecimal> fetchPositionPnL() {
+        String json = httpGetWithSignature(POSITION_RISK_URL, "", RequestScheduler.Priority.HIGH);
+        if (json == null || json.contains("\"error\"")) {
+            System.err.println("[盈亏查询] ❌ 获取持仓失败: " + json);
+            return null;
+        }
+        JsonArray positions = new Gson().fromJson(json, JsonArray.class);
+        Map<String, BigDecimal> currentPnLMap = new HashMap<>();
+        BigDecimal totalAccPnL = BigDecimal.ZERO;
+        int activeCount = 0;
+        for (JsonElement p : positions) {
+            JsonObject obj = p.getAsJsonObject();
+            BigDecimal posAmt = obj.get("positionAmt").getAsBigDecimal();
+            if (posAmt.compareTo(BigDecimal.ZERO) == 0)
+                continue; // 跳过无持仓的
+            activeCount++;
+            BigDecimal pnl = obj.get("unRealizedProfit").getAsBigDecimal();
+            String sym = obj.get("symbol").getAsString();
+            currentPnLMap.put(sym, currentPnLMap.getOrDefault(sym, BigDecimal.ZERO).add(pnl));
+            totalAccPnL = totalAccPnL.add(pnl);
+        }
+        currentPnLMap.put(PositionTracker.ACCOUNT_KEY, totalAccPnL);
+        updateGlobalPnL(totalAccPnL); // 🌟 更新全局总盈亏
+        System.out.println("[盈亏查询] 实际持仓: " + activeCount + " 个，总盈亏: " + totalAccPnL);
+        return currentPnLMap;
+    }
+
+    // 价格从 lastPrice 变为 currentPrice 时触发被穿越的提醒，调用方需持有 PRICE_ALERT_LOCK
+    private static void checkPriceCrossing(AlertIndex index, String symbol, BigDecimal lastPrice,
+            BigDecimal currentPrice, long now) {
+        for (PriceAlert alert : index.crossed(symbol, lastPrice, currentPrice)) {
+            try {
+                // 🌟 冷却时间检查
+                if (!AlertIndex.ready(alert, now))
+                    continue;
+                System.out.println("🚨 触发价格提醒: " + alert.symbol + " 当前价: " + currentPrice + " 目标价: "
+                        + alert.targetPrice);
+                sendWxPusherNotification(alert, currentPrice, alert.targetPrice);
+                markTriggered(alert, now);
             } catch (Exception e) {
                 System.err.println("❌ 处理提醒时出错: " + alert.symbol);
                 e.printStackTrace();
             }
         }
+    }
+
+    // ------------------- 价格推送 -------------------
+
+    private static void startPriceStream() {
+        priceStream = new PriceStreamClient(ALERT_STREAM_URL, new PriceStreamClient.Listener() {
+            @Override
+            public void onPrice(String symbol, BigDecimal price) {
+                onStreamPrice(symbol, price);
+            }
+
+            @Override
+            public void onConnectionChanged(boolean connected) {
+                System.out.println(connected ? "[价格推送] 价格提醒切换为推送模式" : "[价格推送] 连接断开，价格提醒回退到 REST 轮询");
+            }
+        });
+        priceStream.connect();
+    }
+
+    private static boolean priceStreamConnected() {
+        PriceStreamClient stream = priceStream;
+        return stream != null && stream.isConnected();
+    }
+
+    // ------------------- 持仓推送 -------------------
+
+    private static void startPositionTracker() {
+        PositionTracker.Api api = new PositionTracker.Api() {
+            @Override
+            public String createListenKey() throws IOException {
+                JsonObject obj = new Gson().fromJson(listenKeyRequest("POST"), JsonObject.class);
+                return obj.get("listenKey").getAsString();
+            }
+
+            @Override
+            public void keepAliveListenKey() throws IOException {
+                listenKeyRequest("PUT");
+            }
+
+            @Override
+            public JsonArray positionRisk() throws IOException {
+                String json = httpGetWithSignature(POSITION_RISK_URL, "", RequestScheduler.Priority.NORMAL);
+                if (json == null || json.contains("\"error\""))
+                    throw new IOException("获取持仓失败: " + json);
+                return new Gson().fromJson(json, JsonArray.class);
+            }
+        };
+        positionTracker = new PositionTracker(USER_STREAM_URL, POSITION_RECONCILE_MS, api,
+                BinanceCombinedServer::onTrackedPnl);
+        positionTracker.start();
+    }
+
+    // listenKey 的申请（POST）与续期（PUT）只需要 API Key，不需要签名
+    private static String listenKeyRequest(String method) throws IOException {
+        PooledHttpClient.Result result = await(REQUEST_SCHEDULER.submit(LISTEN_KEY_URL, () -> PooledHttpClient
+                .request(LISTEN_KEY_URL, Collections.singletonMap("X-MBX-APIKEY", BINANCE_API_KEY))
+                .method(method, PooledHttpClient.EMPTY_BODY).build(), RequestScheduler.Priority.HIGH));
+        if (!result.isSuccessful())
+            throw new IOException("listenKey " + method + " 失败 (HTTP " + result.code + "): " + result.body);
+        return result.body;
+    }
+
+    // 🌟 更新总盈亏并推送给订阅的页面（数值不变时 PushChannel 不会重复推送）
+    private static void updateGlobalPnL(BigDecimal total) {
+        globalTotalPnL = total;
+        PUSH.publish(PushChannel.PNL, JsonSnapshot.of(pnlJson(total)));
+    }
+
+    private static String pnlJson(BigDecimal total) {
+        return "{\"totalPnL\": " + (total != null ? total.toString() : "\"0\"") + "}";
+    }
+
+    private static boolean positionTrackerLive() {
+        PositionTracker tracker = positionTracker;
+        return tracker != null && tracker.isLive();
+    }
+
+    // 🌟 持仓或标记价格变化时立即更新总盈亏并判断盈亏提醒
+    private static void onTrackedPnl(Map<String, BigDecimal> pnl, int activeCount) {
+        updateGlobalPnL(pnl.get(PositionTracker.ACCOUNT_KEY));
+        AlertIndex index = alertIndex;
+        if (index.hasPnlAlerts())
+            checkPnlAlerts(index, pnl, System.currentTimeMillis());
+    }
+
+    // 🌟 每次推送都立即判断该交易对的提醒，与轮询使用同一份 lastPrices，断线重连后能补上间隔内的穿越
+    private static void onStreamPrice(String symbol, BigDecimal price) {
+        synchronized (PRICE_ALERT_LOCK) {
+            BigDecimal lastPrice = lastPrices.put(symbol, price);
+            if (lastPrice != null)
+                checkPriceCrossing(alertIndex, symbol, lastPrice, price, System.currentTimeMillis());
+        }
+    }
 
-        // 🌟 循环结束后更新所有状态，确保每个提醒在当前循环中都能看到相同的“上一次状态”
-        lastPrices.putAll(currentTickerPrices);
-        lastPnls.putAll(currentPnLMap);
+    // 🌟 记录触发时间；一次性提醒触发后禁用并从索引中移除
+    private static void markTriggered(PriceAlert alert, long now) {
+        if (AlertIndex.markTriggered(alert, now))
+            rebuildAlertIndex();
+        ALERT_STORE.markDirty(alert);
+    }
+
+    // 推送/轮询线程、持仓推送线程和 POST /price-alerts 都会重建，加锁保证不会用旧列表的结果覆盖新列表的
+    private static void rebuildAlertIndex() {
+        synchronized (ALERT_INDEX_LOCK) {
+            alertIndex = AlertIndex.build(priceAlerts);
+        }
     }
 
     // 🌟 新增：发送 WxPusher 通知
@@ -851,63 +1256,46 @@ public class BinanceCombinedServer {
                 "<p><b>" + valueLabel + ":</b> <span style='color:red'>" + currentValue + "</span></p>" +
                 "<p><b>时间:</b> " + new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + "</p>";
 
-        JsonObject body = new JsonObject();
-        body.addProperty("content", content);
         // summary 显示当前实际盈亏值
-        body.addProperty("summary", typeDisplay + "提醒: " + scope + " 达到 " + currentValue);
-        body.addProperty("contentType", 2); // HTML
-        body.addProperty("spt", WX_PUSHER_SPT);
-
-        httpPost(WX_PUSHER_URL, body.toString());
+        String summary = typeDisplay + "提醒: " + scope + " 达到 " + currentValue;
+        NOTIFIER.submit(new NotificationDispatcher.Notification(WX_PUSHER_SPT, summary, content));
     }
 
-    // 🌟 新增：通用的 HTTP POST 方法
-    private static String httpPost(String urlStr, String jsonBody) {
+    // 等待调度器返回的响应，最多等 REQUEST_TIMEOUT_MS；限流暂停时抛出 RequestScheduler.PausedException
+    private static PooledHttpClient.Result await(CompletableFuture<PooledHttpClient.Result> future) throws IOException {
         try {
-            URL url = new URL(urlStr);
-            HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = jsonBody.getBytes("utf-8");
-                os.write(input, 0, input.length);
-            }
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode >= 200 && responseCode < 300) {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), "utf-8"))) {
-                    StringBuilder sb = new StringBuilder();
-                    String line;
-                    while ((line = br.readLine()) != null)
-                        sb.append(line);
-                    return sb.toString();
-                }
-            } else {
-                System.out.println("HTTP POST 错误: " + responseCode);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+            return future.get(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("等待币安响应超时 (" + REQUEST_TIMEOUT_MS + "ms)");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
         }
-        return null;
     }
 
-    private static String httpGet(String urlStr) {
+    // 限流暂停期间直接返回 503，不占用 Jetty 线程排队等待
+    private static String rejectIfPaused(spark.Response res) {
+        long paused = REQUEST_SCHEDULER.pausedMs();
+        if (paused <= 0)
+            return null;
+        res.status(503);
+        res.header("Retry-After", String.valueOf((paused + 999) / 1000));
+        return "{\"error\":\"Binance rate limited, retry after " + paused + "ms\"}";
+    }
+
+    // 币安 REST 请求统一经过 REQUEST_SCHEDULER，按优先级排队并计入请求权重
+    private static String httpGet(String urlStr, RequestScheduler.Priority priority) {
         try {
-            URL url = new URL(urlStr);
-            HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null)
-                sb.append(line);
-            br.close();
-            return sb.toString();
+            PooledHttpClient.Result result = await(REQUEST_SCHEDULER.submit(urlStr, priority));
+            if (!result.isSuccessful()) {
+                System.out.println("HTTP GET 错误 (HTTP " + result.code + "): " + urlStr);
+                return null;
+            }
+            return result.body;
         } catch (Exception e) {
             e.printStackTrace();
             return null;
@@ -915,50 +1303,27 @@ public class BinanceCombinedServer {
     }
 
     // 🌟 新增：带 API Key 头部的 HTTP GET 请求（用于需要认证的接口）
-    private static String httpGetWithApiKey(String urlStr) {
-        HttpsURLConnection conn = null;
+    private static String httpGetWithApiKey(String urlStr, RequestScheduler.Priority priority) {
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpsURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            conn.setRequestProperty("X-MBX-APIKEY", BINANCE_API_KEY);
-
-            int responseCode = conn.getResponseCode();
-
-            // 读取响应
-            InputStream is = (responseCode >= 200 && responseCode < 300)
-                    ? conn.getInputStream()
-                    : conn.getErrorStream();
-
-            if (is == null) {
-                return "{\"error\":\"No response from server, HTTP " + responseCode + "\"}";
-            }
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null)
-                sb.append(line);
-            br.close();
-
-            String response = sb.toString();
-
-            // 如果是错误响应，包装成错误格式
-            if (responseCode >= 400) {
-                System.out.println("Binance API 错误 (HTTP " + responseCode + "): " + response);
-                return "{\"error\":\"Binance API error: " + response.replace("\"", "\\\"") + "\"}";
-            }
-
-            return response;
+            PooledHttpClient.Result result = await(REQUEST_SCHEDULER.submit(urlStr, () -> PooledHttpClient
+                    .request(urlStr, Collections.singletonMap("X-MBX-APIKEY", BINANCE_API_KEY)).get().build(),
+                    priority));
+            return binanceResponse(result);
         } catch (Exception e) {
             e.printStackTrace();
             return "{\"error\":\"" + e.getMessage() + "\"}";
         }
     }
 
+    // 如果是错误响应，包装成错误格式
+    private static String binanceResponse(PooledHttpClient.Result result) {
+        if (result.code >= 400) {
+            System.out.println("Binance API 错误 (HTTP " + result.code + "): " + result.body);
+            return "{\"error\":\"Binance API error: " + result.body.replace("\"", "\\\"") + "\"}";
+        }
+        return result.body;
+    }
+
     // 🌟 新增：生成 HMAC SHA256 签名
     private static String hmacSha256(String data, String secret) throws Exception {
         Mac mac = Mac.getInstance("HmacSHA256");
@@ -976,53 +1341,30 @@ public class BinanceCombinedServer {
     }
 
     // 🌟 新增：带签名的 Binance API 请求
-    private static String httpGetWithSignature(String baseUrl, String queryParams) {
+    private static String httpGetWithSignature(String baseUrl, String queryParams,
+            RequestScheduler.Priority priority) {
         try {
-            // 添加 timestamp
-            long timestamp = System.currentTimeMillis();
-            String params = (queryParams != null && !queryParams.isEmpty())
-                    ? queryParams + "&timestamp=" + timestamp
-                    : "timestamp=" + timestamp;
-
-            // 生成签名
-            String signature = hmacSha256(params, BINANCE_SECRET_KEY);
-            params += "&signature=" + signature;
-
-            String fullUrl = baseUrl + "?" + params;
-
-            URL url = new URL(fullUrl);
-            HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            conn.setRequestProperty("X-MBX-APIKEY", BINANCE_API_KEY);
-
-            int responseCode = conn.getResponseCode();
-
-            InputStream is = (responseCode >= 200 && responseCode < 300)
-                    ? conn.getInputStream()
-                    : conn.getErrorStream();
-
-            if (is == null) {
-                return "{\"error\":\"No response from server, HTTP " + responseCode + "\"}";
-            }
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null)
-                sb.append(line);
-            br.close();
-
-            String response = sb.toString();
-
-            if (responseCode >= 400) {
-                System.out.println("Binance API 错误 (HTTP " + responseCode + "): " + response);
-                return "{\"error\":\"Binance API error: " + response.replace("\"", "\\\"") + "\"}";
-            }
+            // 在请求真正发出时才签名，排队或重试后 timestamp 依然有效；权重按未签名的地址计算
+            String unsigned = (queryParams != null && !queryParams.isEmpty()) ? baseUrl + "?" + queryParams : baseUrl;
+            PooledHttpClient.Result result = await(REQUEST_SCHEDULER.submit(unsigned, () -> {
+                // 添加 timestamp
+                long timestamp = System.currentTimeMillis();
+                String params = (queryParams != null && !queryParams.isEmpty())
+                        ? queryParams + "&timestamp=" + timestamp
+                        : "timestamp=" + timestamp;
+
+                // 生成签名
+                try {
+                    params += "&signature=" + hmacSha256(params, BINANCE_SECRET_KEY);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
 
-            return response;
+                String fullUrl = baseUrl + "?" + params;
+                return PooledHttpClient.request(fullUrl, Collections.singletonMap("X-MBX-APIKEY", BINANCE_API_KEY))
+                        .get().build();
+            }, priority));
+            return binanceResponse(result);
         } catch (Exception e) {
             e.printStackTrace();
             return "{\"error\":\"" + e.getMessage() + "\"}";
@@ -1041,25 +1383,47 @@ public class BinanceCombinedServer {
         System.setProperty("https.proxyPort", "7897");
     }
 
-    private static void saveDcaSettingsToFile(String json) {
-        try (PrintWriter out = new PrintWriter(new FileWriter(DCA_FILE_PATH))) {
-            out.print(json);
-            System.out.println("DCA 配置已保存至文件");
-        } catch (IOException e) {
+    private interface DcaUpdate {
+        DcaStore.Version apply() throws Exception;
+    }
+
+    // 执行一次 DCA 修改并映射为 HTTP 状态：412 版本已变化，409 test 不满足，400 补丁无效
+    private static String updateDcaSettings(spark.Response res, DcaUpdate update) {
+        res.type("application/json; charset=UTF-8");
+        JsonObject result = new JsonObject();
+        String message;
+        try {
+            // 返回本次写入的版本，不能读 current()：其它页面的修改可能已经在这之后发布
+            DcaStore.Version version = update.apply();
+            res.header("ETag", version.snapshot.etag);
+            result.addProperty("status", "ok");
+            result.addProperty("version", version.number);
+            return result.toString();
+        } catch (DcaStore.ConflictException e) {
+            res.status(412);
+            res.header("ETag", DCA_STORE.current().snapshot.etag);
+            message = e.getMessage();
+        } catch (JsonPatch.TestFailedException e) {
+            res.status(409);
+            message = e.getMessage();
+        } catch (JsonPatch.PatchException | JsonParseException e) {
+            res.status(400);
+            message = e.getMessage();
+        } catch (Exception e) {
             e.printStackTrace();
+            res.status(500);
+            message = String.valueOf(e.getMessage());
         }
+        result.addProperty("status", "error");
+        result.addProperty("message", message);
+        return result.toString();
     }
 
     private static void loadDcaSettingsFromFile() {
-        File file = new File(DCA_FILE_PATH);
-        if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line);
-                }
-                dcaSettingsCache = sb.toString();
+        // 只有补丁日志、还没有快照时也要回放
+        if (new File(DCA_FILE_PATH).exists() || new File(DCA_FILE_PATH + ".log").exists()) {
+            try {
+                DCA_STORE.load();
                 System.out.println("已从文件加载 DCA 配置");
             } catch (IOException e) {
                 e.printStackTrace();
@@ -1067,25 +1431,40 @@ public class BinanceCombinedServer {
         }
     }
 
-    // 🌟 新增：价格提醒文件持久化
-    private static void savePriceAlertsToFile() {
-        try (PrintWriter out = new PrintWriter(new FileWriter(PRICE_ALERT_FILE_PATH))) {
-            out.print(new GsonBuilder().setPrettyPrinting().create().toJson(priceAlerts));
-            System.out.println("价格提醒配置已保存至文件");
-        } catch (IOException e) {
+    // 🌟 打开指数历史存储，首次启动时把旧的 JSON 历史迁移进去
+    private static void openIndexStore() {
+        try {
+            TimeSeriesStore store = new TimeSeriesStore(Paths.get(INDEX_STORE_DIR), "index", 1, INDEX_SEGMENT_RECORDS,
+                    INDEX_RETENTION_MS);
+            AltFuturesIndex index = new AltFuturesIndex(INDEX_POOL_SIZE, INDEX_KLINE_COUNT, KLINE_INTERVAL_MS, store);
+            File file = new File(INDEX_FILE_PATH);
+            if (store.isEmpty() && file.exists()) {
+                try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                    IndexPoint[] points = new Gson().fromJson(reader, IndexPoint[].class);
+                    if (points != null)
+                        index.load(Arrays.asList(points));
+                }
+                index.flush();
+                System.out.println("已将 " + INDEX_FILE_PATH + " 迁移到 " + INDEX_STORE_DIR + "，共 " + index.size() + " 个点");
+            }
+            System.out.println("指数历史：" + index.size() + " 个点");
+            altIndex = index;
+        } catch (Exception e) {
+            System.err.println("❌ 打开指数历史存储失败，指数计算已停用");
             e.printStackTrace();
         }
     }
 
+    // 🌟 价格提醒持久化：快照 + 变更日志，见 AlertPersistence
     private static void loadPriceAlertsFromFile() {
         File file = new File(PRICE_ALERT_FILE_PATH);
         System.out.println("正在尝试加载价格提醒文件: " + file.getAbsolutePath());
         if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                Gson gson = new Gson();
-                PriceAlert[] alerts = gson.fromJson(reader, PriceAlert[].class);
-                if (alerts != null) {
-                    priceAlerts = new CopyOnWriteArrayList<>(Arrays.asList(alerts));
+            try {
+                List<PriceAlert> alerts = ALERT_STORE.load();
+                if (!alerts.isEmpty()) {
+                    priceAlerts = new CopyOnWriteArrayList<>(alerts);
+                    rebuildAlertIndex();
                     System.out.println("✅ 成功从文件加载 " + priceAlerts.size() + " 条价格提醒");
                 } else {
                     System.out.println("⚠️ 价格提醒文件存在但解析为空");
@@ -1097,5 +1476,6 @@ public class BinanceCombinedServer {
         } else {
             System.out.println("ℹ️ 价格提醒文件不存在，将使用空列表");
         }
+        ALERT_STORE.start();
     }
 }
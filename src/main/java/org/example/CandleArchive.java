@@ -0,0 +1,102 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已收盘 5m K 线的归档：每个交易对一个 {@link TimeSeriesStore}，记录为 openTime + open/high/low/close/volume。
+ * <p>
+ * 每次刷新后把环形缓冲区中比归档更新的已收盘 K 线追加进去，只写增量；内存缓冲区被覆盖后历史仍可从归档读取。
+ */
+final class CandleArchive {
+
+    static final int OPEN = 0, HIGH = 1, LOW = 2, CLOSE = 3, VOLUME = 4;
+    private static final int VALUE_COUNT = 5;
+    private static final int SEGMENT_RECORDS = 2016; // 每段一周的 5m K 线
+
+    private final Path dir;
+    private final long retentionMs;
+    private final Map<String, TimeSeriesStore> stores = new ConcurrentHashMap<>();
+
+    CandleArchive(Path dir, long retentionMs) {
+        this.dir = dir;
+        this.retentionMs = retentionMs;
+    }
+
+    TimeSeriesStore store(String symbol) throws IOException {
+        TimeSeriesStore store = stores.get(symbol);
+        if (store == null) {
+            synchronized (stores) {
+                store = stores.get(symbol);
+                if (store == null) {
+                    store = new TimeSeriesStore(dir, symbol, VALUE_COUNT, SEGMENT_RECORDS, retentionMs);
+                    stores.put(symbol, store);
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * 追加 series 中比归档更新的已收盘 K 线（最后一根可能尚未收盘，不归档）。
+     *
+     * @return 追加的根数
+     */
+    int archiveClosed(String symbol, CandleSeries series) throws IOException {
+        TimeSeriesStore store = store(symbol);
+        long last = store.lastTimestamp();
+        int added = 0;
+        double[] values = new double[VALUE_COUNT];
+        synchronized (series) {
+            int start = series.size() - 1; // 从最新一根往前找到第一根未归档的
+            while (start > 0 && series.openTime(start - 1) > last)
+                start--;
+            for (int i = start; i < series.size() - 1; i++) {
+                long t = series.openTime(i);
+                values[OPEN] = series.open(i);
+                values[HIGH] = series.high(i);
+                values[LOW] = series.low(i);
+                values[CLOSE] = series.close(i);
+                values[VOLUME] = series.volume(i);
+                if (store.append(t, values))
+                    added++;
+            }
+        }
+        return added;
+    }
+
+    /** 归档目录中已有的交易对（按段文件名 {@code <symbol>-<序号>.seg}） */
+    Set<String> symbols() throws IOException {
+        Set<String> symbols = new TreeSet<>();
+        if (!Files.isDirectory(dir))
+            return symbols;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.seg")) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                int dash = name.lastIndexOf('-');
+                if (dash > 0)
+                    symbols.add(name.substring(0, dash));
+            }
+        }
+        return symbols;
+    }
+
+    /** 读取 [from, to] 内归档的 K 线，按时间升序 */
+    KlineBatch load(String symbol, long from, long to) throws IOException {
+        TimeSeriesStore store = store(symbol);
+        KlineBatch batch = new KlineBatch((int) Math.min(store.count(from, to), Integer.MAX_VALUE));
+        store.scan(from, to, (t, v) -> batch.add(t, v[OPEN], v[HIGH], v[LOW], v[CLOSE], v[VOLUME]));
+        return batch;
+    }
+
+    void flush() {
+        for (TimeSeriesStore store : stores.values())
+            store.flush();
+    }
+}
@@ -0,0 +1,266 @@
+package org.example;
+
+/**
+ * 长周期窗口（超过 {@link WindowAggregator#BASE_WINDOW_LIMIT} 根 5m，例如 1d、1w）的分层汇总：5m → 15m → 1h → 4h → 1d。
+ * <p>
+ * 每一层保存最近若干根已收盘的该周期 K 线（小环形缓冲区），以及当前周期内已收盘 5m K 线的汇总（桶）。
+ * 5m K 线收盘时逐层更新桶，跨过周期边界时桶收盘写入该层的缓冲区，每根 5m K 线 O(层数)。周期按 UTC 对齐，与交易所一致。
+ * <p>
+ * 长度为 L 根 5m 的窗口选用最细的、⌈L/G⌉ 不超过 BASE_WINDOW_LIMIT 的层 G，由该层最近 ⌈L/G⌉-1 个周期
+ * + 当前周期（桶 + 最新一根可能未收盘的 5m）组成，查询读取的 K 线根数与窗口长度无关。
+ * 窗口起点对齐到该层的周期边界，实际跨度在 (⌈L/G⌉-1)·G 到 ⌈L/G⌉·G 之间，例如 1d 窗口 = 23 个整点小时 + 当前小时。
+ * <p>
+ * 启动时可以用交易所原生的高周期 K 线填充各层（{@link #seed}），不需要拉取成百上千根 5m K 线，之后只由收盘的 5m K 线增量维护。
+ * 不保存成交量（排行和筛选都不使用长窗口的成交量）。所有方法由 CandleSeries 在持有自身锁时调用。
+ */
+final class CandleRollup {
+
+    static final long BASE_MS = 5 * 60 * 1000L;
+    // 各层周期包含的 5m 根数，以及对应的交易所 K 线周期
+    private static final int[] LEVEL_FACTORS = { 3, 12, 48, 288 };
+    private static final String[] LEVEL_INTERVALS = { "15m", "1h", "4h", "1d" };
+
+    private static final class Level {
+        final String interval;
+        final long periodMs;
+        final long[] openTime; // 环形缓冲区：已收盘的周期 K 线，按时间升序
+        final double[] open, high, low;
+        int head, size;
+        // 当前周期的桶（已收盘 5m K 线的汇总），bucketStart < 0 表示为空
+        long bucketStart = -1;
+        double bucketOpen, bucketHigh, bucketLow;
+        long validFrom = Long.MAX_VALUE; // 从该时间起的周期数据完整
+        long coveredUntil = Long.MIN_VALUE; // 种子已包含 openTime 早于此的 5m K 线
+        boolean seeded; // 已用交易所 K 线填充，出现断档后重置
+
+        Level(int factor, String interval, int capacity) {
+            this.interval = interval;
+            this.periodMs = factor * BASE_MS;
+            openTime = new long[capacity];
+            open = new double[capacity];
+            high = new double[capacity];
+            low = new double[capacity];
+        }
+
+        int slot(int i) {
+            int s = head + i;
+            return s >= openTime.length ? s - openTime.length : s;
+        }
+
+        long start(long t) {
+            return t - Math.floorMod(t, periodMs);
+        }
+
+        void push(long t, double o, double h, double l) {
+            if (size > 0 && openTime[slot(size - 1)] >= t)
+                return;
+            int s;
+            if (size < openTime.length) {
+                s = slot(size);
+                size++;
+            } else {
+                s = head;
+                head = head + 1 == openTime.length ? 0 : head + 1;
+            }
+            openTime[s] = t;
+            open[s] = o;
+            high[s] = h;
+            low[s] = l;
+        }
+
+        void closeBucket() {
+            if (bucketStart >= 0)
+                push(bucketStart, bucketOpen, bucketHigh, bucketLow);
+            bucketStart = -1;
+        }
+
+        /** 缓冲区中第一根 openTime >= from 的下标 */
+        int firstFrom(long from) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (openTime[slot(mid)] < from)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private final Level[] levels; // 只创建窗口用到的层，由细到粗
+    private final Level[] windowLevel; // 每个长窗口使用的层
+    private final int[] windowParts; // 每个长窗口包含的周期数
+    private long lastRolled = Long.MIN_VALUE; // 已汇总的最后一根 5m K 线
+
+    /**
+     * @param lengths  长窗口的 5m 根数
+     * @param maxParts 每个窗口最多包含的周期数
+     */
+    CandleRollup(int[] lengths, int maxParts) {
+        int[] capacity = new int[LEVEL_FACTORS.length];
+        int[] levelOf = new int[lengths.length];
+        windowParts = new int[lengths.length];
+        for (int w = 0; w < lengths.length; w++) {
+            int level = 0;
+            while (level < LEVEL_FACTORS.length - 1 && ceilDiv(lengths[w], LEVEL_FACTORS[level]) > maxParts)
+                level++;
+            levelOf[w] = level;
+            windowParts[w] = ceilDiv(lengths[w], LEVEL_FACTORS[level]);
+            capacity[level] = Math.max(capacity[level], windowParts[w]);
+        }
+        Level[] byIndex = new Level[LEVEL_FACTORS.length];
+        int used = 0;
+        for (int i = 0; i < LEVEL_FACTORS.length; i++) {
+            if (capacity[i] > 0) {
+                byIndex[i] = new Level(LEVEL_FACTORS[i], LEVEL_INTERVALS[i], capacity[i]);
+                used++;
+            }
+        }
+        levels = new Level[used];
+        for (int i = 0, j = 0; i < byIndex.length; i++) {
+            if (byIndex[i] != null)
+                levels[j++] = byIndex[i];
+        }
+        windowLevel = new Level[lengths.length];
+        for (int w = 0; w < lengths.length; w++)
+            windowLevel[w] = byIndex[levelOf[w]];
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    // ------------------- 查询（窗口下标为长窗口中的序号） -------------------
+
+    /** 当前周期为 lastOpenTime 所在周期时，窗口是否有完整数据 */
+    boolean ready(int w, long lastOpenTime) {
+        Level level = windowLevel[w];
+        return level.validFrom <= windowStart(w, lastOpenTime);
+    }
+
+    private long windowStart(int w, long lastOpenTime) {
+        Level level = windowLevel[w];
+        return level.start(lastOpenTime) - (windowParts[w] - 1) * level.periodMs;
+    }
+
+    /** 窗口开盘价，currentOpen 为最新一根 5m 的开盘价（窗口只有当前周期时使用） */
+    double open(int w, long lastOpenTime, double currentOpen) {
+        Level level = windowLevel[w];
+        long from = windowStart(w, lastOpenTime);
+        int i = level.firstFrom(from);
+        if (i < level.size)
+            return level.open[level.slot(i)];
+        if (level.bucketStart >= from)
+            return level.bucketOpen;
+        return currentOpen;
+    }
+
+    /** 窗口内已汇总部分的最高价，不含最新一根 5m */
+    double high(int w, long lastOpenTime) {
+        Level level = windowLevel[w];
+        double h = Double.NEGATIVE_INFINITY;
+        for (int i = level.firstFrom(windowStart(w, lastOpenTime)); i < level.size; i++)
+            h = Math.max(h, level.high[level.slot(i)]);
+        if (level.bucketStart >= windowStart(w, lastOpenTime))
+            h = Math.max(h, level.bucketHigh);
+        return h;
+    }
+
+    /** 窗口内已汇总部分的最低价，不含最新一根 5m */
+    double low(int w, long lastOpenTime) {
+        Level level = windowLevel[w];
+        double l = Double.POSITIVE_INFINITY;
+        for (int i = level.firstFrom(windowStart(w, lastOpenTime)); i < level.size; i++)
+            l = Math.min(l, level.low[level.slot(i)]);
+        if (level.bucketStart >= windowStart(w, lastOpenTime))
+            l = Math.min(l, level.bucketLow);
+        return l;
+    }
+
+    // ------------------- 维护 -------------------
+
+    /** 一根 5m K 线收盘，重复或更早的 K 线（重新拉取的历史）忽略 */
+    void onClosed(long t, double o, double h, double l) {
+        if (t <= lastRolled)
+            return;
+        lastRolled = t;
+        for (Level level : levels) {
+            if (t < level.coveredUntil)
+                continue;
+            long start = level.start(t);
+            if (start != level.bucketStart) {
+                level.closeBucket();
+                if (level.validFrom == Long.MAX_VALUE)
+                    level.validFrom = t == start ? start : start + level.periodMs; // 第一个周期只有部分数据
+                level.bucketStart = start;
+                level.bucketOpen = o;
+                level.bucketHigh = h;
+                level.bucketLow = l;
+            } else {
+                level.bucketHigh = Math.max(level.bucketHigh, h);
+                level.bucketLow = Math.min(level.bucketLow, l);
+            }
+        }
+    }
+
+    /**
+     * 5m 数据从 firstOpenTime 开始整体替换前调用：已汇总的数据与新数据之间有断档时所有层都需要重新填充。
+     */
+    void prepareReset(long firstOpenTime) {
+        if (lastRolled < firstOpenTime - BASE_MS) {
+            for (Level level : levels)
+                level.seeded = false;
+        }
+    }
+
+    /** 该层是否还没有用交易所 K 线填充（从未填充、上次请求失败或出现过断档） */
+    boolean needsSeed(int level) {
+        return !levels[level].seeded;
+    }
+
+    int levelCount() {
+        return levels.length;
+    }
+
+    /** 该层对应的交易所 K 线周期 */
+    String interval(int level) {
+        return levels[level].interval;
+    }
+
+    /** 填充该层需要的交易所 K 线根数（已收盘的 + 当前周期） */
+    int seedLimit(int level) {
+        return levels[level].openTime.length + 1;
+    }
+
+    /**
+     * 用交易所原生周期的 K 线（按时间升序）替换该层的数据：当前周期的那根（可能未收盘）作为桶，其余写入缓冲区。
+     * 桶已包含 lastOpenTime 之前的 5m K 线，这些 K 线之后收盘时不再重复计入。与周期边界不对齐的 K 线被忽略。
+     */
+    void seed(int index, KlineBatch klines, long lastOpenTime) {
+        Level level = levels[index];
+        long current = level.start(lastOpenTime);
+        level.head = level.size = 0;
+        level.bucketStart = -1;
+        level.validFrom = Long.MAX_VALUE;
+        level.coveredUntil = Long.MIN_VALUE;
+        for (int i = 0; i < klines.size; i++) {
+            long t = klines.openTime[i];
+            if (Math.floorMod(t, level.periodMs) != 0 || t > current)
+                continue;
+            if (level.validFrom == Long.MAX_VALUE)
+                level.validFrom = t;
+            if (t == current) {
+                level.bucketStart = t;
+                level.bucketOpen = klines.open[i];
+                level.bucketHigh = klines.high[i];
+                level.bucketLow = klines.low[i];
+                level.coveredUntil = lastOpenTime;
+            } else {
+                level.push(t, klines.open[i], klines.high[i], klines.low[i]);
+            }
+        }
+        lastRolled = Math.max(lastRolled, lastOpenTime - BASE_MS);
+        level.seeded = level.validFrom != Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,202 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * 单个交易对的 5m K 线环形缓冲区，按列存放在基本类型数组中。
+ * <p>
+ * 容量固定，写满后覆盖最旧的 K 线，写入和读取都不产生对象分配。下标 0 为最旧的一根，
+ * {@code size() - 1} 为最新（可能尚未收盘）的一根。
+ * <p>
+ * 线程安全约定：写方法均为 synchronized；读取多根 K 线时调用方需要 {@code synchronized (series)}，
+ * 以保证读到的是同一个版本的数据。
+ * <p>
+ * 构造时传入窗口长度则同时维护一个 {@link WindowAggregator}，写入时增量更新各窗口的最高/最低价。
+ */
+final class CandleSeries {
+
+    private final int capacity;
+    private final long[] openTime;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+
+    private int head = 0; // 最旧一根在数组中的位置
+    private int size = 0;
+    private long version = 0; // 每次写入递增，便于上层判断数据是否变化
+    private long seqEnd = 0; // 下一根追加的 K 线的序号，第 i 根的序号为 seqEnd - size + i
+    private final WindowAggregator windows;
+
+    CandleSeries(int capacity) {
+        this(capacity, null);
+    }
+
+    CandleSeries(int capacity, int[] windowLengths) {
+        this.capacity = capacity;
+        this.openTime = new long[capacity];
+        this.open = new double[capacity];
+        this.high = new double[capacity];
+        this.low = new double[capacity];
+        this.close = new double[capacity];
+        this.volume = new double[capacity];
+        this.windows = (windowLengths == null || windowLengths.length == 0) ? null
+                : new WindowAggregator(this, windowLengths);
+    }
+
+    // ------------------- 读取 -------------------
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long version() {
+        return version;
+    }
+
+    private int slot(int i) {
+        int s = head + i;
+        return s >= capacity ? s - capacity : s;
+    }
+
+    long openTime(int i) {
+        return openTime[slot(i)];
+    }
+
+    double open(int i) {
+        return open[slot(i)];
+    }
+
+    double high(int i) {
+        return high[slot(i)];
+    }
+
+    double low(int i) {
+        return low[slot(i)];
+    }
+
+    double close(int i) {
+        return close[slot(i)];
+    }
+
+    double volume(int i) {
+        return volume[slot(i)];
+    }
+
+    long lastOpenTime() {
+        return size == 0 ? 0 : openTime(size - 1);
+    }
+
+    /** 第 i 根 K 线的全局序号（追加顺序，不随环形覆盖变化） */
+    long seqOf(int i) {
+        return seqEnd - size + i;
+    }
+
+    /** 序号对应的下标，调用方保证该序号仍在缓冲区内 */
+    int indexOfSeq(long seq) {
+        return (int) (seq - (seqEnd - size));
+    }
+
+    /** 多窗口聚合器，未配置窗口时为 null */
+    WindowAggregator windows() {
+        return windows;
+    }
+
+    // ------------------- 写入 -------------------
+
+    /** 追加一根 K 线，缓冲区已满时覆盖最旧的一根 */
+    synchronized void append(long t, double o, double h, double l, double c, double v) {
+        boolean hadLast = size > 0;
+        int s;
+        if (size < capacity) {
+            s = slot(size);
+            size++;
+        } else {
+            s = head;
+            head = head + 1 == capacity ? 0 : head + 1;
+        }
+        seqEnd++;
+        write(s, t, o, h, l, c, v);
+        if (windows != null && hadLast)
+            windows.onClosed(seqEnd - 2); // 原来的最后一根收盘
+    }
+
+    /**
+     * 推送/增量数据的统一入口：与最后一根同一 openTime 则原地替换，更晚则追加，更早则忽略。
+     *
+     * @return 是否写入
+     */
+    synchronized boolean update(long t, double o, double h, double l, double c, double v) {
+        if (size > 0) {
+            long last = openTime(size - 1);
+            if (t < last)
+                return false;
+            if (t == last) {
+                write(slot(size - 1), t, o, h, l, c, v);
+                return true;
+            }
+        }
+        append(t, o, h, l, c, v);
+        return true;
+    }
+
+    /** 合并一段按时间升序的 K 线：openTime 不早于第一根的旧数据被丢弃，然后依次追加 */
+    synchronized void merge(List<BinanceCombinedServer.CandleRaw> candles) {
+        merge(KlineBatch.of(candles));
+    }
+
+    synchronized void merge(KlineBatch candles) {
+        if (candles.isEmpty())
+            return;
+        long firstNew = candles.openTime[0];
+        int removed = 0;
+        while (size > 0 && openTime(size - 1) >= firstNew) {
+            size--;
+            seqEnd--;
+            removed++;
+        }
+        // 只替换了未收盘的最后一根时队列依然有效，改写了已收盘的 K 线则需要重建
+        boolean rebuild = windows != null && removed > 1;
+        if (rebuild)
+            windows.clear();
+        for (int i = 0; i < candles.size; i++) {
+            append(candles.openTime[i], candles.open[i], candles.high[i], candles.low[i], candles.close[i],
+                    candles.volume[i]);
+        }
+        if (rebuild)
+            windows.rebuild();
+    }
+
+    /** 用一段完整的 K 线替换全部数据 */
+    synchronized void reset(List<BinanceCombinedServer.CandleRaw> candles) {
+        reset(KlineBatch.of(candles));
+    }
+
+    synchronized void reset(KlineBatch candles) {
+        head = 0;
+        size = 0;
+        version++;
+        if (windows != null)
+            windows.clear();
+        merge(candles);
+    }
+
+    private void write(int s, long t, double o, double h, double l, double c, double v) {
+        openTime[s] = t;
+        open[s] = o;
+        high[s] = h;
+        low[s] = l;
+        close[s] = c;
+        volume[s] = v;
+        version++;
+    }
+}
@@ -0,0 +1,135 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * 带版本号的 DCA 配置。
+ * <p>
+ * 每次修改（整体替换或 JSON Patch）版本号加一，并生成新的 {@link JsonSnapshot}（ETag 由内容决定）：
+ * <ul>
+ * <li>条件读取：If-None-Match 命中 ETag 返回 304</li>
+ * <li>乐观并发：修改请求带 If-Match 且与当前 ETag 不一致时拒绝，提示客户端先重新加载</li>
+ * <li>持久化：快照文件（格式与以前相同）+ 只追加的补丁日志，每次修改只追加本次的补丁，
+ * 日志超过 {@link #COMPACT_THRESHOLD} 条时重写快照并清空日志（见 {@link SnapshotLog}）。先写盘再发布新版本，写入失败时内存中仍是旧版本</li>
+ * </ul>
+ * 版本号从启动时的毫秒时间戳（或日志中更大的版本）开始递增，日志条目带版本号，加载时跳过已并入快照的条目。
+ */
+final class DcaStore {
+
+    private static final int COMPACT_THRESHOLD = 200;
+
+    /** If-Match 与当前版本不一致 */
+    static final class ConflictException extends Exception {
+        ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    /** 某个版本的文档快照 */
+    static final class Version {
+        final long number;
+        final JsonSnapshot snapshot;
+
+        Version(long number, JsonSnapshot snapshot) {
+            this.number = number;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final SnapshotLog files;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private JsonElement document;
+    private volatile Version current;
+
+    DcaStore(Path snapshotPath, String defaultJson) {
+        this.files = new SnapshotLog(snapshotPath, "DCA 配置");
+        this.document = gson.fromJson(defaultJson, JsonElement.class);
+        this.current = new Version(System.currentTimeMillis(), JsonSnapshot.of(gson.toJson(document)));
+    }
+
+    // ------------------- 读取 -------------------
+
+    Version current() {
+        return current;
+    }
+
+    // ------------------- 修改 -------------------
+
+    /** 整体替换（兼容旧的 POST），ifMatch 为空时不做并发检查，返回发布的新版本 */
+    synchronized Version replace(String json, String ifMatch) throws ConflictException, IOException {
+        JsonElement doc = gson.fromJson(json, JsonElement.class);
+        if (doc == null || !doc.isJsonObject())
+            throw new JsonParseException("DCA 配置必须是 JSON 对象");
+        checkMatch(ifMatch);
+        Version next = next(doc);
+        files.writeSnapshot(next.snapshot.json, next.number); // 全量替换本身就是整份文档，直接重写快照
+        publish(doc, next);
+        return next;
+    }
+
+    /** 应用 JSON Patch，返回发布的新版本 */
+    synchronized Version patch(JsonArray ops, String ifMatch)
+            throws ConflictException, JsonPatch.PatchException, IOException {
+        checkMatch(ifMatch);
+        JsonElement doc = JsonPatch.apply(document, ops);
+        if (!doc.isJsonObject())
+            throw new JsonPatch.PatchException("DCA 配置必须是 JSON 对象");
+        Version next = next(doc);
+        if (files.entries() >= COMPACT_THRESHOLD) {
+            files.writeSnapshot(next.snapshot.json, next.number);
+        } else {
+            JsonObject line = new JsonObject();
+            line.addProperty("v", next.number);
+            line.add("ops", ops);
+            files.append(gson.toJson(line) + "\n", 1);
+        }
+        publish(doc, next);
+        return next;
+    }
+
+    private void checkMatch(String ifMatch) throws ConflictException {
+        if (ifMatch != null && !ifMatch.isEmpty() && !current.snapshot.matches(ifMatch))
+            throw new ConflictException("DCA 配置已被其它页面修改，当前版本 " + current.number);
+    }
+
+    private Version next(JsonElement doc) {
+        return new Version(current.number + 1, JsonSnapshot.of(gson.toJson(doc)));
+    }
+
+    // 写盘成功后才替换内存中的文档，写入失败时请求返回错误、版本不变
+    private void publish(JsonElement doc, Version next) {
+        document = doc;
+        current = next;
+    }
+
+    // ------------------- 持久化 -------------------
+
+    /** 读取快照并回放补丁日志，跳过版本不大于快照版本的条目 */
+    synchronized void load() throws IOException {
+        byte[] snapshot = files.readSnapshot();
+        if (snapshot != null) {
+            JsonElement doc = gson.fromJson(new String(snapshot, StandardCharsets.UTF_8), JsonElement.class);
+            if (doc != null && doc.isJsonObject())
+                document = doc;
+        }
+        long[] version = { current.number };
+        files.replay(entry -> {
+            long v = entry.get("v").getAsLong();
+            if (v <= files.snapshotVersion())
+                return false;
+            document = JsonPatch.apply(document, entry.getAsJsonArray("ops"));
+            version[0] = Math.max(version[0], v);
+            return true;
+        });
+        current = new Version(Math.max(version[0], files.snapshotVersion()), JsonSnapshot.of(gson.toJson(document)));
+    }
+}
@@ -0,0 +1,160 @@
+package org.example;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * RFC 6902 JSON Patch 的子集：支持 add / remove / replace / test，路径为 RFC 6901 JSON Pointer
+ * （{@code /groups/0/rows/-}，{@code ~1} 表示 /，{@code ~0} 表示 ~）。
+ * <p>
+ * {@link #apply} 在文档副本上依次执行全部操作，任一操作失败时抛出异常，原文档保持不变。
+ */
+final class JsonPatch {
+
+    /** 补丁格式错误或路径不存在 */
+    static class PatchException extends Exception {
+        PatchException(String message) {
+            super(message);
+        }
+    }
+
+    /** test 操作不满足，说明客户端基于的文档已经被其它修改改变 */
+    static final class TestFailedException extends PatchException {
+        TestFailedException(String message) {
+            super(message);
+        }
+    }
+
+    private JsonPatch() {
+    }
+
+    /** 返回应用补丁后的新文档 */
+    static JsonElement apply(JsonElement doc, JsonArray ops) throws PatchException {
+        JsonElement result = doc.deepCopy();
+        for (JsonElement el : ops) {
+            if (!el.isJsonObject())
+                throw new PatchException("补丁操作必须是对象: " + el);
+            JsonObject op = el.getAsJsonObject();
+            String name = string(op, "op");
+            String path = string(op, "path");
+            if (!path.isEmpty() && path.charAt(0) != '/')
+                throw new PatchException("路径必须以 / 开头: " + path);
+            switch (name) {
+                case "add":
+                    result = add(result, path, value(op));
+                    break;
+                case "remove":
+                    result = remove(result, path);
+                    break;
+                case "replace":
+                    if (!path.isEmpty())
+                        result = remove(result, path);
+                    result = add(result, path, value(op));
+                    break;
+                case "test":
+                    if (!get(result, path).equals(value(op)))
+                        throw new TestFailedException("test 失败: " + path);
+                    break;
+                default:
+                    throw new PatchException("不支持的补丁操作: " + name);
+            }
+        }
+        return result;
+    }
+
+    private static JsonElement add(JsonElement doc, String path, JsonElement value) throws PatchException {
+        if (path.isEmpty())
+            return value; // 替换整个文档
+        JsonElement parent = get(doc, parentOf(path));
+        String key = lastToken(path);
+        if (parent.isJsonObject()) {
+            parent.getAsJsonObject().add(key, value);
+        } else if (parent.isJsonArray()) {
+            JsonArray arr = parent.getAsJsonArray();
+            int index = "-".equals(key) ? arr.size() : index(key, arr.size() + 1);
+            // JsonArray 没有按下标插入，重建尾部
+            JsonArray tail = new JsonArray();
+            while (arr.size() > index)
+                tail.add(arr.remove(index));
+            arr.add(value);
+            arr.addAll(tail);
+        } else {
+            throw new PatchException("路径的父节点不是对象或数组: " + path);
+        }
+        return doc;
+    }
+
+    private static JsonElement remove(JsonElement doc, String path) throws PatchException {
+        if (path.isEmpty())
+            throw new PatchException("不能删除整个文档");
+        JsonElement parent = get(doc, parentOf(path));
+        String key = lastToken(path);
+        if (parent.isJsonObject()) {
+            if (parent.getAsJsonObject().remove(key) == null)
+                throw new PatchException("路径不存在: " + path);
+        } else if (parent.isJsonArray()) {
+            JsonArray arr = parent.getAsJsonArray();
+            arr.remove(index(key, arr.size()));
+        } else {
+            throw new PatchException("路径的父节点不是对象或数组: " + path);
+        }
+        return doc;
+    }
+
+    private static JsonElement get(JsonElement doc, String path) throws PatchException {
+        JsonElement current = doc;
+        if (path.isEmpty())
+            return current;
+        for (String raw : path.substring(1).split("/", -1)) {
+            String token = unescape(raw);
+            if (current.isJsonObject()) {
+                current = current.getAsJsonObject().get(token);
+            } else if (current.isJsonArray()) {
+                JsonArray arr = current.getAsJsonArray();
+                current = arr.get(index(token, arr.size()));
+            } else {
+                current = null;
+            }
+            if (current == null)
+                throw new PatchException("路径不存在: " + path);
+        }
+        return current;
+    }
+
+    private static String parentOf(String path) {
+        return path.substring(0, path.lastIndexOf('/'));
+    }
+
+    private static String lastToken(String path) {
+        return unescape(path.substring(path.lastIndexOf('/') + 1));
+    }
+
+    private static String unescape(String token) {
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+
+    // 数组下标，必须在 [0, bound) 之内；RFC 6901 不允许前导零和符号（"01"、"+1"）
+    private static int index(String token, int bound) throws PatchException {
+        if (token.matches("0|[1-9][0-9]{0,8}")) {
+            int i = Integer.parseInt(token);
+            if (i < bound)
+                return i;
+        }
+        throw new PatchException("数组下标无效: " + token);
+    }
+
+    private static String string(JsonObject op, String field) throws PatchException {
+        JsonElement el = op.get(field);
+        if (el == null || !el.isJsonPrimitive())
+            throw new PatchException("补丁操作缺少 " + field + ": " + op);
+        return el.getAsString();
+    }
+
+    private static JsonElement value(JsonObject op) throws PatchException {
+        JsonElement el = op.get("value");
+        if (el == null)
+            throw new PatchException("补丁操作缺少 value: " + op);
+        return el.deepCopy();
+    }
+}
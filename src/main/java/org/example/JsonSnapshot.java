@@ -0,0 +1,72 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 一次刷新对应的一份不可变 JSON 快照：原文、gzip 压缩后的字节和基于内容的 ETag。
+ * <p>
+ * 每次刷新只序列化、压缩一次，接口直接输出字节，客户端带上 If-None-Match 且内容未变化时返回 304。
+ */
+final class JsonSnapshot {
+
+    final byte[] json;
+    final byte[] gzip;
+    final String etag;
+    final long createdAt;
+
+    private JsonSnapshot(byte[] json, byte[] gzip, String etag, long createdAt) {
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = etag;
+        this.createdAt = createdAt;
+    }
+
+    static JsonSnapshot of(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return new JsonSnapshot(bytes, gzip(bytes), etag(bytes), System.currentTimeMillis());
+    }
+
+    /** If-None-Match 是否命中当前 ETag（支持逗号分隔的多个值、弱校验前缀 W/ 以及 *） */
+    boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty())
+            return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // 内存流不会抛出 IOException
+        }
+        return bos.toByteArray();
+    }
+
+    static String etag(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < 12; i++) { // 取前 96 位足够区分
+                String hex = Integer.toHexString(0xff & hash[i]);
+                if (hex.length() == 1)
+                    sb.append('0');
+                sb.append(hex);
+            }
+            return sb.append('"').toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一次 K 线接口响应解析出的一段 K 线，按列存放在基本类型数组中（按时间升序），
+ * 由 {@link KlineParser} 直接写入，再整段合并进 {@link CandleSeries}。
+ */
+final class KlineBatch {
+
+    long[] openTime;
+    double[] open;
+    double[] high;
+    double[] low;
+    double[] close;
+    double[] volume;
+    int size = 0;
+
+    KlineBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        openTime = new long[capacity];
+        open = new double[capacity];
+        high = new double[capacity];
+        low = new double[capacity];
+        close = new double[capacity];
+        volume = new double[capacity];
+    }
+
+    static KlineBatch of(List<BinanceCombinedServer.CandleRaw> candles) {
+        KlineBatch batch = new KlineBatch(candles.size());
+        for (BinanceCombinedServer.CandleRaw c : candles) {
+            batch.add(c.openTime, c.open.doubleValue(), c.high.doubleValue(), c.low.doubleValue(),
+                    c.close.doubleValue(), c.volume.doubleValue());
+        }
+        return batch;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(long t, double o, double h, double l, double c, double v) {
+        if (size == openTime.length) {
+            int capacity = size * 2;
+            openTime = Arrays.copyOf(openTime, capacity);
+            open = Arrays.copyOf(open, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            close = Arrays.copyOf(close, capacity);
+            volume = Arrays.copyOf(volume, capacity);
+        }
+        openTime[size] = t;
+        open[size] = o;
+        high[size] = h;
+        low[size] = l;
+        close[size] = c;
+        volume[size] = v;
+        size++;
+    }
+}
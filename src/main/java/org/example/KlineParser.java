@@ -0,0 +1,133 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 币安 K 线接口响应的流式解析：用 Jackson 的 {@link JsonParser} 直接从响应流逐个读取 token，
+ * 价格/成交量字符串直接从解析器的字符缓冲区转换成 double，写入 {@link KlineBatch}。
+ * <p>
+ * 不生成整个响应的 String、不构建 JSON 树，也不为每个字段创建 BigDecimal。
+ * <p>
+ * 响应格式：{@code [[openTime, "open", "high", "low", "close", "volume", closeTime, ...], ...]}，
+ * 只读取前 6 个字段，其余跳过。
+ */
+final class KlineParser {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final int MAX_FAST_DIGITS = 15; // 15 位以内的十进制整数可以用 double 精确表示
+    private static final double[] POW10 = new double[23]; // 10^0 ~ 10^22 都能用 double 精确表示
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private KlineParser() {
+    }
+
+    /** expectedSize 为预计的 K 线根数（通常是请求的 limit），用于预分配列数组 */
+    static KlineBatch parse(InputStream in, int expectedSize) throws IOException {
+        try (JsonParser p = FACTORY.createParser(in)) {
+            JsonToken token = p.nextToken();
+            if (token != JsonToken.START_ARRAY)
+                throw new IOException("K线响应格式错误，期望数组，实际为：" + token);
+            KlineBatch batch = new KlineBatch(expectedSize);
+            while ((token = p.nextToken()) == JsonToken.START_ARRAY) {
+                long t = 0;
+                double o = 0, h = 0, l = 0, c = 0, v = 0;
+                int field = 0;
+                while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null)
+                        throw new EOFException("K线响应意外结束");
+                    switch (field) {
+                        case 0:
+                            t = token == JsonToken.VALUE_NUMBER_INT ? p.getLongValue() : (long) number(p);
+                            break;
+                        case 1:
+                            o = number(p);
+                            break;
+                        case 2:
+                            h = number(p);
+                            break;
+                        case 3:
+                            l = number(p);
+                            break;
+                        case 4:
+                            c = number(p);
+                            break;
+                        case 5:
+                            v = number(p);
+                            break;
+                        default:
+                            p.skipChildren(); // 其余字段不需要
+                    }
+                    field++;
+                }
+                if (field < 6)
+                    throw new IOException("K线字段不足：" + field);
+                batch.add(t, o, h, l, c, v);
+            }
+            if (token != JsonToken.END_ARRAY)
+                throw new IOException("K线响应格式错误：" + token);
+            return batch;
+        }
+    }
+
+    private static double number(JsonParser p) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_STRING)
+            return parseDecimal(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+            return p.getDoubleValue();
+        throw new IOException("K线字段不是数值：" + token);
+    }
+
+    /**
+     * 把十进制字符串转换成 double，结果与 {@link Double#parseDouble} 一致。
+     * <p>
+     * 有效数字不超过 15 位、小数位不超过 22 位时，尾数和 10 的幂都能被 double 精确表示，
+     * 一次除法即得到正确舍入的结果；其它情况（科学计数法、超长数字）交给 Double.parseDouble。
+     */
+    static double parseDecimal(char[] buf, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0; // 有效数字位数（不含前导 0）
+        int scale = 0; // 小数位数
+        boolean dot = false;
+        boolean any = false;
+        for (; i < end; i++) {
+            char ch = buf[i];
+            if (ch >= '0' && ch <= '9') {
+                any = true;
+                if (dot)
+                    scale++;
+                if (mantissa == 0 && ch == '0')
+                    continue;
+                if (++digits > MAX_FAST_DIGITS)
+                    return Double.parseDouble(new String(buf, offset, length));
+                mantissa = mantissa * 10 + (ch - '0');
+            } else if (ch == '.' && !dot) {
+                dot = true;
+            } else {
+                return Double.parseDouble(new String(buf, offset, length));
+            }
+        }
+        if (!any || scale >= POW10.length)
+            return Double.parseDouble(new String(buf, offset, length));
+        double value = scale == 0 ? mantissa : mantissa / POW10[scale];
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,260 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 币安合约 K 线 WebSocket 订阅客户端。
+ * <p>
+ * 按分片（每条连接最多 {@link #STREAMS_PER_CONNECTION} 个 stream）订阅 {@code <symbol>@kline_5m}，
+ * 断线后按指数退避自动重连，连接建立后重新发送 SUBSCRIBE，并通知上层对该分片的币种重新补种 K 线。
+ */
+class KlineStreamClient {
+
+    /** 单条连接订阅的 stream 上限（币安限制每条连接 200 个） */
+    static final int STREAMS_PER_CONNECTION = 200;
+    /** 单条 SUBSCRIBE 消息携带的 stream 数量，避免消息过大 */
+    private static final int STREAMS_PER_SUBSCRIBE = 50;
+    private static final long RECONNECT_MIN_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60 * 1000;
+
+    /** 上层回调 */
+    interface Listener {
+        /** 收到一根 K 线的推送（未收盘的 K 线会被反复推送） */
+        void onKline(String symbol, BinanceCombinedServer.CandleRaw candle, boolean closed);
+
+        /** 分片（重新）连接成功，这些币种在断线期间可能丢失了推送，需要重新补种 */
+        void onResubscribed(Collection<String> symbols);
+    }
+
+    private final String baseUrl;
+    private final Listener listener;
+    private final Gson gson = new Gson();
+    private final List<Shard> shards = new ArrayList<>();
+    private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "kline-stream-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean closed = false;
+
+    KlineStreamClient(String baseUrl, Listener listener) {
+        this.baseUrl = baseUrl;
+        this.listener = listener;
+    }
+
+    /**
+     * 确保给定的币种全部处于订阅状态。只新增订阅，已下架的币种保留在原分片中，
+     * 由上层在排行时过滤，避免频繁重建连接。
+     */
+    synchronized void ensureSubscribed(Collection<String> symbols) {
+        Set<String> known = new HashSet<>();
+        for (Shard shard : shards) {
+            known.addAll(shard.symbols);
+        }
+        List<String> added = new ArrayList<>();
+        for (String symbol : symbols) {
+            if (known.add(symbol)) {
+                added.add(symbol);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+
+        Iterator<String> it = added.iterator();
+        // 先填满最后一个未满的分片
+        if (!shards.isEmpty()) {
+            Shard last = shards.get(shards.size() - 1);
+            List<String> extra = new ArrayList<>();
+            while (it.hasNext() && last.symbols.size() + extra.size() < STREAMS_PER_CONNECTION) {
+                extra.add(it.next());
+            }
+            if (!extra.isEmpty()) {
+                last.subscribe(extra);
+            }
+        }
+        while (it.hasNext()) {
+            List<String> chunk = new ArrayList<>();
+            while (it.hasNext() && chunk.size() < STREAMS_PER_CONNECTION) {
+                chunk.add(it.next());
+            }
+            Shard shard = new Shard(shards.size(), chunk);
+            shards.add(shard);
+            shard.connect();
+        }
+        System.out.println("[K线推送] 新增订阅 " + added.size() + " 个交易对，当前连接数：" + shards.size());
+    }
+
+    /** 已连接的分片数 */
+    synchronized int connectedShards() {
+        int n = 0;
+        for (Shard shard : shards) {
+            if (shard.conn != null && shard.conn.isOpen())
+                n++;
+        }
+        return n;
+    }
+
+    synchronized void close() {
+        closed = true;
+        reconnectScheduler.shutdownNow();
+        for (Shard shard : shards) {
+            if (shard.conn != null)
+                shard.conn.close();
+        }
+    }
+
+    static String streamName(String symbol) {
+        return symbol.toLowerCase(Locale.ROOT) + "@kline_5m";
+    }
+
+    /** 解析 combined stream 推送：{"stream":"btcusdt@kline_5m","data":{"e":"kline","s":"BTCUSDT","k":{...}}} */
+    void handleMessage(String message) {
+        JsonObject root = gson.fromJson(message, JsonObject.class);
+        if (root == null || !root.has("data")) {
+            // SUBSCRIBE 的回执 {"result":null,"id":1}
+            return;
+        }
+        JsonObject data = root.getAsJsonObject("data");
+        if (!data.has("k"))
+            return;
+        JsonObject k = data.getAsJsonObject("k");
+        String symbol = k.get("s").getAsString();
+        BinanceCombinedServer.CandleRaw candle = new BinanceCombinedServer.CandleRaw(
+                k.get("t").getAsLong(),
+                k.get("o").getAsBigDecimal(),
+                k.get("h").getAsBigDecimal(),
+                k.get("l").getAsBigDecimal(),
+                k.get("c").getAsBigDecimal(),
+                k.get("v").getAsBigDecimal());
+        listener.onKline(symbol, candle, k.get("x").getAsBoolean());
+    }
+
+    // 与 initProxy() 设置的系统代理保持一致，Java-WebSocket 不会自动读取系统属性
+    private static Proxy systemProxy() {
+        String host = System.getProperty("https.proxyHost");
+        String port = System.getProperty("https.proxyPort");
+        if (host == null || port == null)
+            return Proxy.NO_PROXY;
+        return new Proxy(Proxy.Type.HTTP, new InetSocketAddress(host, Integer.parseInt(port)));
+    }
+
+    // ------------------- 分片连接 -------------------
+    private class Shard {
+        final int id;
+        final List<String> symbols;
+        volatile Connection conn;
+        int attempts = 0;
+        int requestId = 0;
+
+        Shard(int id, List<String> symbols) {
+            this.id = id;
+            this.symbols = new ArrayList<>(symbols);
+        }
+
+        void connect() {
+            if (closed)
+                return;
+            try {
+                Connection c = new Connection(this, new URI(baseUrl));
+                if (baseUrl.startsWith("wss")) {
+                    c.setProxy(systemProxy());
+                }
+                c.setConnectionLostTimeout(60);
+                conn = c;
+                c.connect();
+            } catch (Exception e) {
+                System.err.println("[K线推送] 分片 " + id + " 连接失败: " + e.getMessage());
+                scheduleReconnect();
+            }
+        }
+
+        synchronized void subscribe(List<String> extra) {
+            symbols.addAll(extra);
+            Connection c = conn;
+            if (c != null && c.isOpen()) {
+                sendSubscribe(c, extra);
+            }
+            // 未连接时无需处理，onOpen 会订阅全部 symbols
+        }
+
+        synchronized void sendSubscribe(Connection c, List<String> list) {
+            for (int i = 0; i < list.size(); i += STREAMS_PER_SUBSCRIBE) {
+                JsonArray params = new JsonArray();
+                for (String s : list.subList(i, Math.min(i + STREAMS_PER_SUBSCRIBE, list.size()))) {
+                    params.add(streamName(s));
+                }
+                JsonObject req = new JsonObject();
+                req.addProperty("method", "SUBSCRIBE");
+                req.add("params", params);
+                req.addProperty("id", ++requestId);
+                c.send(req.toString());
+            }
+        }
+
+        void scheduleReconnect() {
+            if (closed)
+                return;
+            long delay = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_MIN_DELAY_MS << Math.min(attempts, 6));
+            attempts++;
+            System.out.println("[K线推送] 分片 " + id + " 将在 " + delay + "ms 后重连（第 " + attempts + " 次）");
+            reconnectScheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private class Connection extends WebSocketClient {
+        private final Shard shard;
+
+        Connection(Shard shard, URI uri) {
+            super(uri);
+            this.shard = shard;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            List<String> symbols;
+            synchronized (shard) {
+                symbols = new ArrayList<>(shard.symbols);
+                shard.sendSubscribe(this, symbols);
+            }
+            shard.attempts = 0;
+            System.out.println("[K线推送] 分片 " + shard.id + " 已连接，订阅 " + symbols.size() + " 个交易对");
+            listener.onResubscribed(symbols);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            try {
+                handleMessage(message);
+            } catch (Exception e) {
+                System.err.println("[K线推送] 解析消息失败: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            System.out.println("[K线推送] 分片 " + shard.id + " 连接关闭: " + code + " " + reason);
+            // 只有当前连接关闭才重连，避免旧连接的回调重复触发
+            if (shard.conn == this) {
+                shard.scheduleReconnect();
+            }
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            System.err.println("[K线推送] 分片 " + shard.id + " 异常: " + ex.getMessage());
+        }
+    }
+}
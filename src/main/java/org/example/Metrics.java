@@ -0,0 +1,209 @@
+package org.example;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 进程内指标，{@link #scrape()} 输出 Prometheus 文本格式（/metrics）。
+ * <p>
+ * 记录路径不加锁：计数器和直方图的每个桶都是 {@link LongAdder}，高并发写入时分散到不同的 cell，
+ * 50 个并发的 K 线请求同时记录也不会互相争用。只有注册指标和抓取时才访问注册表。
+ * 仪表（gauge）在抓取时从各子系统读取当前值，平时没有开销。
+ */
+final class Metrics {
+
+    /** 默认的耗时桶（秒），覆盖单次请求的毫秒级到整轮刷新的分钟级 */
+    static final double[] DEFAULT_BUCKETS = { 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    /** 单调递增的计数器 */
+    static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        void inc() {
+            value.increment();
+        }
+
+        void add(long n) {
+            value.add(n);
+        }
+
+        long get() {
+            return value.sum();
+        }
+    }
+
+    /** 固定桶的耗时直方图，单位秒 */
+    static final class Histogram {
+        private final double[] bounds;
+        private final long[] boundNanos;
+        private final LongAdder[] buckets; // 非累积计数，最后一个为 +Inf
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.boundNanos = new long[bounds.length];
+            for (int i = 0; i < bounds.length; i++)
+                boundNanos[i] = (long) (bounds[i] * 1e9);
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        void observeNanos(long nanos) {
+            int i = 0;
+            while (i < boundNanos.length && nanos > boundNanos[i])
+                i++;
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        /** 记录从 startNanos（System.nanoTime()）到现在的耗时 */
+        void observeSince(long startNanos) {
+            observeNanos(System.nanoTime() - startNanos);
+        }
+
+        long count() {
+            long n = 0;
+            for (LongAdder b : buckets)
+                n += b.sum();
+            return n;
+        }
+
+        private void render(StringBuilder sb, String name, String labels) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < bounds.length ? format(bounds[i]) : "+Inf";
+                sb.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(suffix).append(' ').append(format(sumNanos.sum() / 1e9)).append('\n');
+            sb.append(name).append("_count").append(suffix).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    /** 带一个标签的直方图，标签值（如接口路径）第一次出现时创建 */
+    static final class HistogramFamily {
+        private final String label;
+        private final double[] bounds;
+        private final Map<String, Histogram> children = new ConcurrentHashMap<>();
+
+        HistogramFamily(String label, double[] bounds) {
+            this.label = label;
+            this.bounds = bounds;
+        }
+
+        Histogram labels(String value) {
+            Histogram h = children.get(value);
+            return h != null ? h : children.computeIfAbsent(value, v -> new Histogram(bounds));
+        }
+    }
+
+    // 同名指标的一组样本（HELP / TYPE 只输出一次）
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, DoubleSupplier> samples = new LinkedHashMap<>(); // 标签 -> 取值
+        Histogram histogram;
+        HistogramFamily histogramFamily;
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    // ------------------- 注册 -------------------
+
+    synchronized Counter counter(String name, String help) {
+        Counter c = new Counter();
+        family(name, help, "counter").samples.put("", c::get);
+        return c;
+    }
+
+    /** 由其它子系统维护的累计值（例如通知发送数），抓取时读取 */
+    synchronized void counter(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "counter").samples.put(labels, value);
+    }
+
+    synchronized void gauge(String name, String help, DoubleSupplier value) {
+        gauge(name, help, "", value);
+    }
+
+    synchronized void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "gauge").samples.put(labels, value);
+    }
+
+    synchronized Histogram histogram(String name, String help) {
+        Family f = family(name, help, "histogram");
+        if (f.histogram == null)
+            f.histogram = new Histogram(DEFAULT_BUCKETS);
+        return f.histogram;
+    }
+
+    synchronized HistogramFamily histogram(String name, String help, String label) {
+        Family f = family(name, help, "histogram");
+        if (f.histogramFamily == null)
+            f.histogramFamily = new HistogramFamily(label, DEFAULT_BUCKETS);
+        return f.histogramFamily;
+    }
+
+    private Family family(String name, String help, String type) {
+        Family f = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!f.type.equals(type))
+            throw new IllegalArgumentException("指标 " + name + " 已注册为 " + f.type);
+        return f;
+    }
+
+    // ------------------- 输出 -------------------
+
+    /** Prometheus 文本格式 0.0.4 */
+    synchronized String scrape() {
+        StringBuilder sb = new StringBuilder(8192);
+        for (Family f : families.values()) {
+            sb.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+            for (Map.Entry<String, DoubleSupplier> e : f.samples.entrySet()) {
+                double value;
+                try {
+                    value = e.getValue().getAsDouble();
+                } catch (RuntimeException ex) {
+                    continue; // 数据源尚未初始化
+                }
+                sb.append(f.name);
+                if (!e.getKey().isEmpty())
+                    sb.append('{').append(e.getKey()).append('}');
+                sb.append(' ').append(format(value)).append('\n');
+            }
+            if (f.histogram != null)
+                f.histogram.render(sb, f.name, "");
+            if (f.histogramFamily != null) {
+                for (Map.Entry<String, Histogram> e : new TreeMap<>(f.histogramFamily.children).entrySet())
+                    e.getValue().render(sb, f.name, f.histogramFamily.label + "=\"" + escape(e.getKey()) + "\"");
+            }
+        }
+        return sb.toString();
+    }
+
+    static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double v) {
+        if (Double.isNaN(v))
+            return "NaN";
+        if (Double.isInfinite(v))
+            return v > 0 ? "+Inf" : "-Inf";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15)
+            return Long.toString((long) v);
+        return Double.toString(v);
+    }
+}
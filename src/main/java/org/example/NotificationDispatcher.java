@@ -0,0 +1,205 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.util.*;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WxPusher 通知的异步发送器：提醒判断线程只负责入队，网络请求在独立的工作线程中完成。
+ * <p>
+ * 每个接收方（spt）一个待发送队列，同一接收方同一时间最多一个发送任务，两次发送至少间隔 minIntervalMs：
+ * <ul>
+ * <li>合并：入队后等待 {@link #COALESCE_DELAY_MS} 再发送，期间以及限流等待期间到达的通知合并成一条摘要消息
+ * （例如同一轮检查中多个 profit_step 跨越台阶）</li>
+ * <li>重试：发送失败时整批放回队首，按指数退避重试，超过 {@link #MAX_ATTEMPTS} 次后丢弃</li>
+ * <li>背压：所有接收方的待发送通知总数超过 capacity 时丢弃新通知，不阻塞调用方</li>
+ * </ul>
+ */
+final class NotificationDispatcher {
+
+    private static final long COALESCE_DELAY_MS = 200;
+    private static final int MAX_BATCH = 20; // 单条摘要最多合并的通知数
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_MIN_DELAY_MS = 1000;
+    private static final long RETRY_MAX_DELAY_MS = 60 * 1000;
+    private static final int SUMMARY_MAX_LENGTH = 100; // WxPusher 摘要长度上限
+
+    /** 一条待发送的通知 */
+    static final class Notification {
+        final String recipient;
+        final String summary;
+        final String content; // HTML
+
+        Notification(String recipient, String summary, String content) {
+            this.recipient = recipient;
+            this.summary = summary;
+            this.content = content;
+        }
+    }
+
+    private static final class Recipient {
+        final String spt;
+        final ArrayDeque<Notification> pending = new ArrayDeque<>();
+        boolean scheduled; // 已有发送任务在排队或执行
+        long nextAllowedAt;
+        int attempts;
+
+        Recipient(String spt) {
+            this.spt = spt;
+        }
+    }
+
+    private final String url;
+    private final int capacity;
+    private final long minIntervalMs;
+    private final Gson gson = new Gson();
+    private final Map<String, Recipient> recipients = new HashMap<>();
+    private final ScheduledThreadPoolExecutor workers;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong(); // 成功发送的消息数（摘要算一条）
+    private final AtomicLong merged = new AtomicLong(); // 被合并进摘要的通知数
+    private final AtomicLong failed = new AtomicLong(); // 发送失败的次数（含重试）
+    private final AtomicLong dropped = new AtomicLong(); // 队列已满或重试耗尽而丢弃的通知数
+
+    NotificationDispatcher(String url, int workerCount, int capacity, long minIntervalMs) {
+        this.url = url;
+        this.capacity = capacity;
+        this.minIntervalMs = minIntervalMs;
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = new ScheduledThreadPoolExecutor(workerCount, r -> {
+            Thread t = new Thread(r, "wxpusher-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** 入队，不等待网络；队列已满时丢弃并返回 false */
+    boolean submit(Notification notification) {
+        if (pendingCount.incrementAndGet() > capacity) {
+            pendingCount.decrementAndGet();
+            dropped.incrementAndGet();
+            System.err.println("[通知] 队列已满，丢弃通知: " + notification.summary);
+            return false;
+        }
+        synchronized (recipients) {
+            Recipient r = recipients.computeIfAbsent(notification.recipient, Recipient::new);
+            r.pending.addLast(notification);
+            if (!r.scheduled) {
+                r.scheduled = true;
+                long delay = Math.max(COALESCE_DELAY_MS, r.nextAllowedAt - System.currentTimeMillis());
+                workers.schedule(() -> flush(r), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    int pending() {
+        return pendingCount.get();
+    }
+
+    long sent() {
+        return sent.get();
+    }
+
+    long merged() {
+        return merged.get();
+    }
+
+    long failed() {
+        return failed.get();
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    // ------------------- 发送 -------------------
+
+    private void flush(Recipient r) {
+        List<Notification> batch = new ArrayList<>();
+        synchronized (recipients) {
+            while (!r.pending.isEmpty() && batch.size() < MAX_BATCH)
+                batch.add(r.pending.pollFirst());
+        }
+        boolean ok = batch.isEmpty() || send(r.spt, batch);
+        long now = System.currentTimeMillis();
+        synchronized (recipients) {
+            long delay;
+            if (ok) {
+                pendingCount.addAndGet(-batch.size());
+                if (batch.size() > 1)
+                    merged.addAndGet(batch.size());
+                r.attempts = 0;
+                r.nextAllowedAt = now + minIntervalMs;
+                delay = minIntervalMs;
+            } else if (++r.attempts >= MAX_ATTEMPTS) {
+                pendingCount.addAndGet(-batch.size());
+                dropped.addAndGet(batch.size());
+                System.err.println("[通知] 重试 " + MAX_ATTEMPTS + " 次仍失败，丢弃 " + batch.size() + " 条通知");
+                r.attempts = 0;
+                delay = minIntervalMs;
+            } else {
+                // 放回队首，下次与新到的通知一起发送
+                for (int i = batch.size() - 1; i >= 0; i--)
+                    r.pending.addFirst(batch.get(i));
+                delay = Math.min(RETRY_MAX_DELAY_MS, RETRY_MIN_DELAY_MS << (r.attempts - 1));
+                r.nextAllowedAt = now + delay;
+            }
+            if (r.pending.isEmpty()) {
+                r.scheduled = false;
+            } else {
+                workers.schedule(() -> flush(r), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private boolean send(String spt, List<Notification> batch) {
+        JsonObject body = new JsonObject();
+        body.addProperty("content", content(batch));
+        body.addProperty("summary", summary(batch));
+        body.addProperty("contentType", 2); // HTML
+        body.addProperty("spt", spt);
+        try {
+            PooledHttpClient.Result result = PooledHttpClient.postJson(url, body.toString());
+            if (result.isSuccessful() && accepted(result.body)) {
+                sent.incrementAndGet();
+                return true;
+            }
+            System.err.println("[通知] WxPusher 发送失败 (HTTP " + result.code + "): " + result.body);
+        } catch (Exception e) {
+            System.err.println("[通知] WxPusher 发送异常: " + e.getMessage());
+        }
+        failed.incrementAndGet();
+        return false;
+    }
+
+    // WxPusher 业务状态码 1000 表示成功；响应不是 JSON 时以 HTTP 状态为准
+    private boolean accepted(String body) {
+        try {
+            JsonObject obj = gson.fromJson(body, JsonObject.class);
+            return obj == null || !obj.has("code") || obj.get("code").getAsInt() == 1000;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    static String content(List<Notification> batch) {
+        if (batch.size() == 1)
+            return batch.get(0).content;
+        StringBuilder sb = new StringBuilder("<p><b>📬 合并 " + batch.size() + " 条提醒</b></p>");
+        for (Notification n : batch)
+            sb.append("<hr/>").append(n.content);
+        return sb.toString();
+    }
+
+    static String summary(List<Notification> batch) {
+        String summary = batch.size() == 1 ? batch.get(0).summary
+                : batch.size() + " 条提醒: " + batch.get(0).summary + " 等";
+        return summary.length() > SUMMARY_MAX_LENGTH ? summary.substring(0, SUMMARY_MAX_LENGTH) : summary;
+    }
+}
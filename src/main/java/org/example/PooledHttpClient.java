@@ -0,0 +1,139 @@
+package org.example;
+
+import okhttp3.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局共享的 HTTP 客户端（OkHttp）：连接池 + keep-alive 复用 TLS 连接，异步回调，按主机限制并发。
+ * <p>
+ * 代理沿用 initProxy() 设置的系统属性（OkHttp 默认使用系统 ProxySelector）。
+ */
+final class PooledHttpClient {
+
+    /** 同一主机同时进行中的请求上限，批量拉取 K 线时超出的请求在调度器中排队 */
+    static final int MAX_REQUESTS_PER_HOST = Integer.parseInt(
+            BinanceCombinedServer.getenvOrDefault("http_max_per_host", "20"));
+    private static final int MAX_REQUESTS = 128;
+    private static final int MAX_IDLE_CONNECTIONS = 32;
+    private static final MediaType JSON = MediaType.parse("application/json; charset=UTF-8");
+    /** 不带参数的 POST/PUT 使用 */
+    static final RequestBody EMPTY_BODY = RequestBody.create(null, new byte[0]);
+
+    private static final OkHttpClient CLIENT;
+
+    static {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        CLIENT = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .writeTimeout(10, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /** 直接从响应流解析响应体，避免先读成 String */
+    interface BodyParser {
+        Object parse(InputStream in) throws IOException;
+    }
+
+    /** 一次请求的结果：状态码、响应体和响应头；使用 BodyParser 且请求成功时 body 为空、解析结果在 parsed 中 */
+    static final class Result {
+        final int code;
+        final String body;
+        final Headers headers;
+        final Object parsed;
+
+        Result(int code, String body, Headers headers) {
+            this(code, body, headers, null);
+        }
+
+        Result(int code, String body, Headers headers, Object parsed) {
+            this.code = code;
+            this.body = body;
+            this.headers = headers;
+            this.parsed = parsed;
+        }
+
+        boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+    }
+
+    private PooledHttpClient() {
+    }
+
+    static Result get(String url) throws IOException {
+        return get(url, Collections.emptyMap());
+    }
+
+    static Result get(String url, Map<String, String> headers) throws IOException {
+        return execute(request(url, headers).get().build());
+    }
+
+    static Result postJson(String url, String json) throws IOException {
+        return execute(request(url, Collections.emptyMap()).post(RequestBody.create(JSON, json)).build());
+    }
+
+    static Result execute(Request request) throws IOException {
+        try (Response response = CLIENT.newCall(request).execute()) {
+            return toResult(response, null);
+        }
+    }
+
+    /** 异步 GET：在 OkHttp 调度器上执行，超过单主机并发上限的请求自动排队 */
+    static CompletableFuture<Result> getAsync(String url) {
+        return executeAsync(request(url, Collections.emptyMap()).get().build());
+    }
+
+    static CompletableFuture<Result> executeAsync(Request request) {
+        return executeAsync(request, null);
+    }
+
+    /** parser 不为空时，成功的响应体直接交给 parser 从流中解析（在 OkHttp 回调线程上执行） */
+    static CompletableFuture<Result> executeAsync(Request request, BodyParser parser) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        CLIENT.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    future.complete(toResult(r, parser));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    static Request.Builder request(String url, Map<String, String> headers) {
+        Request.Builder builder = new Request.Builder().url(url).header("User-Agent", "Mozilla/5.0");
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            builder.header(e.getKey(), e.getValue());
+        }
+        return builder;
+    }
+
+    private static Result toResult(Response response, BodyParser parser) throws IOException {
+        ResponseBody body = response.body();
+        if (parser != null && body != null && response.isSuccessful()) {
+            try (InputStream in = body.byteStream()) {
+                return new Result(response.code(), "", response.headers(), parser.parse(in));
+            }
+        }
+        return new Result(response.code(), body == null ? "" : body.string(), response.headers());
+    }
+}
@@ -0,0 +1,390 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于合约用户数据流的持仓与未实现盈亏跟踪。
+ * <p>
+ * 一条 combined stream 连接同时订阅 listenKey（ACCOUNT_UPDATE 推送持仓变化）和 {@code !markPrice@arr@1s}
+ * （全市场标记价格），未实现盈亏在本地按 {@code 持仓数量 × (标记价格 - 开仓均价)} 计算，与 positionRisk
+ * 的 unRealizedProfit 口径一致。每次持仓或持仓币种的标记价格变化都会回调上层，盈亏提醒可以秒级响应。
+ * <p>
+ * 签名的 positionRisk 只用于启动/重连时的初始化和定期对账；listenKey 每 30 分钟续期，
+ * 过期或断线后重新申请并重连。
+ */
+final class PositionTracker {
+
+    static final String ACCOUNT_KEY = "ACCOUNT";
+    private static final String MARK_PRICE_STREAM = "!markPrice@arr@1s";
+    private static final long KEEPALIVE_INTERVAL_MS = 30 * 60 * 1000; // listenKey 60 分钟无续期即失效
+    private static final long RECONNECT_MIN_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60 * 1000;
+
+    /** 需要的币安 REST 接口，由上层通过 REQUEST_SCHEDULER 实现 */
+    interface Api {
+        String createListenKey() throws IOException;
+
+        void keepAliveListenKey() throws IOException;
+
+        /** /fapi/v2/positionRisk 的响应 */
+        JsonArray positionRisk() throws IOException;
+    }
+
+    /** 上层回调 */
+    interface Listener {
+        /** 盈亏变化：pnl 为有持仓的交易对的未实现盈亏，以及 ACCOUNT 合计 */
+        void onPnlChanged(Map<String, BigDecimal> pnl, int activeCount);
+    }
+
+    private static final class Position {
+        final String symbol;
+        BigDecimal amount;
+        BigDecimal entryPrice;
+        BigDecimal unrealized;
+
+        Position(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    private final String streamBaseUrl;
+    private final long reconcileIntervalMs;
+    private final Api api;
+    private final Listener listener;
+    private final Gson gson = new Gson();
+    private final Map<String, Position> positions = new HashMap<>(); // symbol|positionSide -> 持仓
+    private final Map<String, BigDecimal> markPrices = new HashMap<>(); // 只记录有持仓的交易对
+    // symbol|positionSide -> 最近一次 ACCOUNT_UPDATE 的撮合时间（包括平仓），对账时比它旧的快照行不覆盖推送结果
+    private final Map<String, Long> eventTimes = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "position-tracker");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Connection conn;
+    private volatile boolean seeded = false;
+    private volatile boolean closed = false;
+    private volatile int attempts = 0;
+
+    /** streamBaseUrl 例如 wss://fstream.binance.com/stream */
+    PositionTracker(String streamBaseUrl, long reconcileIntervalMs, Api api, Listener listener) {
+        this.streamBaseUrl = streamBaseUrl;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+        this.api = api;
+        this.listener = listener;
+    }
+
+    void start() {
+        scheduler.execute(this::connect);
+        scheduler.scheduleWithFixedDelay(this::keepAlive, KEEPALIVE_INTERVAL_MS, KEEPALIVE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMs, reconcileIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** 已连接且完成初始化，此时盈亏由推送实时维护，上层无需轮询 */
+    boolean isLive() {
+        Connection c = conn;
+        return seeded && c != null && c.isOpen();
+    }
+
+    void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        Connection c = conn;
+        if (c != null)
+            c.close();
+    }
+
+    // ------------------- 连接与 listenKey -------------------
+
+    private void connect() {
+        if (closed)
+            return;
+        try {
+            String listenKey = api.createListenKey();
+            Connection c = new Connection(new URI(streamBaseUrl + "?streams=" + listenKey + "/" + MARK_PRICE_STREAM));
+            if (streamBaseUrl.startsWith("wss")) {
+                c.setProxy(systemProxy());
+            }
+            c.setConnectionLostTimeout(60);
+            conn = c;
+            c.connect();
+        } catch (Exception e) {
+            System.err.println("[持仓推送] 连接失败: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (closed)
+            return;
+        seeded = false;
+        long delay = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_MIN_DELAY_MS << Math.min(attempts, 6));
+        attempts++;
+        System.out.println("[持仓推送] 将在 " + delay + "ms 后重连（第 " + attempts + " 次）");
+        scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void keepAlive() {
+        if (conn == null)
+            return;
+        try {
+            api.keepAliveListenKey();
+        } catch (Exception e) {
+            System.err.println("[持仓推送] listenKey 续期失败: " + e.getMessage());
+        }
+    }
+
+    // ------------------- 对账 -------------------
+
+    /**
+     * 用 positionRisk 全量覆盖本地持仓，推送期间丢失的事件在这里修正。
+     * 请求期间到达的 ACCOUNT_UPDATE 比快照新：快照行的 updateTime 早于该持仓最近一次推送时保留推送的结果。
+     */
+    void reconcile() {
+        if (closed)
+            return;
+        long requestTime = System.currentTimeMillis();
+        JsonArray arr;
+        try {
+            arr = api.positionRisk();
+        } catch (Exception e) {
+            System.err.println("[持仓推送] 对账失败: " + e.getMessage());
+            return;
+        }
+        BigDecimal before;
+        BigDecimal after;
+        synchronized (this) {
+            before = seeded ? totalUnrealized() : null;
+            Map<String, Position> previous = new HashMap<>(positions);
+            positions.clear();
+            Set<String> reported = new HashSet<>();
+            for (JsonElement el : arr) {
+                JsonObject obj = el.getAsJsonObject();
+                String symbol = obj.get("symbol").getAsString();
+                String key = key(symbol, obj.has("positionSide") ? obj.get("positionSide").getAsString() : "BOTH");
+                reported.add(key);
+                // 没有 updateTime 时无法判断先后，请求发出后的推送一律视为更新
+                long rowTime = obj.has("updateTime") ? obj.get("updateTime").getAsLong() : requestTime;
+                Long eventTime = eventTimes.get(key);
+                if (eventTime != null && eventTime > rowTime) {
+                    Position kept = previous.get(key);
+                    if (kept != null)
+                        positions.put(key, kept);
+                    continue;
+                }
+                eventTimes.remove(key);
+                BigDecimal amount = obj.get("positionAmt").getAsBigDecimal();
+                if (amount.signum() == 0)
+                    continue;
+                Position p = new Position(symbol);
+                p.amount = amount;
+                p.entryPrice = obj.get("entryPrice").getAsBigDecimal();
+                p.unrealized = obj.get("unRealizedProfit").getAsBigDecimal();
+                positions.put(key, p);
+                if (obj.has("markPrice"))
+                    markPrices.put(symbol, obj.get("markPrice").getAsBigDecimal());
+            }
+            // 快照中没有的持仓只保留请求发出后推送来的
+            for (Map.Entry<String, Position> e : previous.entrySet()) {
+                Long eventTime = eventTimes.get(e.getKey());
+                if (!reported.contains(e.getKey()) && eventTime != null && eventTime >= requestTime)
+                    positions.put(e.getKey(), e.getValue());
+            }
+            eventTimes.entrySet().removeIf(e -> !reported.contains(e.getKey()) && e.getValue() < requestTime);
+            retainHeldMarkPrices();
+            after = totalUnrealized();
+            seeded = true;
+        }
+        if (before != null && before.compareTo(after) != 0)
+            System.out.println("[持仓推送] 对账修正总盈亏: " + before + " -> " + after);
+        notifyListener();
+    }
+
+    // ------------------- 推送处理 -------------------
+
+    /** combined stream：{"stream":"<listenKey>","data":{"e":"ACCOUNT_UPDATE",...}} 或 {"stream":"!markPrice@arr@1s","data":[...]} */
+    void handleMessage(String message) {
+        JsonObject root = gson.fromJson(message, JsonObject.class);
+        if (root == null || !root.has("data"))
+            return;
+        JsonElement data = root.get("data");
+        boolean changed;
+        if (data.isJsonArray()) {
+            changed = onMarkPrices(data.getAsJsonArray());
+        } else {
+            JsonObject event = data.getAsJsonObject();
+            String type = event.has("e") ? event.get("e").getAsString() : "";
+            if ("ACCOUNT_UPDATE".equals(type)) {
+                // T 为撮合时间，与 positionRisk 的 updateTime 同一口径；缺失时用事件时间 E
+                long time = event.has("T") ? event.get("T").getAsLong()
+                        : event.has("E") ? event.get("E").getAsLong() : System.currentTimeMillis();
+                changed = onAccountUpdate(event.getAsJsonObject("a"), time);
+            } else if ("listenKeyExpired".equals(type)) {
+                System.out.println("[持仓推送] listenKey 已过期，重新连接");
+                Connection c = conn;
+                if (c != null)
+                    c.close(); // onClose 中重连
+                return;
+            } else {
+                return;
+            }
+        }
+        if (changed && seeded)
+            notifyListener();
+    }
+
+    private synchronized boolean onMarkPrices(JsonArray arr) {
+        if (positions.isEmpty())
+            return false;
+        boolean changed = false;
+        for (JsonElement el : arr) {
+            JsonObject obj = el.getAsJsonObject();
+            String symbol = obj.get("s").getAsString();
+            if (!markPrices.containsKey(symbol) && !holds(symbol))
+                continue;
+            BigDecimal mark = obj.get("p").getAsBigDecimal();
+            BigDecimal old = markPrices.put(symbol, mark);
+            if (old != null && old.compareTo(mark) == 0)
+                continue;
+            for (Position p : positions.values()) {
+                if (p.symbol.equals(symbol)) {
+                    p.unrealized = p.amount.multiply(mark.subtract(p.entryPrice));
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // ACCOUNT_UPDATE 只包含发生变化的持仓：{"a":{"P":[{"s":"BTCUSDT","pa":"0.1","ep":"60000","up":"1.2","ps":"BOTH"}]}}
+    private synchronized boolean onAccountUpdate(JsonObject account, long time) {
+        if (account == null || !account.has("P"))
+            return false;
+        boolean changed = false;
+        for (JsonElement el : account.getAsJsonArray("P")) {
+            JsonObject obj = el.getAsJsonObject();
+            String symbol = obj.get("s").getAsString();
+            String side = obj.has("ps") ? obj.get("ps").getAsString() : "BOTH";
+            eventTimes.merge(key(symbol, side), time, Math::max);
+            BigDecimal amount = obj.get("pa").getAsBigDecimal();
+            if (amount.signum() == 0) {
+                changed |= positions.remove(key(symbol, side)) != null;
+                continue;
+            }
+            Position p = position(symbol, side);
+            p.amount = amount;
+            p.entryPrice = obj.get("ep").getAsBigDecimal();
+            BigDecimal mark = markPrices.get(symbol);
+            // 已知标记价格时按本地口径计算，否则先用推送里的 up
+            p.unrealized = mark != null ? amount.multiply(mark.subtract(p.entryPrice)) : obj.get("up").getAsBigDecimal();
+            changed = true;
+        }
+        retainHeldMarkPrices();
+        return changed;
+    }
+
+    private void notifyListener() {
+        Map<String, BigDecimal> pnl = new HashMap<>();
+        int active;
+        synchronized (this) {
+            for (Position p : positions.values())
+                pnl.merge(p.symbol, p.unrealized, BigDecimal::add);
+            pnl.put(ACCOUNT_KEY, totalUnrealized());
+            active = positions.size();
+        }
+        listener.onPnlChanged(pnl, active);
+    }
+
+    // ------------------- 内部 -------------------
+
+    private Position position(String symbol, String side) {
+        return positions.computeIfAbsent(key(symbol, side), k -> new Position(symbol));
+    }
+
+    private static String key(String symbol, String side) {
+        return symbol + "|" + side;
+    }
+
+    private boolean holds(String symbol) {
+        for (Position p : positions.values()) {
+            if (p.symbol.equals(symbol))
+                return true;
+        }
+        return false;
+    }
+
+    private void retainHeldMarkPrices() {
+        markPrices.keySet().removeIf(symbol -> !holds(symbol));
+    }
+
+    private BigDecimal totalUnrealized() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Position p : positions.values())
+            total = total.add(p.unrealized);
+        return total;
+    }
+
+    // 与 initProxy() 设置的系统代理保持一致，Java-WebSocket 不会自动读取系统属性
+    private static Proxy systemProxy() {
+        String host = System.getProperty("https.proxyHost");
+        String port = System.getProperty("https.proxyPort");
+        if (host == null || port == null)
+            return Proxy.NO_PROXY;
+        return new Proxy(Proxy.Type.HTTP, new InetSocketAddress(host, Integer.parseInt(port)));
+    }
+
+    private class Connection extends WebSocketClient {
+
+        Connection(URI uri) {
+            super(uri);
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            attempts = 0;
+            System.out.println("[持仓推送] 用户数据流已连接");
+            // 断线期间可能丢失了 ACCOUNT_UPDATE，连接后先全量对账一次
+            scheduler.execute(PositionTracker.this::reconcile);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            try {
+                handleMessage(message);
+            } catch (Exception e) {
+                System.err.println("[持仓推送] 解析消息失败: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            System.out.println("[持仓推送] 连接关闭: " + code + " " + reason);
+            // 只有当前连接关闭才重连，避免旧连接的回调重复触发
+            if (conn == this) {
+                scheduleReconnect();
+            }
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            System.err.println("[持仓推送] 异常: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全市场价格推送客户端，为价格提醒提供秒级价格。
+ * <p>
+ * 订阅 {@code !ticker@arr}（字段 c，最新成交价，与 REST ticker/price 一致）或 {@code !markPrice@arr@1s}
+ * （字段 p，标记价格），每次推送包含这一秒内有变化的全部交易对。只使用一条连接，断线后按指数退避重连；
+ * 断线期间由上层回退到 REST 轮询。
+ */
+class PriceStreamClient {
+
+    private static final long RECONNECT_MIN_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60 * 1000;
+
+    /** 上层回调，均在 WebSocket 读线程中按推送顺序调用 */
+    interface Listener {
+        /** 某个交易对的最新价格 */
+        void onPrice(String symbol, BigDecimal price);
+
+        /** 连接状态变化，断开时上层应回退到轮询 */
+        void onConnectionChanged(boolean connected);
+    }
+
+    private final String url;
+    private final Listener listener;
+    private final Gson gson = new Gson();
+    private final ScheduledExecutorService reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "price-stream-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Connection conn;
+    private volatile boolean closed = false;
+    private int attempts = 0;
+
+    /** url 为完整的 stream 地址，例如 wss://fstream.binance.com/stream?streams=!ticker@arr */
+    PriceStreamClient(String url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    void connect() {
+        if (closed)
+            return;
+        try {
+            Connection c = new Connection(new URI(url));
+            if (url.startsWith("wss")) {
+                c.setProxy(systemProxy());
+            }
+            c.setConnectionLostTimeout(60);
+            conn = c;
+            c.connect();
+        } catch (Exception e) {
+            System.err.println("[价格推送] 连接失败: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    boolean isConnected() {
+        Connection c = conn;
+        return c != null && c.isOpen();
+    }
+
+    void close() {
+        closed = true;
+        reconnectScheduler.shutdownNow();
+        Connection c = conn;
+        if (c != null)
+            c.close();
+    }
+
+    /**
+     * 解析推送：combined stream 为 {"stream":"!ticker@arr","data":[{"s":"BTCUSDT","c":"..."},...]}，
+     * raw stream 直接是数组。
+     */
+    void handleMessage(String message) {
+        JsonElement root = gson.fromJson(message, JsonElement.class);
+        if (root != null && root.isJsonObject() && root.getAsJsonObject().has("data"))
+            root = root.getAsJsonObject().get("data");
+        if (root == null || !root.isJsonArray())
+            return; // SUBSCRIBE 回执等
+        for (JsonElement el : root.getAsJsonArray()) {
+            JsonObject obj = el.getAsJsonObject();
+            JsonElement price = obj.has("c") ? obj.get("c") : obj.get("p");
+            if (price == null || !obj.has("s"))
+                continue;
+            listener.onPrice(obj.get("s").getAsString(), price.getAsBigDecimal());
+        }
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (closed)
+            return;
+        long delay = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_MIN_DELAY_MS << Math.min(attempts, 6));
+        attempts++;
+        System.out.println("[价格推送] 将在 " + delay + "ms 后重连（第 " + attempts + " 次）");
+        reconnectScheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // 与 initProxy() 设置的系统代理保持一致，Java-WebSocket 不会自动读取系统属性
+    private static Proxy systemProxy() {
+        String host = System.getProperty("https.proxyHost");
+        String port = System.getProperty("https.proxyPort");
+        if (host == null || port == null)
+            return Proxy.NO_PROXY;
+        return new Proxy(Proxy.Type.HTTP, new InetSocketAddress(host, Integer.parseInt(port)));
+    }
+
+    private class Connection extends WebSocketClient {
+
+        Connection(URI uri) {
+            super(uri);
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            synchronized (PriceStreamClient.this) {
+                attempts = 0;
+            }
+            System.out.println("[价格推送] 已连接: " + url);
+            listener.onConnectionChanged(true);
+        }
+
+        @Override
+        public void onMessage(String message) {
+            try {
+                handleMessage(message);
+            } catch (Exception e) {
+                System.err.println("[价格推送] 解析消息失败: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            System.out.println("[价格推送] 连接关闭: " + code + " " + reason);
+            // 只有当前连接关闭才重连，避免旧连接的回调重复触发
+            if (conn == this) {
+                listener.onConnectionChanged(false);
+                scheduleReconnect();
+            }
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            System.err.println("[价格推送] 异常: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.example;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 看板的 WebSocket 推送通道（/stream）：排行榜、强势币、总盈亏变化时主动推送给所有打开的页面，不再需要轮询。
+ * <p>
+ * 每条消息为 {@code {"type":"data|strong|pnl","etag":"...","data":<与对应 REST 接口相同的 JSON>}}：
+ * <ul>
+ * <li>每次更新只拼装一次消息字符串，所有订阅者共享；ETag 与上一条相同时不推送</li>
+ * <li>新连接先收到每种类型的最新一条消息</li>
+ * <li>每个订阅者同一时间只有一条消息在发送，发送期间同类型的新消息覆盖旧消息（慢客户端跳过中间帧，只收到最新状态），
+ * 服务端不会为慢客户端积压数据</li>
+ * </ul>
+ * 发送使用 Jetty 的异步写，推送线程不等待网络，订阅者再多也只是遍历一次集合。
+ */
+final class PushChannel {
+
+    static final String DATA = "data";
+    static final String STRONG = "strong";
+    static final String PNL = "pnl";
+
+    private static final class Frame {
+        final String etag;
+        final String text;
+
+        Frame(String etag, String text) {
+            this.etag = etag;
+            this.text = text;
+        }
+    }
+
+    private final Map<String, Frame> latest = new ConcurrentHashMap<>(); // 类型 -> 最新一条消息
+    private final Map<Session, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final Endpoint endpoint = new Endpoint();
+
+    /** 注册到 Spark.webSocket 的处理器 */
+    Object endpoint() {
+        return endpoint;
+    }
+
+    /** 发布一份新快照，内容未变化时忽略 */
+    void publish(String type, JsonSnapshot snapshot) {
+        Frame previous = latest.get(type);
+        if (previous != null && previous.etag.equals(snapshot.etag))
+            return;
+        String json = new String(snapshot.json, StandardCharsets.UTF_8);
+        Frame frame = new Frame(snapshot.etag, "{\"type\":\"" + type + "\",\"etag\":" + snapshot.etag + ",\"data\":"
+                + json + "}");
+        latest.put(type, frame);
+        for (Subscriber s : subscribers.values())
+            s.offer(type, frame);
+    }
+
+    int subscriberCount() {
+        return subscribers.size();
+    }
+
+    long sent() {
+        return sent.sum();
+    }
+
+    long skipped() {
+        return skipped.sum();
+    }
+
+    // ------------------- 订阅者 -------------------
+
+    private final class Subscriber implements WriteCallback {
+        private final Session session;
+        private final Map<String, Frame> pending = new LinkedHashMap<>(); // 等待发送的消息，每种类型只保留最新一条
+        private boolean sending;
+
+        Subscriber(Session session) {
+            this.session = session;
+        }
+
+        void offer(String type, Frame frame) {
+            synchronized (this) {
+                if (sending) {
+                    if (pending.put(type, frame) != null)
+                        skipped.increment();
+                    return;
+                }
+                sending = true;
+            }
+            send(frame);
+        }
+
+        private void send(Frame frame) {
+            try {
+                session.getRemote().sendString(frame.text, this);
+            } catch (RuntimeException e) {
+                writeFailed(e);
+            }
+        }
+
+        @Override
+        public void writeSuccess() {
+            sent.increment();
+            Frame next;
+            synchronized (this) {
+                Iterator<Frame> it = pending.values().iterator();
+                if (!it.hasNext()) {
+                    sending = false;
+                    return;
+                }
+                next = it.next();
+                it.remove();
+            }
+            send(next);
+        }
+
+        @Override
+        public void writeFailed(Throwable x) {
+            subscribers.remove(session);
+            session.close();
+        }
+    }
+
+    // ------------------- Jetty 回调 -------------------
+
+    @WebSocket
+    public final class Endpoint {
+
+        @OnWebSocketConnect
+        public void onConnect(Session session) {
+            Subscriber subscriber = new Subscriber(session);
+            subscribers.put(session, subscriber);
+            for (Map.Entry<String, Frame> e : latest.entrySet())
+                subscriber.offer(e.getKey(), e.getValue());
+        }
+
+        @OnWebSocketClose
+        public void onClose(Session session, int statusCode, String reason) {
+            subscribers.remove(session);
+        }
+
+        @OnWebSocketError
+        public void onError(Session session, Throwable error) {
+            subscribers.remove(session);
+        }
+
+        @OnWebSocketMessage
+        public void onMessage(Session session, String message) {
+            // 客户端只接收，不处理上行消息（页面可能发送心跳）
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * 多周期排行榜计算。
+ * <p>
+ * 1. 并行读取每个币种各窗口的 open/high/low/close 到基本类型数组（每个 CandleSeries 只加锁一次）；<br>
+ * 2. 每个周期 × 每个指标用大小为 K 的小顶堆选出前 K 名，O(n log K)，各周期在 ForkJoinPool 上并行；<br>
+ * 3. 只为入榜的币种创建 BigDecimal 的 {@link BinanceCombinedServer.Candle}。
+ */
+final class RankingEngine {
+
+    /** 默认的排行榜周期，可以用环境变量 rank_intervals（逗号分隔）配置，例如追加 1d、1w */
+    static final String[] INTERVALS = { "5m", "10m", "15m", "30m", "40m", "50m", "60m", "120m", "240m" };
+
+    /** 解析逗号分隔的周期列表，空白时返回默认周期 */
+    static String[] intervals(String spec) {
+        if (spec == null || spec.trim().isEmpty())
+            return INTERVALS.clone();
+        String[] intervals = Arrays.stream(spec.split(",")).map(String::trim).filter(i -> !i.isEmpty())
+                .toArray(String[]::new);
+        windowLengths(intervals); // 提前校验格式
+        return intervals;
+    }
+
+    /** 每个周期对应的 5m K 线根数 */
+    static int[] windowLengths(String[] intervals) {
+        return Arrays.stream(intervals).mapToInt(RankingEngine::windowLength).toArray();
+    }
+
+    /** 周期（m / h / d / w 结尾，例如 240m、4h、1d）对应的 5m K 线根数，必须是 5 分钟的整数倍 */
+    static int windowLength(String interval) {
+        int minutes;
+        try {
+            int n = Integer.parseInt(interval.substring(0, interval.length() - 1));
+            switch (interval.charAt(interval.length() - 1)) {
+                case 'm':
+                    minutes = n;
+                    break;
+                case 'h':
+                    minutes = n * 60;
+                    break;
+                case 'd':
+                    minutes = n * 1440;
+                    break;
+                case 'w':
+                    minutes = n * 10080;
+                    break;
+                default:
+                    minutes = -1;
+            }
+        } catch (RuntimeException e) {
+            minutes = -1;
+        }
+        if (minutes <= 0 || minutes % 5 != 0)
+            throw new IllegalArgumentException("无效的周期: " + interval);
+        return minutes / 5;
+    }
+
+    /** 排行指标 */
+    enum Metric {
+        CHANGE("change"),
+        AMPLITUDE("amplitude");
+
+        final String key;
+
+        Metric(String key) {
+            this.key = key;
+        }
+
+        double value(double open, double high, double low, double close) {
+            if (this == CHANGE)
+                return (close - open) / open * 100;
+            return (high - low) / open * 100;
+        }
+    }
+
+    private final String[] intervals;
+    private final Map<Metric, Integer> metrics; // 指标 -> 榜单长度 K
+    private final ForkJoinPool pool;
+
+    RankingEngine(String[] intervals, Map<Metric, Integer> metrics, ForkJoinPool pool) {
+        this.intervals = intervals.clone();
+        this.metrics = new EnumMap<>(metrics);
+        this.pool = pool;
+    }
+
+    /** 计算所有周期的排行榜，结果结构与 rankCache 一致：interval -> metric -> 前 K 名 */
+    Map<String, Map<String, List<BinanceCombinedServer.Candle>>> rank(List<String> symbols,
+            Map<String, CandleSeries> cache) {
+        Snapshot snap = snapshot(symbols, cache);
+
+        List<ForkJoinTask<Map<String, List<BinanceCombinedServer.Candle>>>> tasks = new ArrayList<>();
+        for (int w = 0; w < intervals.length; w++) {
+            final int window = w;
+            tasks.add(pool.submit(() -> rankInterval(snap, window)));
+        }
+        Map<String, Map<String, List<BinanceCombinedServer.Candle>>> result = new LinkedHashMap<>();
+        for (int w = 0; w < intervals.length; w++) {
+            result.put(intervals[w], tasks.get(w).join());
+        }
+        return result;
+    }
+
+    // ------------------- 第一步：读取窗口数据 -------------------
+
+    /** 各窗口的聚合值，按 [window][symbol] 存放，未就绪的窗口为 NaN */
+    static final class Snapshot {
+        final String[] symbols;
+        final double[][] open, high, low, close;
+
+        Snapshot(String[] symbols, int windows) {
+            this.symbols = symbols;
+            int n = symbols.length;
+            open = new double[windows][n];
+            high = new double[windows][n];
+            low = new double[windows][n];
+            close = new double[windows][n];
+            for (int w = 0; w < windows; w++)
+                Arrays.fill(open[w], Double.NaN);
+        }
+    }
+
+    Snapshot snapshot(List<String> symbols, Map<String, CandleSeries> cache) {
+        Snapshot snap = new Snapshot(symbols.toArray(new String[0]), intervals.length);
+        pool.submit(() -> IntStream.range(0, snap.symbols.length).parallel().forEach(s -> {
+            CandleSeries series = cache.get(snap.symbols[s]);
+            if (series == null)
+                return;
+            synchronized (series) {
+                WindowAggregator windows = series.windows();
+                if (series.isEmpty() || windows == null)
+                    return;
+                for (int w = 0; w < intervals.length; w++) {
+                    if (!windows.ready(w))
+                        continue;
+                    snap.open[w][s] = windows.open(w);
+                    snap.high[w][s] = windows.high(w);
+                    snap.low[w][s] = windows.low(w);
+                    snap.close[w][s] = windows.close();
+                }
+            }
+        })).join();
+        return snap;
+    }
+
+    // ------------------- 第二步：每个周期选出前 K 名 -------------------
+
+    private Map<String, List<BinanceCombinedServer.Candle>> rankInterval(Snapshot snap, int w) {
+        int n = snap.symbols.length;
+        Map<String, List<BinanceCombinedServer.Candle>> intervalMap = new HashMap<>();
+        double[] values = new double[n];
+        for (Map.Entry<Metric, Integer> e : metrics.entrySet()) {
+            Metric metric = e.getKey();
+            int[] top = top(snap, w, metric, e.getValue(), values);
+            List<BinanceCombinedServer.Candle> list = new ArrayList<>(top.length);
+            for (int s : top) {
+                list.add(toCandle(snap, s, w));
+            }
+            intervalMap.put(metric.key, list);
+        }
+        return intervalMap;
+    }
+
+    /** 第 w 个周期按 metric 的前 k 名下标（按值从大到小），values 为长度等于币种数的临时数组 */
+    static int[] top(Snapshot snap, int w, Metric metric, int k, double[] values) {
+        for (int s = 0; s < snap.symbols.length; s++) {
+            double open = snap.open[w][s];
+            values[s] = (Double.isNaN(open) || open == 0) ? Double.NaN
+                    : metric.value(open, snap.high[w][s], snap.low[w][s], snap.close[w][s]);
+        }
+        return topK(values, k);
+    }
+
+    /** 返回 values 中最大的 k 个（忽略 NaN）的下标，按值从大到小排列 */
+    static int[] topK(double[] values, int k) {
+        if (k <= 0)
+            return new int[0];
+        int[] heap = new int[k]; // 小顶堆，堆顶是当前第 k 名
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            double v = values[i];
+            if (Double.isNaN(v))
+                continue;
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, values);
+            } else if (v > values[heap[0]]) {
+                heap[0] = i;
+                siftDown(heap, size, values);
+            }
+        }
+        // 依次弹出堆顶，得到从小到大的顺序，倒序填充
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, values);
+        }
+        return result;
+    }
+
+    private static void siftUp(int[] heap, int i, double[] values) {
+        int x = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (values[heap[parent]] <= values[x])
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = x;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] values) {
+        if (size == 0)
+            return;
+        int x = heap[0];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && values[heap[child + 1]] < values[heap[child]])
+                child++;
+            if (values[x] <= values[heap[child]])
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = x;
+    }
+
+    // ------------------- 第三步：只为入榜币种创建 Candle -------------------
+
+    private BinanceCombinedServer.Candle toCandle(Snapshot snap, int s, int w) {
+        BinanceCombinedServer.Candle c = newCandle(snap, s, w);
+        Map<String, Map<String, BigDecimal>> others = new HashMap<>();
+        for (int w2 = 0; w2 < intervals.length; w2++) {
+            if (Double.isNaN(snap.open[w2][s]) || snap.open[w2][s] == 0)
+                continue;
+            BinanceCombinedServer.Candle c2 = w2 == w ? c : newCandle(snap, s, w2);
+            Map<String, BigDecimal> map2 = new HashMap<>();
+            map2.put("change", c2.change);
+            map2.put("amplitude", c2.amplitude);
+            others.put(intervals[w2], map2);
+        }
+        c.others = others;
+        return c;
+    }
+
+    private static BinanceCombinedServer.Candle newCandle(Snapshot snap, int s, int w) {
+        return new BinanceCombinedServer.Candle(snap.symbols[s], BigDecimal.valueOf(snap.open[w][s]),
+                BigDecimal.valueOf(snap.high[w][s]), BigDecimal.valueOf(snap.low[w][s]),
+                BigDecimal.valueOf(snap.close[w][s]));
+    }
+}
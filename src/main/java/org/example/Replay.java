@@ -0,0 +1,327 @@
+package org.example;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 离线回放命令行：读取录制的 5m K 线和价格，用 {@link ReplayEngine} 回放，输出期间会出现的强势币、会触发的价格提醒和各周期上榜最多的币种。
+ * <p>
+ * 启动：{@code java -cp app.jar org.example.Replay [选项] <K 线 CSV 文件或目录>...}
+ * <ul>
+ * <li>K 线 CSV：每行 {@code openTime,open,high,low,close,volume}，其余列忽略，非数字开头的行视为表头，
+ * 与 data.binance.vision 的 klines 文件相同。交易对取文件名中第一个 '-' 或 '.' 之前的部分，
+ * 同一交易对的多个文件（例如按月分割）合并后按时间排序</li>
+ * <li>{@code --archive <dir>}：读取 kline_archive_dir 中归档的 K 线，可与 CSV 同时使用</li>
+ * <li>{@code --prices <csv>}：逐笔价格，每行 {@code timestamp,symbol,price}；没有逐笔价格的交易对由 K 线推出价格路径</li>
+ * <li>{@code --alerts <json>}：提醒配置（连同变更日志），默认 price_alerts.json</li>
+ * <li>{@code --rules <json>}：强势币规则，默认与线上相同（strong_rules_file，否则 strong_rules.json）</li>
+ * <li>{@code --from <ms>} / {@code --to <ms>}：只回放 openTime 在该区间内的数据</li>
+ * <li>{@code --out <file>}：事件写成 JSON Lines</li>
+ * <li>{@code --expect <sha256>}：与结果摘要比对，不一致时退出码为 1，用作回归测试</li>
+ * <li>{@code --threads <n>}：并行度，默认 CPU 核数</li>
+ * <li>{@code --repeat <n>}：重复回放 n 次测量吞吐（前几次包含 JIT 预热）</li>
+ * </ul>
+ * 榜单长度与线上相同，rank_intervals、rank_amplitude、kline_history 环境变量的含义也相同。
+ */
+public class Replay {
+
+    private static final int TOP_CHANGE = 20;
+    private static final int TOP_AMPLITUDE = 20;
+
+    public static void main(String[] args) throws Exception {
+        List<Path> klinePaths = new ArrayList<>();
+        Path archiveDir = null, pricesPath = null, outPath = null;
+        Path alertsPath = Paths.get("price_alerts.json");
+        Path rulesPath = Paths.get(getenvOrDefault("strong_rules_file", "strong_rules.json"));
+        long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+        String expect = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int repeat = 1;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                klinePaths.add(Paths.get(arg));
+                continue;
+            }
+            if (i + 1 >= args.length)
+                usage("缺少 " + arg + " 的参数值");
+            String value = args[++i];
+            switch (arg) {
+                case "--archive":
+                    archiveDir = Paths.get(value);
+                    break;
+                case "--prices":
+                    pricesPath = Paths.get(value);
+                    break;
+                case "--alerts":
+                    alertsPath = Paths.get(value);
+                    break;
+                case "--rules":
+                    rulesPath = Paths.get(value);
+                    break;
+                case "--from":
+                    from = Long.parseLong(value);
+                    break;
+                case "--to":
+                    to = Long.parseLong(value);
+                    break;
+                case "--out":
+                    outPath = Paths.get(value);
+                    break;
+                case "--expect":
+                    expect = value;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--repeat":
+                    repeat = Math.max(1, Integer.parseInt(value));
+                    break;
+                default:
+                    usage("未知选项 " + arg);
+            }
+        }
+        if (klinePaths.isEmpty() && archiveDir == null)
+            usage("没有指定 K 线数据");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long loadStart = System.currentTimeMillis();
+        List<ReplayEngine.Input> inputs = load(klinePaths, archiveDir, pricesPath, from, to, pool);
+        long candleCount = 0;
+        for (ReplayEngine.Input input : inputs)
+            candleCount += input.klines.size();
+        System.out.println("数据加载完成：" + inputs.size() + " 个交易对，" + candleCount + " 根 K 线，耗时 "
+                + (System.currentTimeMillis() - loadStart) + "ms");
+
+        List<BinanceCombinedServer.PriceAlert> alerts = Files.exists(alertsPath)
+                ? new AlertPersistence(alertsPath, 0, Collections::emptyList).load()
+                : new ArrayList<>();
+        StrongRuleEngine strongRules = new StrongRuleEngine(rulesPath, pool);
+        int capacity = Integer.parseInt(getenvOrDefault("kline_history", "576"));
+        String[] intervals = RankingEngine.intervals(System.getenv("rank_intervals"));
+        ReplayEngine engine = new ReplayEngine(intervals, rankMetrics(), capacity, strongRules, alerts, pool);
+
+        ReplayEngine.Result result = null;
+        for (int r = 0; r < repeat; r++) {
+            result = engine.run(inputs);
+            System.out.printf("第 %d 次回放：%d 步，%d 根 K 线，耗时 %.1fms，%.0f 根/秒%n", r + 1, result.steps,
+                    result.candles, result.elapsedNanos / 1e6, result.candlesPerSecond());
+        }
+        pool.shutdown();
+        report(result, alerts.size(), outPath);
+
+        String digest = result.digest();
+        System.out.println("结果摘要：" + digest);
+        if (expect != null && !expect.equalsIgnoreCase(digest)) {
+            System.err.println("❌ 结果摘要与预期 " + expect + " 不一致");
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String error) {
+        System.err.println("❌ " + error);
+        System.err.println("用法：java -cp app.jar org.example.Replay [--archive dir] [--prices csv] [--alerts json] "
+                + "[--rules json] [--from ms] [--to ms] [--out jsonl] [--expect sha256] [--threads n] [--repeat n] "
+                + "<K 线 CSV 文件或目录>...");
+        System.exit(2);
+    }
+
+    // 与 BinanceCombinedServer 相同的排行指标（不直接引用它，避免启动服务端的静态初始化）
+    private static Map<RankingEngine.Metric, Integer> rankMetrics() {
+        Map<RankingEngine.Metric, Integer> metrics = new EnumMap<>(RankingEngine.Metric.class);
+        metrics.put(RankingEngine.Metric.CHANGE, TOP_CHANGE);
+        if ("true".equalsIgnoreCase(System.getenv("rank_amplitude")))
+            metrics.put(RankingEngine.Metric.AMPLITUDE, TOP_AMPLITUDE);
+        return metrics;
+    }
+
+    private static String getenvOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    // ------------------- 输出 -------------------
+
+    private static void report(ReplayEngine.Result result, int alertCount, Path outPath) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        int strong = 0, triggered = 0;
+        for (ReplayEngine.Event e : result.events) {
+            if ("strong".equals(e.type))
+                strong++;
+            else
+                triggered++;
+        }
+        System.out.println("回放区间：" + format.format(new Date(result.from)) + " ~ " + format.format(new Date(result.to))
+                + "，强势币命中 " + strong + " 次，价格提醒（共 " + alertCount + " 条）触发 " + triggered + " 次");
+        for (Map.Entry<String, Map<String, List<ReplayEngine.Ranked>>> interval : result.topRanked.entrySet()) {
+            for (Map.Entry<String, List<ReplayEngine.Ranked>> metric : interval.getValue().entrySet()) {
+                StringBuilder sb = new StringBuilder("上榜最多 " + interval.getKey() + " " + metric.getKey() + "：");
+                for (ReplayEngine.Ranked r : metric.getValue())
+                    sb.append(r.symbol).append('(').append(r.steps).append(") ");
+                System.out.println(sb.toString().trim());
+            }
+        }
+        if (outPath != null) {
+            Gson gson = new Gson();
+            try (BufferedWriter out = Files.newBufferedWriter(outPath, StandardCharsets.UTF_8)) {
+                for (ReplayEngine.Event e : result.events) {
+                    out.write(gson.toJson(e));
+                    out.newLine();
+                }
+            }
+            System.out.println("事件已写入 " + outPath);
+        }
+    }
+
+    // ------------------- 加载 -------------------
+
+    private static List<ReplayEngine.Input> load(List<Path> klinePaths, Path archiveDir, Path pricesPath, long from,
+            long to, ForkJoinPool pool) throws Exception {
+        // 交易对 -> 该交易对的 CSV 文件（按文件名排序）
+        Map<String, List<Path>> files = new TreeMap<>();
+        for (Path path : klinePaths) {
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.csv")) {
+                    for (Path p : stream)
+                        files.computeIfAbsent(symbolOf(p), s -> new ArrayList<>()).add(p);
+                }
+            } else {
+                files.computeIfAbsent(symbolOf(path), s -> new ArrayList<>()).add(path);
+            }
+        }
+        for (List<Path> list : files.values())
+            Collections.sort(list);
+        CandleArchive archive = archiveDir == null ? null : new CandleArchive(archiveDir, 0);
+        Set<String> archived = archive == null ? Collections.emptySet() : archive.symbols();
+        SortedSet<String> symbols = new TreeSet<>(files.keySet());
+        symbols.addAll(archived);
+        Map<String, ReplayEngine.Ticks> ticks = pricesPath == null ? Collections.emptyMap()
+                : loadTicks(pricesPath, from, to);
+
+        String[] arr = symbols.toArray(new String[0]);
+        ReplayEngine.Input[] inputs = new ReplayEngine.Input[arr.length];
+        pool.submit(() -> Arrays.stream(arr).parallel().forEach(symbol -> {
+            try {
+                KlineBatch batch = new KlineBatch(1024);
+                for (Path p : files.getOrDefault(symbol, Collections.emptyList()))
+                    readKlines(p, from, to, batch);
+                if (archived.contains(symbol)) {
+                    KlineBatch a = archive.load(symbol, from, to);
+                    for (int i = 0; i < a.size; i++)
+                        batch.add(a.openTime[i], a.open[i], a.high[i], a.low[i], a.close[i], a.volume[i]);
+                }
+                inputs[Arrays.binarySearch(arr, symbol)] = new ReplayEngine.Input(symbol, sorted(batch),
+                        ticks.get(symbol));
+            } catch (IOException e) {
+                throw new UncheckedIOException(symbol + ": " + e.getMessage(), e);
+            }
+        })).get();
+        return Arrays.asList(inputs);
+    }
+
+    // BTCUSDT-5m-2024-01.csv、BTCUSDT.csv -> BTCUSDT
+    private static String symbolOf(Path path) {
+        String name = path.getFileName().toString();
+        int end = name.length();
+        int dash = name.indexOf('-'), dot = name.indexOf('.');
+        if (dash > 0)
+            end = dash;
+        if (dot > 0 && dot < end)
+            end = dot;
+        return name.substring(0, end).toUpperCase();
+    }
+
+    private static void readKlines(Path path, long from, long to, KlineBatch batch) throws IOException {
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            double[] v = new double[5];
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || !Character.isDigit(line.charAt(0)))
+                    continue; // 表头
+                try {
+                    int start = line.indexOf(',');
+                    long t = Long.parseLong(line.substring(0, start));
+                    for (int i = 0; i < 5; i++) {
+                        int end = line.indexOf(',', start + 1);
+                        v[i] = Double.parseDouble(line.substring(start + 1, end < 0 ? line.length() : end));
+                        start = end;
+                    }
+                    if (t >= from && t <= to)
+                        batch.add(t, v[0], v[1], v[2], v[3], v[4]);
+                } catch (RuntimeException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0)
+            System.err.println("⚠️ " + path + " 中有 " + skipped + " 行无法解析，已忽略");
+    }
+
+    private static Map<String, ReplayEngine.Ticks> loadTicks(Path path, long from, long to) throws IOException {
+        Map<String, ReplayEngine.Ticks> map = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length < 3 || parts[0].isEmpty() || !Character.isDigit(parts[0].charAt(0)))
+                    continue;
+                long t = Long.parseLong(parts[0].trim());
+                if (t >= from && t <= to)
+                    map.computeIfAbsent(parts[1].trim().toUpperCase(), s -> new ReplayEngine.Ticks()).add(t,
+                            Double.parseDouble(parts[2].trim()));
+            }
+        }
+        for (ReplayEngine.Ticks t : map.values()) {
+            Integer[] order = sortedOrder(t.time, t.size);
+            if (order == null)
+                continue;
+            long[] time = new long[t.size];
+            double[] price = new double[t.size];
+            for (int i = 0; i < t.size; i++) {
+                time[i] = t.time[order[i]];
+                price[i] = t.price[order[i]];
+            }
+            t.time = time;
+            t.price = price;
+        }
+        return map;
+    }
+
+    // 按 openTime 稳定排序（相同 openTime 保留读入顺序，回放时后一根覆盖前一根）
+    private static KlineBatch sorted(KlineBatch batch) {
+        Integer[] order = sortedOrder(batch.openTime, batch.size);
+        if (order == null)
+            return batch;
+        KlineBatch result = new KlineBatch(batch.size);
+        for (int i : order)
+            result.add(batch.openTime[i], batch.open[i], batch.high[i], batch.low[i], batch.close[i], batch.volume[i]);
+        return result;
+    }
+
+    // 已按升序排列时返回 null，否则返回稳定排序后的下标
+    private static Integer[] sortedOrder(long[] time, int size) {
+        boolean ordered = true;
+        for (int i = 1; i < size && ordered; i++)
+            ordered = time[i - 1] <= time[i];
+        if (ordered)
+            return null;
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> time[i]));
+        return order;
+    }
+}
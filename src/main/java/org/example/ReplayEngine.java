@@ -0,0 +1,375 @@
+package org.example;
+
+import com.google.gson.Gson;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 离线回放：把录制的 5m K 线（以及可选的逐笔价格）按模拟时钟依次送入与线上相同的 CandleSeries / WindowAggregator、
+ * 排行（{@link RankingEngine#top}）、{@link StrongRuleEngine} 和 {@link AlertIndex}，得出期间会出现的强势币、
+ * 会触发的价格提醒以及各周期的上榜情况。
+ * <p>
+ * 不访问网络、不读系统时间，同样的输入每次得到同样的结果（{@link Result#digest()}），可以直接当作回归测试和性能测试。
+ * <p>
+ * 时间轴按 5m 步进，每 {@link #BLOCK_STEPS} 步为一块：
+ * <ol>
+ * <li>币种之间互不依赖，按币种并行：逐根写入环形缓冲区、判断强势币规则、检查价格提醒，并把每一步各窗口的 OHLC 写入该块的排行快照；</li>
+ * <li>排行是横截面计算，按 周期 × 指标 并行，对块内每一步选出前 K 名并累计上榜次数。</li>
+ * </ol>
+ * 事件按币种分别收集，最后按时间稳定排序（同一时间按币种顺序），与线程调度无关。
+ * <p>
+ * 价格提醒：有逐笔价格时按价格序列判断穿越；否则由 K 线推出价格路径 开盘 → 最低 → 最高 → 收盘（阴线为 开盘 → 最高 → 最低 → 收盘），
+ * 四个价格点均匀分布在 5 分钟内。冷却时间和一次性提醒按模拟时间计算。盈亏提醒依赖账户持仓，不参与回放。
+ */
+final class ReplayEngine {
+
+    static final long KLINE_INTERVAL_MS = 5 * 60 * 1000;
+    // 每块 4 小时；排行快照占用 BLOCK_STEPS × 周期数 × 币种数 × 4 个 double，5000 个币种约 70MB
+    static final int BLOCK_STEPS = 48;
+    private static final int TOP_RANKED_LIMIT = 10; // 每个榜单输出上榜次数最多的前几名
+
+    /** 一个币种的逐笔价格，按时间升序 */
+    static final class Ticks {
+        long[] time = new long[64];
+        double[] price = new double[64];
+        int size = 0;
+
+        void add(long t, double p) {
+            if (size == time.length) {
+                time = Arrays.copyOf(time, size * 2);
+                price = Arrays.copyOf(price, size * 2);
+            }
+            time[size] = t;
+            price[size] = p;
+            size++;
+        }
+    }
+
+    /** 一个币种的回放数据 */
+    static final class Input {
+        final String symbol;
+        final KlineBatch klines; // 按 openTime 升序
+        final Ticks ticks; // 没有逐笔价格时为 null
+
+        Input(String symbol, KlineBatch klines, Ticks ticks) {
+            this.symbol = symbol;
+            this.klines = klines;
+            this.ticks = ticks;
+        }
+    }
+
+    /** 回放中发生的事件：强势币新命中（strong）或价格提醒触发（alert） */
+    static final class Event {
+        final long time; // 模拟时钟，毫秒
+        final String type;
+        final String symbol;
+        String rule;
+        String alertId;
+        BigDecimal target;
+        BigDecimal price;
+
+        Event(long time, String type, String symbol) {
+            this.time = time;
+            this.type = type;
+            this.symbol = symbol;
+        }
+    }
+
+    /** 某个榜单上的累计上榜步数 */
+    static final class Ranked {
+        final String symbol;
+        final int steps;
+
+        Ranked(String symbol, int steps) {
+            this.symbol = symbol;
+            this.steps = steps;
+        }
+    }
+
+    static final class Result {
+        final int symbols;
+        final long steps;
+        final long candles;
+        final long from; // 第一步的 openTime
+        final long to; // 最后一步的 openTime
+        final long elapsedNanos;
+        final List<Event> events;
+        final Map<String, Map<String, List<Ranked>>> topRanked; // interval -> metric -> 上榜步数最多的币种
+
+        Result(int symbols, long steps, long candles, long from, long to, long elapsedNanos, List<Event> events,
+                Map<String, Map<String, List<Ranked>>> topRanked) {
+            this.symbols = symbols;
+            this.steps = steps;
+            this.candles = candles;
+            this.from = from;
+            this.to = to;
+            this.elapsedNanos = elapsedNanos;
+            this.events = events;
+            this.topRanked = topRanked;
+        }
+
+        double candlesPerSecond() {
+            return elapsedNanos == 0 ? 0 : candles * 1e9 / elapsedNanos;
+        }
+
+        /** 事件和上榜统计的 SHA-256（不含耗时），相同输入、规则和提醒得到相同的值 */
+        String digest() {
+            Gson gson = new Gson();
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                for (Event e : events)
+                    md.update((gson.toJson(e) + "\n").getBytes(StandardCharsets.UTF_8));
+                md.update(gson.toJson(topRanked).getBytes(StandardCharsets.UTF_8));
+                StringBuilder sb = new StringBuilder();
+                for (byte b : md.digest()) {
+                    String hex = Integer.toHexString(0xff & b);
+                    if (hex.length() == 1)
+                        sb.append('0');
+                    sb.append(hex);
+                }
+                return sb.toString();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // 一个币种的回放状态，只由处理该币种的线程访问
+    private static final class Track {
+        final int index;
+        final String symbol;
+        final KlineBatch klines;
+        final Ticks ticks;
+        final double[] targets; // 该币种价格提醒的目标价（升序），没有提醒时为 null
+        final CandleSeries series;
+        final List<Event> events = new ArrayList<>();
+        int cursor = 0;
+        int tickCursor = 0;
+        double lastPrice = Double.NaN;
+        String rule; // 上一根 K 线命中的规则
+
+        Track(int index, Input input, double[] targets, int capacity, int[] windowLengths) {
+            this.index = index;
+            this.symbol = input.symbol;
+            this.klines = input.klines;
+            this.ticks = input.ticks;
+            this.targets = targets;
+            this.series = new CandleSeries(capacity, windowLengths);
+        }
+    }
+
+    private final String[] intervals;
+    private final int[] windowLengths;
+    private final RankingEngine.Metric[] metrics;
+    private final int[] topK;
+    private final int historyCapacity;
+    private final StrongRuleEngine strongRules;
+    private final List<BinanceCombinedServer.PriceAlert> alerts;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param metrics 排行指标 -> 榜单长度 K，与 RankingEngine 相同
+     * @param alerts  参与回放的提醒，每次 {@link #run} 开始时重置触发状态，回放过程中会被修改
+     */
+    ReplayEngine(String[] intervals, Map<RankingEngine.Metric, Integer> metrics, int historyCapacity,
+            StrongRuleEngine strongRules, List<BinanceCombinedServer.PriceAlert> alerts, ForkJoinPool pool) {
+        this.intervals = intervals.clone();
+        this.windowLengths = RankingEngine.windowLengths(intervals);
+        Map<RankingEngine.Metric, Integer> sorted = new EnumMap<>(metrics);
+        this.metrics = sorted.keySet().toArray(new RankingEngine.Metric[0]);
+        this.topK = sorted.values().stream().mapToInt(Integer::intValue).toArray();
+        this.historyCapacity = historyCapacity;
+        this.strongRules = strongRules;
+        this.alerts = alerts;
+        this.pool = pool;
+    }
+
+    Result run(List<Input> inputs) {
+        long startNanos = System.nanoTime();
+        strongRules.reloadIfChanged();
+        // 回放从头计算冷却时间；线上已触发过的一次性提醒重新启用，用户手动关闭的保持关闭
+        for (BinanceCombinedServer.PriceAlert alert : alerts) {
+            if (alert.isTriggered)
+                alert.enabled = true;
+            alert.isTriggered = false;
+            alert.lastTriggerTime = 0;
+        }
+        AlertIndex index = AlertIndex.build(alerts);
+
+        Map<String, double[]> targets = new HashMap<>();
+        for (BinanceCombinedServer.PriceAlert alert : alerts) {
+            if (!alert.enabled || !"price_reached".equals(alert.type) || alert.targetPrice == null)
+                continue;
+            double[] arr = targets.get(alert.symbol);
+            arr = arr == null ? new double[1] : Arrays.copyOf(arr, arr.length + 1);
+            arr[arr.length - 1] = alert.targetPrice.doubleValue();
+            targets.put(alert.symbol, arr);
+        }
+        for (double[] arr : targets.values())
+            Arrays.sort(arr);
+
+        int n = inputs.size();
+        String[] symbols = new String[n];
+        Track[] tracks = new Track[n];
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (int s = 0; s < n; s++) {
+            Input input = inputs.get(s);
+            symbols[s] = input.symbol;
+            tracks[s] = new Track(s, input, targets.get(input.symbol), historyCapacity, windowLengths);
+            if (!input.klines.isEmpty()) {
+                first = Math.min(first, input.klines.openTime[0]);
+                last = Math.max(last, input.klines.openTime[input.klines.size - 1]);
+            }
+        }
+        if (first > last)
+            return new Result(n, 0, 0, 0, 0, System.nanoTime() - startNanos, Collections.emptyList(),
+                    Collections.emptyMap());
+
+        long start = first - Math.floorMod(first, KLINE_INTERVAL_MS); // 对齐到 5m 整点
+        long steps = (last - start) / KLINE_INTERVAL_MS + 1;
+        RankingEngine.Snapshot[] snaps = new RankingEngine.Snapshot[(int) Math.min(BLOCK_STEPS, steps)];
+        for (int i = 0; i < snaps.length; i++)
+            snaps[i] = new RankingEngine.Snapshot(symbols, intervals.length);
+        int[][][] rankedSteps = new int[intervals.length][metrics.length][n];
+
+        for (long b = 0; b < steps; b += BLOCK_STEPS) {
+            int len = (int) Math.min(BLOCK_STEPS, steps - b);
+            long blockStart = start + b * KLINE_INTERVAL_MS;
+            // 第一步：按币种并行推进本块
+            pool.submit(() -> IntStream.range(0, n).parallel()
+                    .forEach(s -> advance(tracks[s], index, blockStart, len, snaps))).join();
+            // 第二步：按 周期 × 指标 并行排行
+            pool.submit(() -> IntStream.range(0, intervals.length * metrics.length).parallel().forEach(task -> {
+                int w = task / metrics.length, m = task % metrics.length;
+                double[] values = new double[n];
+                int[] counts = rankedSteps[w][m];
+                for (int i = 0; i < len; i++) {
+                    for (int s : RankingEngine.top(snaps[i], w, metrics[m], topK[m], values))
+                        counts[s]++;
+                }
+            })).join();
+        }
+
+        long candles = 0;
+        List<Event> events = new ArrayList<>();
+        for (Track track : tracks) {
+            candles += track.cursor;
+            events.addAll(track.events);
+        }
+        events.sort(Comparator.comparingLong(e -> e.time)); // 稳定排序，同一时间保持币种顺序
+        return new Result(n, steps, candles, start, start + (steps - 1) * KLINE_INTERVAL_MS,
+                System.nanoTime() - startNanos, events, topRanked(symbols, rankedSteps));
+    }
+
+    // ------------------- 单个币种 -------------------
+
+    private void advance(Track track, AlertIndex index, long blockStart, int len, RankingEngine.Snapshot[] snaps) {
+        KlineBatch k = track.klines;
+        CandleSeries series = track.series;
+        WindowAggregator windows = series.windows();
+        int s = track.index;
+        for (int i = 0; i < len; i++) {
+            long t = blockStart + i * KLINE_INTERVAL_MS;
+            long end = t + KLINE_INTERVAL_MS;
+            boolean updated = false;
+            while (track.cursor < k.size && k.openTime[track.cursor] < end) {
+                int c = track.cursor++;
+                updated |= series.update(k.openTime[c], k.open[c], k.high[c], k.low[c], k.close[c], k.volume[c]);
+            }
+
+            if (updated) {
+                // 回放中每根 K 线都已收盘，命中时间记为收盘时刻
+                String rule = strongRules.evaluate(series);
+                if (rule != null && !rule.equals(track.rule)) {
+                    Event e = new Event(end, "strong", track.symbol);
+                    e.rule = rule;
+                    e.price = BigDecimal.valueOf(series.close(series.size() - 1));
+                    track.events.add(e);
+                }
+                track.rule = rule;
+            }
+            if (track.targets != null) {
+                if (track.ticks != null) {
+                    Ticks ticks = track.ticks;
+                    while (track.tickCursor < ticks.size && ticks.time[track.tickCursor] < end) {
+                        int j = track.tickCursor++;
+                        checkPrice(track, index, ticks.price[j], ticks.time[j]);
+                    }
+                } else if (updated) {
+                    int last = series.size() - 1;
+                    double open = series.open(last), close = series.close(last);
+                    boolean up = close >= open;
+                    long quarter = KLINE_INTERVAL_MS / 4;
+                    checkPrice(track, index, open, t);
+                    checkPrice(track, index, up ? series.low(last) : series.high(last), t + quarter);
+                    checkPrice(track, index, up ? series.high(last) : series.low(last), t + 2 * quarter);
+                    checkPrice(track, index, close, t + 3 * quarter);
+                }
+            }
+
+            RankingEngine.Snapshot snap = snaps[i];
+            for (int w = 0; w < intervals.length; w++) {
+                // 该步没有 K 线的币种（尚未上市、已下架或数据缺口）不参与排行，与线上拉取失败时一致
+                if (!updated || !windows.ready(w)) {
+                    snap.open[w][s] = Double.NaN;
+                    continue;
+                }
+                snap.open[w][s] = windows.open(w);
+                snap.high[w][s] = windows.high(w);
+                snap.low[w][s] = windows.low(w);
+                snap.close[w][s] = windows.close();
+            }
+        }
+    }
+
+    // 与 checkPriceCrossing 相同：只访问被穿越的目标价，冷却时间内不重复触发，一次性提醒触发后禁用
+    private static void checkPrice(Track track, AlertIndex index, double price, long now) {
+        double lastPrice = track.lastPrice;
+        track.lastPrice = price;
+        if (Double.isNaN(lastPrice) || lastPrice == price)
+            return;
+        // 先在 double 上排除没有经过任何目标价的变动（舍入是单调的，不会漏掉真正的穿越），大部分价格点不需要创建 BigDecimal
+        int i = Arrays.binarySearch(track.targets, Math.min(lastPrice, price));
+        if (i < 0)
+            i = -i - 1;
+        if (i == track.targets.length || track.targets[i] > Math.max(lastPrice, price))
+            return;
+        BigDecimal current = BigDecimal.valueOf(price);
+        for (BinanceCombinedServer.PriceAlert alert : index.crossed(track.symbol, BigDecimal.valueOf(lastPrice),
+                current)) {
+            if (!AlertIndex.ready(alert, now))
+                continue;
+            AlertIndex.markTriggered(alert, now);
+            Event e = new Event(now, "alert", track.symbol);
+            e.alertId = alert.id;
+            e.target = alert.targetPrice;
+            e.price = current;
+            track.events.add(e);
+        }
+    }
+
+    // ------------------- 上榜统计 -------------------
+
+    private Map<String, Map<String, List<Ranked>>> topRanked(String[] symbols, int[][][] rankedSteps) {
+        Map<String, Map<String, List<Ranked>>> result = new LinkedHashMap<>();
+        for (int w = 0; w < intervals.length; w++) {
+            Map<String, List<Ranked>> byMetric = new LinkedHashMap<>();
+            for (int m = 0; m < metrics.length; m++) {
+                int[] counts = rankedSteps[w][m];
+                List<Ranked> list = new ArrayList<>();
+                for (int s : RankingEngine.topK(Arrays.stream(counts).asDoubleStream().toArray(), TOP_RANKED_LIMIT)) {
+                    if (counts[s] > 0)
+                        list.add(new Ranked(symbols[s], counts[s]));
+                }
+                byMetric.put(metrics[m].key, list);
+            }
+            result.put(intervals[w], byMetric);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,311 @@
+package org.example;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按币安请求权重调度 REST 请求。
+ * <ul>
+ * <li>令牌桶：容量为每分钟权重上限，按秒匀速回填；以响应头 {@code X-MBX-USED-WEIGHT-1M} 校准</li>
+ * <li>优先级：提醒/持仓（HIGH）先于普通接口（NORMAL），批量 K 线（LOW）最后</li>
+ * <li>自适应并发：已用权重偏高或遇到 429 时并发减半，权重宽裕时逐个加回</li>
+ * <li>429/418：按 Retry-After 暂停全部请求；429 的请求在暂停后重新排队。暂停期间新提交的 HIGH/NORMAL 请求
+ * 直接以 {@link PausedException} 失败（418 的封禁可能长达数天，不能让页面和提醒线程一直等），LOW 照常排队</li>
+ * </ul>
+ * 请求在真正发出时才构建，带签名的请求排队或重试后 timestamp 仍然是新的；权重按提交时给出的未签名 URL 计算。
+ */
+final class RequestScheduler {
+
+    enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private static final String USED_WEIGHT_HEADER = "X-MBX-USED-WEIGHT-1M";
+    private static final int MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_AFTER_MS = 10 * 1000;
+    private static final double SAFE_RATIO = 0.9; // 只使用上限的 90%，给其它客户端/手工请求留余量
+
+    private final int weightLimit;
+    private final int maxConcurrency;
+    private final Metrics.HistogramFamily latency; // 按接口路径统计的网络耗时，可为 null
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Job> queue = new PriorityQueue<>();
+    private long seq = 0;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private int inFlight = 0;
+    private volatile int concurrency; // 只在 lock 内修改，concurrency() 不加锁读取
+    private long pausedUntil = 0;
+    private volatile int usedWeight = 0; // 最近一次响应头报告的已用权重
+
+    /** 限流暂停期间提交的非 LOW 请求 */
+    static final class PausedException extends IOException {
+        final long retryAfterMs;
+
+        PausedException(long retryAfterMs) {
+            super("币安限流暂停中，" + retryAfterMs + "ms 后重试");
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    private static final class Job implements Comparable<Job> {
+        final Supplier<Request> request;
+        final String path;
+        final int weight;
+        final Priority priority;
+        final PooledHttpClient.BodyParser parser;
+        final long seq;
+        final CompletableFuture<PooledHttpClient.Result> future = new CompletableFuture<>();
+        int attempts = 0;
+        long sentNanos;
+
+        Job(Supplier<Request> request, String path, int weight, Priority priority, PooledHttpClient.BodyParser parser,
+                long seq) {
+            this.request = request;
+            this.path = path;
+            this.weight = weight;
+            this.priority = priority;
+            this.parser = parser;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Job o) {
+            int c = priority.compareTo(o.priority);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    RequestScheduler(int weightLimit, int maxConcurrency) {
+        this(weightLimit, maxConcurrency, null);
+    }
+
+    /** latency 不为空时记录每个请求从发出到响应的耗时（不含排队），标签为接口路径 */
+    RequestScheduler(int weightLimit, int maxConcurrency, Metrics.HistogramFamily latency) {
+        this.weightLimit = weightLimit;
+        this.maxConcurrency = maxConcurrency;
+        this.latency = latency;
+        this.concurrency = maxConcurrency;
+        this.tokens = weightLimit * SAFE_RATIO;
+        Thread t = new Thread(this::dispatchLoop, "binance-request-scheduler");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    CompletableFuture<PooledHttpClient.Result> submit(String url, Priority priority) {
+        return submit(url, priority, null);
+    }
+
+    /** parser 不为空时成功响应直接从流中解析，结果在 {@code Result.parsed} */
+    CompletableFuture<PooledHttpClient.Result> submit(String url, Priority priority,
+            PooledHttpClient.BodyParser parser) {
+        return submit(url, () -> PooledHttpClient.request(url, Collections.emptyMap()).get().build(), priority, parser);
+    }
+
+    /** url 为不含 timestamp/signature 的请求地址，只用于计算权重和统计，request 在发出时才调用 */
+    CompletableFuture<PooledHttpClient.Result> submit(String url, Supplier<Request> request, Priority priority) {
+        return submit(url, request, priority, null);
+    }
+
+    /** 提交请求，返回的 future 在最终响应（含重试后）到达时完成 */
+    CompletableFuture<PooledHttpClient.Result> submit(String url, Supplier<Request> request, Priority priority,
+            PooledHttpClient.BodyParser parser) {
+        HttpUrl parsed = HttpUrl.get(url);
+        String path = parsed.encodedPath();
+        int weight = weightOf(path, parsed.query());
+        lock.lock();
+        try {
+            long paused = pausedUntil - System.currentTimeMillis();
+            if (paused > 0 && priority != Priority.LOW) {
+                CompletableFuture<PooledHttpClient.Result> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new PausedException(paused));
+                return failed;
+            }
+            Job job = new Job(request, path, weight, priority, parser, seq++);
+            queue.add(job);
+            changed.signalAll();
+            return job.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int usedWeight() {
+        return usedWeight;
+    }
+
+    int concurrency() {
+        return concurrency;
+    }
+
+    /** 限流暂停的剩余毫秒数，未暂停时为 0 */
+    long pausedMs() {
+        lock.lock();
+        try {
+            return Math.max(0, pausedUntil - System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ------------------- 调度 -------------------
+
+    private void dispatchLoop() {
+        while (true) {
+            Job job;
+            lock.lock();
+            try {
+                job = nextJob();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            Job running = job;
+            job.sentNanos = System.nanoTime();
+            CompletableFuture<PooledHttpClient.Result> call;
+            try {
+                call = PooledHttpClient.executeAsync(job.request.get(), job.parser);
+            } catch (RuntimeException e) {
+                call = new CompletableFuture<>();
+                call.completeExceptionally(e);
+            }
+            call.whenComplete((result, error) -> onComplete(running, result, error));
+        }
+    }
+
+    // 等到有请求可发：未暂停、并发未满、令牌足够
+    private Job nextJob() throws InterruptedException {
+        while (true) {
+            refill();
+            Job head = queue.peek();
+            long now = System.currentTimeMillis();
+            if (head == null || inFlight >= concurrency) {
+                changed.await();
+            } else if (now < pausedUntil) {
+                changed.await(pausedUntil - now, TimeUnit.MILLISECONDS);
+            } else if (tokens < head.weight) {
+                double perMs = weightLimit * SAFE_RATIO / 60000.0;
+                changed.await(Math.max(1, (long) Math.ceil((head.weight - tokens) / perMs)), TimeUnit.MILLISECONDS);
+            } else {
+                queue.poll();
+                tokens -= head.weight;
+                inFlight++;
+                head.attempts++;
+                return head;
+            }
+        }
+    }
+
+    private void refill() {
+        long nowNanos = System.nanoTime();
+        double capacity = weightLimit * SAFE_RATIO;
+        tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) / 1e9 * capacity / 60.0);
+        lastRefillNanos = nowNanos;
+    }
+
+    private void onComplete(Job job, PooledHttpClient.Result result, Throwable error) {
+        if (latency != null)
+            latency.labels(job.path).observeSince(job.sentNanos);
+        boolean retry = false;
+        lock.lock();
+        try {
+            inFlight--;
+            if (result != null) {
+                String used = result.headers.get(USED_WEIGHT_HEADER);
+                if (used != null && !used.trim().isEmpty()) {
+                    usedWeight = Integer.parseInt(used.trim());
+                    // 以服务端统计为准：本地估算偏乐观时下调令牌
+                    tokens = Math.min(tokens, weightLimit * SAFE_RATIO - usedWeight);
+                }
+                if (result.code == 429 || result.code == 418) {
+                    long retryAfter = retryAfterMs(result);
+                    pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + retryAfter);
+                    concurrency = Math.max(1, concurrency / 2);
+                    System.err.println("[请求调度] 触发限流 HTTP " + result.code + "，暂停 " + retryAfter + "ms，并发降为 "
+                            + concurrency);
+                    // 418 表示 IP 已被封禁，不再重试
+                    retry = result.code == 429 && job.attempts < MAX_RETRIES;
+                } else if (usedWeight > weightLimit * 0.8) {
+                    concurrency = Math.max(1, concurrency / 2);
+                } else if (usedWeight < weightLimit * 0.5 && concurrency < maxConcurrency) {
+                    concurrency++;
+                }
+            }
+            if (retry)
+                queue.add(job);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (retry)
+            return;
+        if (error != null)
+            job.future.completeExceptionally(error);
+        else
+            job.future.complete(result);
+    }
+
+    private static long retryAfterMs(PooledHttpClient.Result result) {
+        String value = result.headers.get("Retry-After");
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim()) * 1000;
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return DEFAULT_RETRY_AFTER_MS;
+    }
+
+    // ------------------- 接口权重 -------------------
+
+    /** 币安合约 REST 接口的请求权重（参考官方文档，未知接口按 1 计算） */
+    static int weightOf(String path, String query) {
+        String q = query == null ? "" : query;
+        boolean hasSymbol = q.contains("symbol=");
+        if (path.endsWith("/klines")) {
+            int limit = 500;
+            int idx = q.indexOf("limit=");
+            if (idx >= 0) {
+                int end = q.indexOf('&', idx);
+                limit = Integer.parseInt(q.substring(idx + 6, end < 0 ? q.length() : end));
+            }
+            if (limit < 100)
+                return 1;
+            if (limit < 500)
+                return 2;
+            if (limit <= 1000)
+                return 5;
+            return 10;
+        }
+        if (path.endsWith("/ticker/price"))
+            return hasSymbol ? 1 : 2;
+        if (path.endsWith("/premiumIndex"))
+            return hasSymbol ? 1 : 10;
+        if (path.endsWith("/positionRisk"))
+            return 5;
+        if (path.endsWith("/leverageBracket"))
+            return hasSymbol ? 1 : 40;
+        return 1;
+    }
+}
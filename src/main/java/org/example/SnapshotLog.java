@@ -0,0 +1,158 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * 快照 + 只追加日志的文件存储，供 {@link AlertPersistence} 和 {@link DcaStore} 共用。
+ * <p>
+ * <ul>
+ * <li>快照先写临时文件再原子重命名，进程中途退出不会留下半个文件；替换后删除已经并入快照的日志</li>
+ * <li>快照之后第一次追加时先写一行头 {@code {"snapshot":<快照 ETag>,"version":<快照版本>}}，
+ * 加载时只回放头与当前快照一致的日志段。压缩时快照已经替换、日志还没来得及删除，旧日志段的头对不上新快照，不会被重复回放</li>
+ * <li>写到一半退出或写入失败留下的残行在加载时忽略，下次追加先补一个换行，不会和新的一行粘在一起</li>
+ * </ul>
+ * 日志每行一个 JSON 对象，内容由调用方决定。不做同步，由调用方在自己的锁内调用。
+ */
+final class SnapshotLog {
+
+    /** 回放一条日志，返回是否计入日志条数；抛出异常表示该行无法应用 */
+    interface Replay {
+        boolean apply(JsonObject entry) throws Exception;
+    }
+
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final String name;
+    private final Gson gson = new Gson();
+    private String base = ""; // 当前快照的 ETag，没有快照时为空
+    private long baseVersion = 0;
+    private boolean headerWritten = false; // 日志末尾是当前快照的日志段
+    private boolean brokenTail = false; // 日志最后一行不完整
+    private int entries = 0;
+
+    SnapshotLog(Path snapshotPath, String name) {
+        this.snapshotPath = snapshotPath;
+        this.logPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".log");
+        this.name = name;
+    }
+
+    /** 当前日志段中的条数 */
+    int entries() {
+        return entries;
+    }
+
+    /** 当前快照的版本（日志头中记录的，调用方不使用版本时为 0），回放时可用于跳过已并入快照的条目 */
+    long snapshotVersion() {
+        return baseVersion;
+    }
+
+    // ------------------- 加载 -------------------
+
+    /** 读取快照，不存在时返回 null */
+    byte[] readSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            base = "";
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        base = JsonSnapshot.etag(bytes);
+        return bytes;
+    }
+
+    /** 在 {@link #readSnapshot} 之后调用，按顺序回放属于当前快照的日志条目 */
+    void replay(Replay replay) throws IOException {
+        entries = 0;
+        baseVersion = 0;
+        headerWritten = false;
+        brokenTail = false;
+        if (!Files.exists(logPath))
+            return;
+        String text = new String(Files.readAllBytes(logPath), StandardCharsets.UTF_8);
+        brokenTail = !text.isEmpty() && !text.endsWith("\n");
+        boolean active = true; // 没有头的日志（旧格式）全部回放
+        int skipped = 0;
+        for (String line : text.split("\n")) {
+            if (line.isEmpty())
+                continue;
+            JsonObject entry;
+            try {
+                entry = gson.fromJson(line, JsonObject.class);
+            } catch (JsonParseException e) {
+                entry = null;
+            }
+            if (entry == null) {
+                skipped++; // 写到一半退出留下的残行
+                continue;
+            }
+            if (entry.has("snapshot")) {
+                active = base.equals(entry.get("snapshot").getAsString());
+                baseVersion = active && entry.has("version") ? entry.get("version").getAsLong() : 0;
+                headerWritten = active;
+                continue;
+            }
+            if (!active)
+                continue;
+            headerWritten = true;
+            try {
+                if (replay.apply(entry))
+                    entries++;
+            } catch (Exception e) {
+                skipped++;
+            }
+        }
+        if (skipped > 0)
+            System.err.println("⚠️ " + name + "变更日志中有 " + skipped + " 行无法应用，已忽略");
+    }
+
+    // ------------------- 写入 -------------------
+
+    /** 追加若干行（每行以换行结尾），count 为其中的条目数 */
+    void append(String lines, int count) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (brokenTail)
+            sb.append('\n');
+        if (!headerWritten) {
+            JsonObject header = new JsonObject();
+            header.addProperty("snapshot", base);
+            header.addProperty("version", baseVersion);
+            sb.append(gson.toJson(header)).append('\n');
+        }
+        sb.append(lines);
+        try (Writer out = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+            out.write(sb.toString());
+        } catch (IOException e) {
+            brokenTail = true;
+            throw e;
+        }
+        brokenTail = false;
+        headerWritten = true;
+        entries += count;
+    }
+
+    /** 原子替换快照并开始新的日志段，version 为快照对应的版本（不使用版本时传 0） */
+    void writeSnapshot(byte[] content, long version) throws IOException {
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        Files.write(tmp, content);
+        try {
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // 快照已经替换：即使下面删除日志失败，之后追加的条目也会写在新的头后面
+        base = JsonSnapshot.etag(content);
+        baseVersion = version;
+        headerWritten = false;
+        entries = 0;
+        Files.deleteIfExists(logPath);
+        brokenTail = false;
+        System.out.println(name + "已保存至文件");
+    }
+}
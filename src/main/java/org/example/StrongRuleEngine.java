@@ -0,0 +1,361 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 可配置的强势币筛选规则。
+ * <p>
+ * 规则从 JSON 文件加载（文件不存在时使用 {@link #DEFAULT_RULES}，与原来写死的两组条件相同），文件修改后下一次刷新自动生效：
+ *
+ * <pre>
+ * {"rules":[
+ *   {"name":"trend","window":6,"all":[{"metric":"posRatio","op":"&gt;=","value":0.7},
+ *                                     {"metric":"cumChange","op":"&gt;=","value":9}]},
+ *   ...]}
+ * </pre>
+ *
+ * 规则按顺序匹配，命中第一条即为强势币并记录规则名。window 为 5m K 线根数或周期字符串（如 "1d"），
+ * 指标都基于最近 window 根 5m K 线；超过 240m 且 rank_intervals 中有相同长度的周期时改用该周期的分层汇总（此时没有 volumeRatio）：
+ * <ul>
+ * <li>posRatio：(当前价 - 首根开盘) / (最高价 - 首根开盘)</li>
+ * <li>cumChange：相对首根开盘的累计涨幅 %</li>
+ * <li>lastChange：当前 K 线涨幅 %</li>
+ * <li>volumeRatio：当前成交量 / 之前 window-1 根的最大成交量</li>
+ * <li>amplitude：区间振幅 %，(最高价 - 最低价) / 首根开盘</li>
+ * </ul>
+ * 规则编译成 (窗口, 指标, 比较, 阈值) 的数组，每个币种每个不同窗口只扫描一次 K 线计算全部指标，规则再多也只是比较数值；
+ * 币种较多时在 ForkJoinPool 上并行计算，K 线版本号和规则都没有变化的币种直接复用上次的结果。
+ */
+final class StrongRuleEngine {
+
+    static final String DEFAULT_RULES = "{\"rules\":["
+            + "{\"name\":\"trend\",\"window\":6,\"all\":["
+            + "{\"metric\":\"posRatio\",\"op\":\">=\",\"value\":0.7},"
+            + "{\"metric\":\"cumChange\",\"op\":\">=\",\"value\":9}]},"
+            + "{\"name\":\"volume_surge\",\"window\":6,\"all\":["
+            + "{\"metric\":\"volumeRatio\",\"op\":\">=\",\"value\":4},"
+            + "{\"metric\":\"lastChange\",\"op\":\">=\",\"value\":5}]}]}";
+
+    /** 规则可用的指标 */
+    enum Metric {
+        POS_RATIO("posRatio"),
+        CUM_CHANGE("cumChange"),
+        LAST_CHANGE("lastChange"),
+        VOLUME_RATIO("volumeRatio"),
+        AMPLITUDE("amplitude");
+
+        final String key;
+
+        Metric(String key) {
+            this.key = key;
+        }
+
+        static Metric of(String key) {
+            for (Metric m : values()) {
+                if (m.key.equals(key))
+                    return m;
+            }
+            throw new JsonParseException("未知的指标: " + key);
+        }
+    }
+
+    /** 一条命中结果 */
+    static final class Match {
+        final String symbol;
+        final String rule;
+
+        Match(String symbol, String rule) {
+            this.symbol = symbol;
+            this.rule = rule;
+        }
+    }
+
+    // ------------------- 编译后的规则 -------------------
+
+    private static final int OP_GE = 0, OP_GT = 1, OP_LE = 2, OP_LT = 3;
+    private static final int METRIC_COUNT = Metric.values().length;
+    private static final int PARALLEL_THRESHOLD = 512; // 币种数少于此值时顺序计算，并行的调度开销不划算
+
+    private static final class Rules {
+        final String[] names;
+        final int[] windows; // 规则用到的不同窗口长度
+        final int[][] value; // [规则][条件] -> 指标值下标：窗口下标 * METRIC_COUNT + 指标序号
+        final int[][] op;
+        final double[][] threshold;
+
+        Rules(String[] names, int[] windows, int[][] value, int[][] op, double[][] threshold) {
+            this.names = names;
+            this.windows = windows;
+            this.value = value;
+            this.op = op;
+            this.threshold = threshold;
+        }
+    }
+
+    // 每个币种上次的结果：K 线版本号和规则代数都未变化时复用，在 series 的锁内读写
+    private static final class Cached {
+        long version = -1;
+        int generation = -1;
+        String rule; // 未命中为 null
+    }
+
+    private final Path rulesPath;
+    private final ForkJoinPool pool;
+    private final Gson gson = new Gson();
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+    private volatile Rules rules;
+    private volatile int generation = 0;
+    private long loadedModified = Long.MIN_VALUE; // 已加载文件的修改时间，-1 表示文件不存在
+
+    StrongRuleEngine(Path rulesPath, ForkJoinPool pool) {
+        this.rulesPath = rulesPath;
+        this.pool = pool;
+        this.rules = compile(DEFAULT_RULES);
+    }
+
+    // ------------------- 加载规则 -------------------
+
+    /** 规则文件的修改时间变化时重新加载；文件格式错误时保留当前规则 */
+    synchronized void reloadIfChanged() {
+        long modified;
+        try {
+            modified = Files.exists(rulesPath) ? Files.getLastModifiedTime(rulesPath).toMillis() : -1;
+        } catch (IOException e) {
+            return;
+        }
+        if (modified == loadedModified)
+            return;
+        loadedModified = modified;
+        try {
+            String json = modified < 0 ? DEFAULT_RULES
+                    : new String(Files.readAllBytes(rulesPath), StandardCharsets.UTF_8);
+            Rules compiled = compile(json);
+            rules = compiled;
+            generation++;
+            System.out.println("强势币规则已加载：" + String.join(", ", compiled.names)
+                    + (modified < 0 ? "（默认规则）" : ""));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("❌ 强势币规则 " + rulesPath + " 无效，继续使用原规则: " + e.getMessage());
+        }
+    }
+
+    private Rules compile(String json) {
+        JsonObject root = gson.fromJson(json, JsonObject.class);
+        JsonArray arr = root == null ? null : root.getAsJsonArray("rules");
+        if (arr == null || arr.size() == 0)
+            throw new JsonParseException("缺少 rules");
+        int n = arr.size();
+        String[] names = new String[n];
+        List<Integer> windows = new ArrayList<>();
+        int[][] value = new int[n][], op = new int[n][];
+        double[][] threshold = new double[n][];
+        for (int r = 0; r < n; r++) {
+            JsonObject rule = arr.get(r).getAsJsonObject();
+            names[r] = rule.has("name") ? rule.get("name").getAsString() : "rule" + r;
+            int window = rule.has("window") ? window(names[r], rule.get("window")) : 6;
+            if (window < 2)
+                throw new JsonParseException("规则 " + names[r] + " 的 window 至少为 2");
+            if (!windows.contains(window))
+                windows.add(window);
+            JsonArray all = rule.getAsJsonArray("all");
+            if (all == null || all.size() == 0)
+                throw new JsonParseException("规则 " + names[r] + " 缺少条件 all");
+            int c = all.size();
+            value[r] = new int[c];
+            op[r] = new int[c];
+            threshold[r] = new double[c];
+            for (int i = 0; i < c; i++) {
+                JsonObject cond = all.get(i).getAsJsonObject();
+                value[r][i] = windows.indexOf(window) * METRIC_COUNT
+                        + Metric.of(cond.get("metric").getAsString()).ordinal();
+                op[r][i] = op(cond.get("op").getAsString());
+                threshold[r][i] = cond.get("value").getAsDouble();
+            }
+        }
+        int[] w = new int[windows.size()];
+        for (int i = 0; i < w.length; i++)
+            w[i] = windows.get(i);
+        return new Rules(names, w, value, op, threshold);
+    }
+
+    // window 可以是 5m K 线根数，也可以是周期字符串（例如 "1d"）
+    private static int window(String name, JsonElement window) {
+        if (window.isJsonPrimitive() && window.getAsJsonPrimitive().isNumber())
+            return window.getAsInt();
+        try {
+            return RankingEngine.windowLength(window.getAsString());
+        } catch (RuntimeException e) {
+            throw new JsonParseException("规则 " + name + " 的 window 无效: " + window);
+        }
+    }
+
+    private static int op(String op) {
+        switch (op) {
+            case ">=":
+                return OP_GE;
+            case ">":
+                return OP_GT;
+            case "<=":
+                return OP_LE;
+            case "<":
+                return OP_LT;
+            default:
+                throw new JsonParseException("不支持的比较: " + op);
+        }
+    }
+
+    // ------------------- 筛选 -------------------
+
+    /** 按 symbols 的顺序返回命中的币种 */
+    List<Match> evaluate(List<String> symbols, Map<String, CandleSeries> series) {
+        reloadIfChanged();
+        Rules current = rules;
+        int gen = generation;
+        String[] arr = symbols.toArray(new String[0]);
+        String[] matched = new String[arr.length];
+        if (arr.length >= PARALLEL_THRESHOLD && pool.getParallelism() > 1) {
+            pool.submit(() -> IntStream.range(0, arr.length).parallel()
+                    .forEach(s -> matched[s] = evaluate(arr[s], series.get(arr[s]), current, gen))).join();
+        } else {
+            for (int s = 0; s < arr.length; s++)
+                matched[s] = evaluate(arr[s], series.get(arr[s]), current, gen);
+        }
+
+        List<Match> result = new ArrayList<>();
+        for (int s = 0; s < arr.length; s++) {
+            if (matched[s] != null)
+                result.add(new Match(arr[s], matched[s]));
+        }
+        if (cache.size() > arr.length)
+            cache.keySet().retainAll(new HashSet<>(symbols));
+        return result;
+    }
+
+    private String evaluate(String symbol, CandleSeries series, Rules current, int gen) {
+        if (series == null)
+            return null;
+        Cached cached = cache.get(symbol);
+        if (cached == null)
+            cached = cache.computeIfAbsent(symbol, k -> new Cached());
+        synchronized (series) {
+            long version = series.version();
+            if (cached.version == version && cached.generation == gen)
+                return cached.rule;
+            String rule = match(current, series);
+            if (rule != null && !rule.equals(cached.rule))
+                System.out.println("强势币：" + symbol + "，规则：" + rule); // 只在新命中时打印
+            cached.version = version;
+            cached.generation = gen;
+            cached.rule = rule;
+            return rule;
+        }
+    }
+
+    /** 不经过缓存直接判断一个币种（离线回放逐根 K 线调用），不打印日志；调用方需持有 series 的锁或独占 series */
+    String evaluate(CandleSeries series) {
+        return match(rules, series);
+    }
+
+    private static String match(Rules current, CandleSeries series) {
+        double[] values = new double[current.windows.length * METRIC_COUNT];
+        for (int w = 0; w < current.windows.length; w++)
+            metrics(series, current.windows[w], values, w * METRIC_COUNT);
+        return match(current, values);
+    }
+
+    private static String match(Rules current, double[] values) {
+        for (int r = 0; r < current.names.length; r++) {
+            boolean ok = true;
+            int[] value = current.value[r];
+            for (int i = 0; i < value.length && ok; i++) {
+                double x = values[value[i]]; // K 线数量不足该窗口时为 NaN，任何比较都不成立
+                double t = current.threshold[r][i];
+                switch (current.op[r][i]) {
+                    case OP_GE:
+                        ok = x >= t;
+                        break;
+                    case OP_GT:
+                        ok = x > t;
+                        break;
+                    case OP_LE:
+                        ok = x <= t;
+                        break;
+                    default:
+                        ok = x < t;
+                }
+            }
+            if (ok)
+                return current.names[r];
+        }
+        return null;
+    }
+
+    /**
+     * 一次扫描最近 window 根 K 线，把全部指标写入 out[offset, offset + METRIC_COUNT)，K 线不足时写入 NaN；
+     * 调用方需持有 series 的锁
+     */
+    static void metrics(CandleSeries series, int window, double[] out, int offset) {
+        if (window > WindowAggregator.BASE_WINDOW_LIMIT && rollupMetrics(series, window, out, offset))
+            return;
+        if (series.size() < window) {
+            Arrays.fill(out, offset, offset + METRIC_COUNT, Double.NaN);
+            return;
+        }
+        int last = series.size() - 1;
+        int first = series.size() - window;
+        double highMax = 0, lowMin = Double.MAX_VALUE, previousMaxVolume = 0;
+        for (int i = first; i <= last; i++) {
+            highMax = Math.max(highMax, series.high(i));
+            lowMin = Math.min(lowMin, series.low(i));
+            if (i < last)
+                previousMaxVolume = Math.max(previousMaxVolume, series.volume(i));
+        }
+        double current = series.close(last);
+        double firstOpen = series.open(first);
+        double currentOpen = series.open(last);
+
+        double denominator = highMax - firstOpen;
+        out[offset + Metric.POS_RATIO.ordinal()] = denominator > 0 ? (current - firstOpen) / denominator : 0;
+        out[offset + Metric.CUM_CHANGE.ordinal()] = firstOpen > 0 ? (current - firstOpen) * 100 / firstOpen : 0;
+        out[offset + Metric.LAST_CHANGE.ordinal()] = currentOpen > 0 ? (current - currentOpen) * 100 / currentOpen : 0;
+        out[offset + Metric.VOLUME_RATIO.ordinal()] = previousMaxVolume > 0 ? series.volume(last) / previousMaxVolume
+                : 0;
+        out[offset + Metric.AMPLITUDE.ordinal()] = firstOpen > 0 ? (highMax - lowMin) * 100 / firstOpen : 0;
+    }
+
+    // 排行周期中有同样长度的长窗口（例如 1d）时，用 WindowAggregator 的分层汇总计算，不再逐根扫描 5m K 线；
+    // 汇总不保存成交量，volumeRatio 为 NaN
+    private static boolean rollupMetrics(CandleSeries series, int window, double[] out, int offset) {
+        WindowAggregator windows = series.windows();
+        int w = windows == null ? -1 : windows.indexOf(window);
+        if (w < 0 || !windows.ready(w))
+            return false;
+        int last = series.size() - 1;
+        double firstOpen = windows.open(w);
+        double highMax = windows.high(w);
+        double lowMin = windows.low(w);
+        double current = series.close(last);
+        double currentOpen = series.open(last);
+
+        double denominator = highMax - firstOpen;
+        out[offset + Metric.POS_RATIO.ordinal()] = denominator > 0 ? (current - firstOpen) / denominator : 0;
+        out[offset + Metric.CUM_CHANGE.ordinal()] = firstOpen > 0 ? (current - firstOpen) * 100 / firstOpen : 0;
+        out[offset + Metric.LAST_CHANGE.ordinal()] = currentOpen > 0 ? (current - currentOpen) * 100 / currentOpen : 0;
+        out[offset + Metric.VOLUME_RATIO.ordinal()] = Double.NaN;
+        out[offset + Metric.AMPLITUDE.ordinal()] = firstOpen > 0 ? (highMax - lowMin) * 100 / firstOpen : 0;
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只追加的定长记录时间序列存储：每条记录为 {@code long 时间戳 + valueCount 个 double}，时间戳严格递增。
+ * <p>
+ * 数据按段文件存放（{@code <name>-<序号>.seg}），每段预分配固定条数并通过内存映射读写：
+ * <ul>
+ * <li>追加：写入当前段的下一个槽位后更新段头中的条数，写满后滚动到新段</li>
+ * <li>启动：只读取每个段的段头和首尾时间戳，O(段数)，与数据量无关</li>
+ * <li>区间查询：先二分定位段，再在段内按时间戳二分，之后顺序扫描，O(log n + 扫描长度)</li>
+ * <li>保留策略：滚动时整段删除早于「最新时间 - retentionMs」的段</li>
+ * </ul>
+ * 段头（16 字节）：魔数、valueCount、段容量、已写条数。所有方法线程安全。
+ */
+final class TimeSeriesStore implements Closeable {
+
+    private static final int MAGIC = 0x54535331; // "TSS1"
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 12;
+
+    /** 遍历记录时的回调，values 数组会被复用，需要保留时自行复制 */
+    interface RecordVisitor {
+        void accept(long timestamp, double[] values);
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long seq;
+        final int capacity;
+        final MappedByteBuffer buffer;
+        int count;
+
+        Segment(Path path, long seq, int capacity, MappedByteBuffer buffer, int count) {
+            this.path = path;
+            this.seq = seq;
+            this.capacity = capacity;
+            this.buffer = buffer;
+            this.count = count;
+        }
+    }
+
+    private final Path dir;
+    private final String name;
+    private final int valueCount;
+    private final int recordBytes;
+    private final int segmentRecords;
+    private final long retentionMs;
+    private final List<Segment> segments = new ArrayList<>(); // 按序号升序
+
+    /**
+     * @param segmentRecords 每个段的记录条数
+     * @param retentionMs    保留时长，0 表示永久保留
+     */
+    TimeSeriesStore(Path dir, String name, int valueCount, int segmentRecords, long retentionMs) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.valueCount = valueCount;
+        this.recordBytes = 8 + 8 * valueCount;
+        this.segmentRecords = segmentRecords;
+        this.retentionMs = retentionMs;
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, name + "-*.seg")) {
+            for (Path p : stream)
+                files.add(p);
+        }
+        files.sort((a, b) -> Long.compare(seqOf(a), seqOf(b)));
+        for (Path p : files) {
+            Segment segment = openSegment(p);
+            if (segment.count > 0)
+                segments.add(segment);
+            else
+                Files.deleteIfExists(p); // 空段（例如滚动后尚未写入就退出）
+        }
+    }
+
+    // ------------------- 查询 -------------------
+
+    int valueCount() {
+        return valueCount;
+    }
+
+    synchronized long size() {
+        long n = 0;
+        for (Segment s : segments)
+            n += s.count;
+        return n;
+    }
+
+    synchronized boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /** 最早记录的时间戳，没有记录时为 Long.MIN_VALUE */
+    synchronized long firstTimestamp() {
+        return segments.isEmpty() ? Long.MIN_VALUE : timestamp(segments.get(0), 0);
+    }
+
+    /** 最新记录的时间戳，没有记录时为 Long.MIN_VALUE */
+    synchronized long lastTimestamp() {
+        if (segments.isEmpty())
+            return Long.MIN_VALUE;
+        Segment last = segments.get(segments.size() - 1);
+        return timestamp(last, last.count - 1);
+    }
+
+    /** [from, to] 区间内的记录数 */
+    synchronized long count(long from, long to) {
+        long n = 0;
+        for (int s = firstSegment(from); s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            if (timestamp(segment, 0) > to)
+                break;
+            n += lowerBound(segment, to == Long.MAX_VALUE ? to : to + 1) - lowerBound(segment, from);
+        }
+        return n;
+    }
+
+    /** 按时间升序遍历 [from, to] 区间内的记录 */
+    synchronized void scan(long from, long to, RecordVisitor visitor) {
+        double[] values = new double[valueCount];
+        for (int s = firstSegment(from); s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            for (int i = lowerBound(segment, from); i < segment.count; i++) {
+                long t = timestamp(segment, i);
+                if (t > to)
+                    return;
+                int offset = HEADER_BYTES + i * recordBytes + 8;
+                for (int v = 0; v < valueCount; v++)
+                    values[v] = segment.buffer.getDouble(offset + v * 8);
+                visitor.accept(t, values);
+            }
+        }
+    }
+
+    // 第一个可能包含 >= from 记录的段
+    private int firstSegment(long from) {
+        int lo = 0, hi = segments.size() - 1, result = segments.size();
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Segment s = segments.get(mid);
+            if (timestamp(s, s.count - 1) >= from) {
+                result = mid;
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return result;
+    }
+
+    private int lowerBound(Segment segment, long t) {
+        int lo = 0, hi = segment.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamp(segment, mid) < t)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private long timestamp(Segment segment, int i) {
+        return segment.buffer.getLong(HEADER_BYTES + i * recordBytes);
+    }
+
+    // ------------------- 写入 -------------------
+
+    /**
+     * 追加一条记录，时间戳必须晚于最后一条。
+     *
+     * @return 时间戳不递增时返回 false
+     */
+    synchronized boolean append(long timestamp, double... values) throws IOException {
+        if (values.length != valueCount)
+            throw new IllegalArgumentException("需要 " + valueCount + " 个值，实际 " + values.length);
+        if (!segments.isEmpty() && timestamp <= lastTimestamp())
+            return false;
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active == null || active.count == active.capacity) {
+            if (active != null)
+                active.buffer.force(); // 写满的段不会再修改，滚动前落盘
+            active = createSegment(active == null ? 0 : active.seq + 1);
+            applyRetention(timestamp);
+            segments.add(active);
+        }
+        int offset = HEADER_BYTES + active.count * recordBytes;
+        active.buffer.putLong(offset, timestamp);
+        for (int v = 0; v < valueCount; v++)
+            active.buffer.putDouble(offset + 8 + v * 8, values[v]);
+        active.count++;
+        active.buffer.putInt(COUNT_OFFSET, active.count); // 记录写完后再更新条数
+        return true;
+    }
+
+    /** 把已映射的修改刷到磁盘 */
+    synchronized void flush() {
+        if (!segments.isEmpty())
+            segments.get(segments.size() - 1).buffer.force();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    // 滚动时整段删除早于保留期的数据（新段随后加入，始终保留）
+    private void applyRetention(long newest) throws IOException {
+        if (retentionMs <= 0)
+            return;
+        long cutoff = newest - retentionMs;
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.get(0);
+            if (timestamp(oldest, oldest.count - 1) >= cutoff)
+                break;
+            segments.remove(0);
+            // 映射在 GC 回收前仍然有效，这里只删除文件
+            Files.deleteIfExists(oldest.path);
+        }
+    }
+
+    // ------------------- 段文件 -------------------
+
+    private Segment createSegment(long seq) throws IOException {
+        Path path = dir.resolve(String.format("%s-%010d.seg", name, seq));
+        long bytes = HEADER_BYTES + (long) segmentRecords * recordBytes;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(bytes);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, valueCount);
+            buffer.putInt(8, segmentRecords);
+            buffer.putInt(COUNT_OFFSET, 0);
+            return new Segment(path, seq, segmentRecords, buffer, 0);
+        }
+    }
+
+    private Segment openSegment(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long length = file.length();
+            if (length < HEADER_BYTES)
+                throw new IOException("段文件损坏：" + path);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != valueCount)
+                throw new IOException("段文件格式不匹配：" + path);
+            int capacity = buffer.getInt(8);
+            int count = buffer.getInt(COUNT_OFFSET);
+            if (count < 0 || count > capacity || HEADER_BYTES + (long) capacity * recordBytes > length)
+                throw new IOException("段文件损坏：" + path);
+            return new Segment(path, seqOf(path), capacity, buffer, count);
+        }
+    }
+
+    private long seqOf(Path path) {
+        String file = path.getFileName().toString();
+        return Long.parseLong(file.substring(name.length() + 1, file.length() - ".seg".length()));
+    }
+}
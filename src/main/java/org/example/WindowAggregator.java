@@ -0,0 +1,203 @@
+package org.example;
+
+/**
+ * 为一个 {@link CandleSeries} 同时维护多个滑动窗口（例如 INTERVALS 中的 5m ~ 240m）的最高价/最低价。
+ * <p>
+ * 每个窗口用两个单调队列（最高价递减、最低价递增）保存窗口内<b>已收盘</b> K 线的序号，
+ * 最新一根（可能尚未收盘、会被反复替换）单独与队首比较。因此：
+ * <ul>
+ * <li>替换最新一根：O(1)，队列不变</li>
+ * <li>新增一根（上一根收盘）：每个窗口均摊 O(1)，总计 O(窗口数)</li>
+ * <li>查询任意窗口的 open/high/low/close：O(1)</li>
+ * </ul>
+ * 超过 {@link #BASE_WINDOW_LIMIT} 根的长窗口（例如 1d）不在 5m 缓冲区上维护，而是交给 {@link CandleRollup} 按更高周期汇总，
+ * 查询时的 K 线根数同样有上限，也不要求 5m 缓冲区保留整个窗口。
+ * <p>
+ * 所有方法由 CandleSeries 在持有自身锁时调用。
+ */
+final class WindowAggregator {
+
+    /** 直接在 5m 缓冲区上维护的最长窗口（240m），更长的窗口使用分层汇总 */
+    static final int BASE_WINDOW_LIMIT = 48;
+
+    private final CandleSeries series;
+    private final int[] lengths; // 每个窗口包含的 K 线根数
+    private final int[] rollupIndex; // 长窗口在 rollup 中的序号，其余为 -1
+    private final CandleRollup rollup;
+    private final long[][] maxQueue; // 环形数组实现的双端队列，存放 K 线序号
+    private final long[][] minQueue;
+    private final int[] maxHead, maxCount, minHead, minCount;
+
+    WindowAggregator(CandleSeries series, int[] lengths) {
+        this.series = series;
+        this.lengths = lengths.clone();
+        int n = lengths.length;
+        maxQueue = new long[n][];
+        minQueue = new long[n][];
+        rollupIndex = new int[n];
+        int longWindows = 0;
+        for (int w = 0; w < n; w++)
+            rollupIndex[w] = lengths[w] > BASE_WINDOW_LIMIT ? longWindows++ : -1;
+        int[] rollupLengths = new int[longWindows];
+        for (int w = 0; w < n; w++) {
+            if (rollupIndex[w] >= 0) {
+                rollupLengths[rollupIndex[w]] = lengths[w];
+                maxQueue[w] = minQueue[w] = new long[0];
+                continue;
+            }
+            // 队列中可能残留刚滑出窗口的序号，缓冲区至少要比窗口多一根
+            if (lengths[w] >= series.capacity())
+                throw new IllegalArgumentException("窗口长度 " + lengths[w] + " 超过缓冲区容量 " + series.capacity());
+            maxQueue[w] = new long[Math.max(1, lengths[w] - 1)];
+            minQueue[w] = new long[Math.max(1, lengths[w] - 1)];
+        }
+        maxHead = new int[n];
+        maxCount = new int[n];
+        minHead = new int[n];
+        minCount = new int[n];
+        rollup = longWindows == 0 ? null : new CandleRollup(rollupLengths, BASE_WINDOW_LIMIT);
+    }
+
+    int windowCount() {
+        return lengths.length;
+    }
+
+    int length(int w) {
+        return lengths[w];
+    }
+
+    /** 长度为 length 根的窗口的序号，没有时返回 -1 */
+    int indexOf(int length) {
+        for (int w = 0; w < lengths.length; w++) {
+            if (lengths[w] == length)
+                return w;
+        }
+        return -1;
+    }
+
+    /** 长窗口的分层汇总，没有长窗口时为 null */
+    CandleRollup rollup() {
+        return rollup;
+    }
+
+    /** 该窗口的 K 线是否已经足够 */
+    boolean ready(int w) {
+        if (rollupIndex[w] >= 0)
+            return series.size() > 0 && rollup.ready(rollupIndex[w], series.lastOpenTime());
+        return series.size() >= lengths[w];
+    }
+
+    // ------------------- 查询（需 ready(w)） -------------------
+
+    double open(int w) {
+        int last = series.size() - 1;
+        if (rollupIndex[w] >= 0)
+            return rollup.open(rollupIndex[w], series.openTime(last), series.open(last));
+        return series.open(series.size() - lengths[w]);
+    }
+
+    double close() {
+        return series.close(series.size() - 1);
+    }
+
+    double high(int w) {
+        double h = series.high(series.size() - 1);
+        if (rollupIndex[w] >= 0)
+            return Math.max(h, rollup.high(rollupIndex[w], series.lastOpenTime()));
+        if (maxCount[w] > 0)
+            h = Math.max(h, series.high(series.indexOfSeq(maxQueue[w][maxHead[w]])));
+        return h;
+    }
+
+    double low(int w) {
+        double l = series.low(series.size() - 1);
+        if (rollupIndex[w] >= 0)
+            return Math.min(l, rollup.low(rollupIndex[w], series.lastOpenTime()));
+        if (minCount[w] > 0)
+            l = Math.min(l, series.low(series.indexOfSeq(minQueue[w][minHead[w]])));
+        return l;
+    }
+
+    // ------------------- 维护 -------------------
+
+    /** 序号为 seq 的 K 线已收盘（其后已追加了新的一根） */
+    void onClosed(long seq) {
+        int idx = series.indexOfSeq(seq);
+        double h = series.high(idx);
+        double l = series.low(idx);
+        if (rollup != null)
+            rollup.onClosed(series.openTime(idx), series.open(idx), h, l);
+        for (int w = 0; w < lengths.length; w++) {
+            int span = lengths[w] - 1; // 窗口内已收盘 K 线的根数
+            if (span == 0 || rollupIndex[w] >= 0)
+                continue;
+            long oldest = seq - span + 1;
+            pushMax(w, seq, h, oldest);
+            pushMin(w, seq, l, oldest);
+        }
+    }
+
+    /** 历史数据被整体改写后，从缓冲区重新构建所有队列（长窗口的汇总保留，只接收比已汇总部分更新的 K 线） */
+    void rebuild() {
+        clear();
+        int size = series.size();
+        if (size < 2)
+            return;
+        long lastClosed = series.seqOf(size - 2);
+        long firstAvailable = series.seqOf(0);
+        for (int w = 0; w < lengths.length; w++) {
+            int span = lengths[w] - 1;
+            if (span == 0 || rollupIndex[w] >= 0)
+                continue;
+            long oldest = lastClosed - span + 1;
+            for (long seq = Math.max(oldest, firstAvailable); seq <= lastClosed; seq++) {
+                int idx = series.indexOfSeq(seq);
+                pushMax(w, seq, series.high(idx), oldest);
+                pushMin(w, seq, series.low(idx), oldest);
+            }
+        }
+    }
+
+    void clear() {
+        for (int w = 0; w < lengths.length; w++) {
+            maxHead[w] = maxCount[w] = 0;
+            minHead[w] = minCount[w] = 0;
+        }
+    }
+
+    private void pushMax(int w, long seq, double value, long oldest) {
+        long[] q = maxQueue[w];
+        int cap = q.length;
+        // 弹出队尾不大于新值的元素
+        while (maxCount[w] > 0) {
+            long back = q[(maxHead[w] + maxCount[w] - 1) % cap];
+            if (series.high(series.indexOfSeq(back)) > value)
+                break;
+            maxCount[w]--;
+        }
+        // 淘汰滑出窗口的队首
+        while (maxCount[w] > 0 && q[maxHead[w]] < oldest) {
+            maxHead[w] = (maxHead[w] + 1) % cap;
+            maxCount[w]--;
+        }
+        q[(maxHead[w] + maxCount[w]) % cap] = seq;
+        maxCount[w]++;
+    }
+
+    private void pushMin(int w, long seq, double value, long oldest) {
+        long[] q = minQueue[w];
+        int cap = q.length;
+        while (minCount[w] > 0) {
+            long back = q[(minHead[w] + minCount[w] - 1) % cap];
+            if (series.low(series.indexOfSeq(back)) < value)
+                break;
+            minCount[w]--;
+        }
+        while (minCount[w] > 0 && q[minHead[w]] < oldest) {
+            minHead[w] = (minHead[w] + 1) % cap;
+            minCount[w]--;
+        }
+        q[(minHead[w] + minCount[w]) % cap] = seq;
+        minCount[w]++;
+    }
+}
@@ -0,0 +1,364 @@
+package org.example.mock;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端压测：多个客户端并发请求看板的 /data（或其它接口），统计吞吐和延迟分位数，
+ * 并从 /metrics 读取压测期间一轮刷新（拉取 K 线、排行、筛选、序列化）的耗时。
+ * <p>
+ * 加上 {@code --launch} 时完全离线：在本进程内启动 {@link MockBinanceServer}，再用同一个 classpath 以子进程启动看板
+ * （binance_fapi_base、wxpusher_url 指向模拟服务，is_proxy=false，工作目录为临时目录，其余环境变量原样继承），
+ * 记录首轮刷新完成的耗时后开始压测，结束时关闭子进程。不加时压测已经在运行的看板（{@code --target}）。
+ * <p>
+ * 参数：
+ * <ul>
+ * <li>{@code --target <url>}：看板地址，默认 http://127.0.0.1:4567</li>
+ * <li>{@code --path <path>}：压测的接口，默认 /data</li>
+ * <li>{@code --clients <n>} / {@code --duration <秒>} / {@code --warmup <秒>}：并发客户端数、统计时长、预热时长（不计入统计）</li>
+ * <li>{@code --gzip}：请求 gzip 压缩的响应；{@code --etag}：带上次的 ETag 做条件请求（内容未变时为 304）</li>
+ * <li>{@code --launch}：启动模拟服务和看板，以下参数只在此时生效</li>
+ * <li>{@code --mock-port <port>}（默认 8090）、{@code --symbols <n>}（默认 300）、{@code --weight-limit <n>}（默认 2400）</li>
+ * <li>{@code --latency <ms>} / {@code --jitter <ms>}：模拟服务的响应延迟和随机抖动</li>
+ * <li>{@code --error-rate <0~1>} / {@code --rate429 <0~1>}：随机注入 503 / 429 的比例</li>
+ * <li>{@code --refresh-seconds <n>}：看板的刷新间隔（refresh_seconds），默认 5，让压测期间有足够的刷新样本</li>
+ * </ul>
+ * 例如 {@code java -cp app.jar org.example.mock.LoadGenerator --launch --symbols 500 --latency 30 --jitter 20 --clients 32}。
+ */
+public class LoadGenerator {
+
+    private static final String REFRESH_METRIC = "dashboard_refresh_duration_seconds";
+    private static final long READY_TIMEOUT_MS = 180_000;
+
+    private final String target;
+    private final String path;
+    private final int clients;
+    private final boolean gzip;
+    private final boolean etag;
+    private final OkHttpClient http;
+
+    LoadGenerator(String target, String path, int clients, boolean gzip, boolean etag) {
+        this.target = target;
+        this.path = path;
+        this.clients = clients;
+        this.gzip = gzip;
+        this.etag = etag;
+        this.http = new OkHttpClient.Builder().connectionPool(new ConnectionPool(clients, 1, TimeUnit.MINUTES))
+                .connectTimeout(5, TimeUnit.SECONDS).readTimeout(30, TimeUnit.SECONDS).build();
+    }
+
+    // ------------------- 压测 -------------------
+
+    /** 一次压测的结果 */
+    static final class Result {
+        long[] latencies = new long[0]; // 纳秒，升序
+        long bytes;
+        long errors; // 连接失败、超时
+        final Map<Integer, Long> statuses = new TreeMap<>();
+        double seconds;
+
+        long requests() {
+            return latencies.length + errors;
+        }
+
+        double percentileMillis(double p) {
+            if (latencies.length == 0)
+                return Double.NaN;
+            int i = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, i))] / 1e6;
+        }
+    }
+
+    private static final class Client extends Thread {
+        private final LoadGenerator generator;
+        private final long measureFrom; // 之前的请求只预热，不计入统计
+        private final long end;
+        private final CountDownLatch done;
+        long[] latencies = new long[1024];
+        int count;
+        long bytes;
+        long errors;
+        final Map<Integer, Long> statuses = new HashMap<>();
+        private String lastEtag;
+
+        Client(LoadGenerator generator, int index, long measureFrom, long end, CountDownLatch done) {
+            super("load-client-" + index);
+            this.generator = generator;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.done = done;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    Request.Builder request = new Request.Builder().url(generator.target + generator.path)
+                            .header("Accept-Encoding", generator.gzip ? "gzip" : "identity");
+                    if (generator.etag && lastEtag != null)
+                        request.header("If-None-Match", lastEtag);
+                    boolean measured = now >= measureFrom;
+                    try (Response response = generator.http.newCall(request.build()).execute()) {
+                        long n = 0;
+                        ResponseBody body = response.body();
+                        if (body != null) {
+                            InputStream in = body.byteStream();
+                            for (int r; (r = in.read(buffer)) > 0;)
+                                n += r;
+                        }
+                        long elapsed = System.nanoTime() - now;
+                        String tag = response.header("ETag");
+                        if (tag != null)
+                            lastEtag = tag;
+                        if (measured) {
+                            record(elapsed);
+                            bytes += n;
+                            statuses.merge(response.code(), 1L, Long::sum);
+                        }
+                    } catch (IOException e) {
+                        if (measured)
+                            errors++;
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = nanos;
+        }
+    }
+
+    Result run(int warmupSeconds, int durationSeconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        CountDownLatch done = new CountDownLatch(clients);
+        List<Client> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Client c = new Client(this, i, measureFrom, end, done);
+            threads.add(c);
+            c.start();
+        }
+        done.await();
+        Result result = new Result();
+        result.seconds = durationSeconds;
+        int total = 0;
+        for (Client c : threads)
+            total += c.count;
+        result.latencies = new long[total];
+        int offset = 0;
+        for (Client c : threads) {
+            System.arraycopy(c.latencies, 0, result.latencies, offset, c.count);
+            offset += c.count;
+            result.bytes += c.bytes;
+            result.errors += c.errors;
+            for (Map.Entry<Integer, Long> e : c.statuses.entrySet())
+                result.statuses.merge(e.getKey(), e.getValue(), Long::sum);
+        }
+        Arrays.sort(result.latencies);
+        return result;
+    }
+
+    // ------------------- 刷新耗时（/metrics） -------------------
+
+    /** Prometheus 直方图的一次读数：累积桶、总和、次数 */
+    static final class HistogramReading {
+        final TreeMap<Double, Long> buckets = new TreeMap<>(); // le -> 累积次数，+Inf 记为正无穷
+        double sum;
+        long count;
+
+        HistogramReading minus(HistogramReading before) {
+            HistogramReading delta = new HistogramReading();
+            for (Map.Entry<Double, Long> e : buckets.entrySet())
+                delta.buckets.put(e.getKey(), e.getValue() - before.buckets.getOrDefault(e.getKey(), 0L));
+            delta.sum = sum - before.sum;
+            delta.count = count - before.count;
+            return delta;
+        }
+
+        /** 分位数的上界：第一个累积次数达到 p 的桶 */
+        double percentileUpperBound(double p) {
+            for (Map.Entry<Double, Long> e : buckets.entrySet()) {
+                if (e.getValue() >= Math.ceil(p * count))
+                    return e.getKey();
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    HistogramReading scrape(String metric) throws IOException {
+        HistogramReading reading = new HistogramReading();
+        try (Response response = http.newCall(new Request.Builder().url(target + "/metrics").build()).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null)
+                throw new IOException("/metrics 返回 HTTP " + response.code());
+            for (String line : body.string().split("\n")) {
+                if (!line.startsWith(metric))
+                    continue;
+                int space = line.lastIndexOf(' ');
+                String name = line.substring(0, space);
+                double value = Double.parseDouble(line.substring(space + 1));
+                if (name.startsWith(metric + "_bucket{")) {
+                    String le = name.substring(name.indexOf("le=\"") + 4, name.lastIndexOf('"'));
+                    reading.buckets.put("+Inf".equals(le) ? Double.POSITIVE_INFINITY : Double.parseDouble(le),
+                            (long) value);
+                } else if (name.equals(metric + "_sum")) {
+                    reading.sum = value;
+                } else if (name.equals(metric + "_count")) {
+                    reading.count = (long) value;
+                }
+            }
+        }
+        return reading;
+    }
+
+    // ------------------- 离线启动 -------------------
+
+    /** 以子进程启动看板，输出写入工作目录下的 dashboard.log */
+    static Process launchDashboard(int mockPort, int refreshSeconds, Path workDir) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "org.example.BinanceCombinedServer");
+        String mock = "http://127.0.0.1:" + mockPort;
+        builder.environment().put("binance_fapi_base", mock);
+        builder.environment().put("wxpusher_url", mock + "/api/send/message/simple-push");
+        builder.environment().put("is_proxy", "false");
+        builder.environment().put("refresh_seconds", String.valueOf(refreshSeconds));
+        builder.directory(workDir.toFile());
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(workDir.resolve("dashboard.log").toFile());
+        return builder.start();
+    }
+
+    /** 轮询 /data 直到第一轮刷新产出排行榜，返回耗时（毫秒） */
+    long awaitFirstRefresh(Process dashboard) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Gson gson = new Gson();
+        while (System.currentTimeMillis() - start < READY_TIMEOUT_MS) {
+            if (dashboard != null && !dashboard.isAlive())
+                throw new IOException("看板进程已退出，退出码 " + dashboard.exitValue());
+            try (Response response = http.newCall(new Request.Builder().url(target + "/data").build()).execute()) {
+                ResponseBody body = response.body();
+                if (response.isSuccessful() && body != null) {
+                    JsonElement data = gson.fromJson(body.string(), JsonElement.class);
+                    if (data != null && data.isJsonObject()) {
+                        JsonObject first = data.getAsJsonObject().getAsJsonObject("5m");
+                        JsonArray change = first == null ? null : first.getAsJsonArray("change");
+                        if (change != null && change.size() > 0)
+                            return System.currentTimeMillis() - start;
+                    }
+                }
+            } catch (IOException e) {
+                // 尚未开始监听
+            }
+            Thread.sleep(200);
+        }
+        throw new IOException("等待首轮刷新超时（" + READY_TIMEOUT_MS / 1000 + " 秒）");
+    }
+
+    // ------------------- 入口 -------------------
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        Set<String> flags = new HashSet<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--launch") || arg.equals("--gzip") || arg.equals("--etag")) {
+                flags.add(arg);
+            } else if (arg.startsWith("--") && i + 1 < args.length) {
+                options.put(arg, args[++i]);
+            } else {
+                System.err.println("未知参数: " + arg);
+                System.exit(2);
+            }
+        }
+        int clients = Integer.parseInt(options.getOrDefault("--clients", "16"));
+        int duration = Integer.parseInt(options.getOrDefault("--duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("--warmup", "5"));
+        LoadGenerator generator = new LoadGenerator(options.getOrDefault("--target", "http://127.0.0.1:4567"),
+                options.getOrDefault("--path", "/data"), clients, flags.contains("--gzip"), flags.contains("--etag"));
+
+        MockBinanceServer mock = null;
+        Process dashboard = null;
+        try {
+            if (flags.contains("--launch")) {
+                int mockPort = Integer.parseInt(options.getOrDefault("--mock-port", "8090"));
+                mock = new MockBinanceServer(mockPort, Integer.parseInt(options.getOrDefault("--symbols", "300")),
+                        Integer.parseInt(options.getOrDefault("--weight-limit", "2400")),
+                        Double.parseDouble(options.getOrDefault("--rate429", "0")));
+                mock.setLatency(Long.parseLong(options.getOrDefault("--latency", "0")),
+                        Long.parseLong(options.getOrDefault("--jitter", "0")));
+                mock.setErrorRate(Double.parseDouble(options.getOrDefault("--error-rate", "0")));
+                mock.start();
+                Path workDir = Files.createTempDirectory("dashboard-load");
+                dashboard = launchDashboard(mockPort,
+                        Integer.parseInt(options.getOrDefault("--refresh-seconds", "5")), workDir);
+                System.out.println("[压测] 看板已启动，日志：" + workDir.resolve("dashboard.log"));
+                long firstRefresh = generator.awaitFirstRefresh(dashboard);
+                System.out.println("[压测] 首轮刷新完成（含 JVM 启动）：" + firstRefresh + "ms");
+            } else {
+                generator.awaitFirstRefresh(null);
+            }
+
+            HistogramReading before = generator.scrape(REFRESH_METRIC);
+            System.out.println("[压测] " + clients + " 个客户端请求 " + generator.path + "，预热 " + warmup + " 秒，统计 "
+                    + duration + " 秒" + (generator.gzip ? "，gzip" : "") + (generator.etag ? "，If-None-Match" : ""));
+            Result result = generator.run(warmup, duration);
+            HistogramReading refresh = generator.scrape(REFRESH_METRIC).minus(before);
+            report(result, refresh);
+            if (mock != null)
+                System.out.println("模拟服务：" + mock.stats());
+        } finally {
+            if (dashboard != null) {
+                dashboard.destroy();
+                if (!dashboard.waitFor(10, TimeUnit.SECONDS))
+                    dashboard.destroyForcibly();
+            }
+            if (mock != null)
+                mock.stop();
+        }
+        System.exit(0); // OkHttp 的连接池线程不是守护线程
+    }
+
+    private static void report(Result result, HistogramReading refresh) {
+        System.out.println(String.format("请求：%d，吞吐：%.1f 次/秒，%.2f MB/秒，连接错误：%d，状态码：%s", result.requests(),
+                result.requests() / result.seconds, result.bytes / result.seconds / 1e6, result.errors,
+                result.statuses));
+        System.out.println(String.format("延迟：p50 %.2fms，p90 %.2fms，p99 %.2fms，p99.9 %.2fms，最大 %.2fms",
+                result.percentileMillis(0.5), result.percentileMillis(0.9), result.percentileMillis(0.99),
+                result.percentileMillis(0.999), result.percentileMillis(1)));
+        if (refresh.count == 0) {
+            System.out.println("压测期间没有完成刷新（可以缩短 refresh_seconds 或延长 --duration）");
+            return;
+        }
+        System.out.println(String.format("刷新：%d 次，平均 %.0fms，p99 ≤ %s", refresh.count,
+                refresh.sum / refresh.count * 1000, formatSeconds(refresh.percentileUpperBound(0.99))));
+    }
+
+    private static String formatSeconds(double seconds) {
+        return Double.isInfinite(seconds) ? "+Inf" : String.format("%.0fms", seconds * 1000);
+    }
+}
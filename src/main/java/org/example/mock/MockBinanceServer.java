@@ -0,0 +1,469 @@
+package org.example.mock;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟的币安合约 REST 服务，用于离线验证请求调度（权重限速、429/418 退避）和端到端压测（{@link LoadGenerator}）。
+ * <p>
+ * 提供 exchangeInfo、klines、ticker/price、premiumIndex、v2/positionRisk、leverageBracket、listenKey，
+ * 价格随时间连续变化（与 K 线一致），前几个交易对带模拟持仓。按分钟统计请求权重并在响应头
+ * {@code X-MBX-USED-WEIGHT-1M} 中返回；超过上限返回 429 + Retry-After，
+ * 在 Retry-After 到期前继续大量请求则返回 418（模拟封禁 IP）。还可以按比例随机注入 429 和 503，
+ * 以及为每个请求增加固定延迟 + 随机抖动，模拟真实网络。
+ * <p>
+ * 另外提供 WxPusher 的 {@code /api/send/message/simple-push} 桩接口（不计权重），记录收到的消息，
+ * 可按比例返回 503 验证通知的重试；以 {@code wxpusher_url=http://127.0.0.1:<port>/api/send/message/simple-push} 指向这里。
+ * <p>
+ * 启动：{@code java -cp app.jar org.example.mock.MockBinanceServer [port] [symbols] [weightLimit] [inject429Rate] [wxFailRate]
+ * [latencyMs] [jitterMs] [errorRate]}，
+ * 然后以 {@code binance_fapi_base=http://127.0.0.1:<port> is_proxy=false} 启动主程序。
+ */
+public class MockBinanceServer {
+
+    private static final long KLINE_INTERVAL_MS = 5 * 60 * 1000;
+    private static final int BAN_SECONDS = 30;
+    // 429 之后仍可容忍的请求数（发出 429 时客户端已在途的请求），超过后才封禁
+    private static final int BAN_TOLERANCE = 32;
+    private static final int POSITION_COUNT = 5; // 带持仓的交易对数
+
+    private final Gson gson = new Gson();
+    private final HttpServer server;
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Double> basePrices = new ConcurrentHashMap<>();
+    private final int weightLimit;
+    private final double inject429Rate;
+    private final Random random = new Random(42);
+
+    // 当前分钟的已用权重
+    private final Object weightLock = new Object();
+    private long weightMinute = 0;
+    private int usedWeight = 0;
+    private volatile long bannedUntil = 0; // 返回 429 后 Retry-After 的截止时间
+    private final AtomicInteger ignoredBackoff = new AtomicInteger(); // Retry-After 期间收到的请求数
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger rejected429 = new AtomicInteger();
+    private final AtomicInteger rejected418 = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger wxMessages = new AtomicInteger();
+    private final AtomicInteger wxFailures = new AtomicInteger();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+    private volatile double wxFailRate = 0;
+    private volatile long latencyMs = 0;
+    private volatile long jitterMs = 0;
+    private volatile double errorRate = 0;
+
+    public MockBinanceServer(int port, int symbolCount, int weightLimit, double inject429Rate) throws IOException {
+        this.weightLimit = weightLimit;
+        this.inject429Rate = inject429Rate;
+        for (int i = 0; i < symbolCount; i++) {
+            String symbol = "MOCK" + i + "USDT";
+            symbols.add(symbol);
+            basePrices.put(symbol, 1 + random.nextDouble() * 100);
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        // 注入延迟时每个在途请求占用一个线程，线程数不设上限，避免模拟服务自身排队
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/fapi/v1/exchangeInfo", ex -> handle(ex, 1, this::exchangeInfo));
+        server.createContext("/fapi/v1/klines", ex -> handle(ex, klineWeight(query(ex).get("limit")), this::klines));
+        server.createContext("/fapi/v1/ticker/price", ex -> handle(ex, 2, this::tickerPrice));
+        server.createContext("/fapi/v1/premiumIndex",
+                ex -> handle(ex, query(ex).containsKey("symbol") ? 1 : 10, this::premiumIndex));
+        server.createContext("/fapi/v2/positionRisk", ex -> handle(ex, 5, this::positionRisk));
+        server.createContext("/fapi/v1/leverageBracket", ex -> handle(ex, 1, this::leverageBracket));
+        server.createContext("/fapi/v1/listenKey", ex -> handle(ex, 1, q -> listenKey(ex.getRequestMethod())));
+        server.createContext("/api/send/message/simple-push", this::wxPusher);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("[模拟REST] 服务已启动，端口：" + server.getAddress().getPort() + "，交易对：" + symbols.size()
+                + "，权重上限：" + weightLimit + "/分钟");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public int rejected429() {
+        return rejected429.get();
+    }
+
+    public int rejected418() {
+        return rejected418.get();
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent.get();
+    }
+
+    public int wxMessages() {
+        return wxMessages.get();
+    }
+
+    public int wxFailures() {
+        return wxFailures.get();
+    }
+
+    public int injectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /** WxPusher 桩接口返回 503 的比例 */
+    public void setWxPusherFailRate(double rate) {
+        this.wxFailRate = rate;
+    }
+
+    /** 每个币安接口请求的响应延迟：latencyMs + [0, jitterMs) 的随机抖动 */
+    public void setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+    }
+
+    /** 币安接口随机返回 503 的比例（计入权重，与真实服务一致） */
+    public void setErrorRate(double rate) {
+        this.errorRate = rate;
+    }
+
+    // ------------------- 权重与限流 -------------------
+
+    private interface Handler {
+        String handle(Map<String, String> query);
+    }
+
+    private void handle(HttpExchange ex, int weight, Handler handler) throws IOException {
+        requests.incrementAndGet();
+        int now = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(now, Math::max);
+        try {
+            long current = System.currentTimeMillis();
+            if (current < bannedUntil && ignoredBackoff.incrementAndGet() > BAN_TOLERANCE) {
+                // 收到 429 后没有等待 Retry-After 就继续大量请求
+                rejected418.incrementAndGet();
+                bannedUntil = current + BAN_SECONDS * 1000L;
+                reply(ex, 418, "{\"code\":-1003,\"msg\":\"Way too many requests; IP banned.\"}", BAN_SECONDS, 0);
+                return;
+            }
+            int used;
+            boolean overLimit;
+            synchronized (weightLock) {
+                long minute = current / 60000;
+                if (minute != weightMinute) {
+                    weightMinute = minute;
+                    usedWeight = 0;
+                }
+                usedWeight += weight;
+                used = usedWeight;
+                overLimit = usedWeight > weightLimit;
+            }
+            if (overLimit || (inject429Rate > 0 && random.nextDouble() < inject429Rate)) {
+                rejected429.incrementAndGet();
+                int retryAfter = overLimit ? (int) (60 - (current / 1000) % 60) : 1;
+                if (current >= bannedUntil)
+                    ignoredBackoff.set(0);
+                bannedUntil = Math.max(bannedUntil, current + retryAfter * 1000L);
+                reply(ex, 429, "{\"code\":-1003,\"msg\":\"Too many requests.\"}", retryAfter, used);
+                return;
+            }
+            delay();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                reply(ex, 503, "{\"code\":-1001,\"msg\":\"Internal error; unable to process your request.\"}", -1,
+                        used);
+                return;
+            }
+            reply(ex, 200, handler.handle(query(ex)), -1, used);
+        } finally {
+            concurrent.decrementAndGet();
+        }
+    }
+
+    private void delay() {
+        long ms = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs) : 0);
+        if (ms <= 0)
+            return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int klineWeight(String limit) {
+        int l = limit == null ? 500 : Integer.parseInt(limit);
+        return l < 100 ? 1 : l < 500 ? 2 : l <= 1000 ? 5 : 10;
+    }
+
+    private static void reply(HttpExchange ex, int code, String body, int retryAfter, int used) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.getResponseHeaders().set("X-MBX-USED-WEIGHT-1M", String.valueOf(used));
+        if (retryAfter >= 0)
+            ex.getResponseHeaders().set("Retry-After", String.valueOf(retryAfter));
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> map = new HashMap<>();
+        String q = ex.getRequestURI().getRawQuery();
+        if (q == null)
+            return map;
+        for (String pair : q.split("&")) {
+            int idx = pair.indexOf('=');
+            if (idx > 0)
+                map.put(pair.substring(0, idx), pair.substring(idx + 1));
+        }
+        return map;
+    }
+
+    // ------------------- 接口 -------------------
+
+    private String exchangeInfo(Map<String, String> query) {
+        JsonArray arr = new JsonArray();
+        for (String symbol : symbols) {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("symbol", symbol);
+            obj.addProperty("status", "TRADING");
+            arr.add(obj);
+        }
+        JsonObject root = new JsonObject();
+        root.add("symbols", arr);
+        return gson.toJson(root);
+    }
+
+    // 每个交易对的 5m K 线由 (symbol, openTime) 决定，重复请求结果一致，增量合并可以对上；
+    // 更高周期（15m、1h、4h、1d 等）由对应的 5m K 线汇总，与 5m 数据一致
+    private String klines(Map<String, String> query) {
+        String symbol = query.get("symbol");
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 500;
+        long interval = intervalMs(query.getOrDefault("interval", "5m"));
+        long last = System.currentTimeMillis() / interval * interval;
+        long first = last - (limit - 1) * interval;
+        if (query.containsKey("startTime"))
+            first = Math.max(first, Long.parseLong(query.get("startTime")) / interval * interval);
+        double base = basePrices.getOrDefault(symbol, 10.0);
+        StringBuilder sb = new StringBuilder("[");
+        double[] k = new double[5];
+        for (long t = first; t <= last; t += interval) {
+            double open = 0, high = 0, low = Double.MAX_VALUE, close = 0, volume = 0;
+            for (long s = t; s < t + interval && s <= System.currentTimeMillis(); s += KLINE_INTERVAL_MS) {
+                candle(symbol, base, s, k);
+                if (s == t)
+                    open = k[0];
+                high = Math.max(high, k[1]);
+                low = Math.min(low, k[2]);
+                close = k[3];
+                volume += k[4];
+            }
+            if (sb.length() > 1)
+                sb.append(',');
+            sb.append('[').append(t).append(",\"").append(open).append("\",\"").append(high).append("\",\"")
+                    .append(low).append("\",\"").append(close).append("\",\"").append(volume).append("\",")
+                    .append(t + interval - 1).append(']');
+        }
+        return sb.append(']').toString();
+    }
+
+    // 一根 5m K 线：open, high, low, close, volume
+    private static void candle(String symbol, double base, long t, double[] out) {
+        Random r = new Random(symbol.hashCode() * 31L + t);
+        double open = price(symbol, base, t);
+        double close = open * (1 + (r.nextDouble() - 0.5) * 0.02);
+        out[0] = open;
+        out[1] = Math.max(open, close) * (1 + r.nextDouble() * 0.005);
+        out[2] = Math.min(open, close) * (1 - r.nextDouble() * 0.005);
+        out[3] = close;
+        out[4] = r.nextDouble() * 10000;
+    }
+
+    // t 时刻的价格，随时间连续变化：5m K 线的开盘价、最新价和标记价格都由它决定
+    private static double price(String symbol, double base, long t) {
+        return base * (1 + Math.sin(t / 3.6e6 + symbol.hashCode()) * 0.05);
+    }
+
+    private double price(String symbol, long t) {
+        return price(symbol, basePrices.getOrDefault(symbol, 10.0), t);
+    }
+
+    private static long intervalMs(String interval) {
+        long n = Long.parseLong(interval.substring(0, interval.length() - 1));
+        switch (interval.charAt(interval.length() - 1)) {
+            case 'h':
+                return n * 3600_000;
+            case 'd':
+                return n * 86400_000;
+            case 'w':
+                return n * 7 * 86400_000;
+            default:
+                return n * 60_000;
+        }
+    }
+
+    private String tickerPrice(Map<String, String> query) {
+        long now = System.currentTimeMillis();
+        JsonArray arr = new JsonArray();
+        for (String symbol : symbols) {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("symbol", symbol);
+            obj.addProperty("price", String.valueOf(price(symbol, now)));
+            obj.addProperty("time", now);
+            arr.add(obj);
+        }
+        return gson.toJson(arr);
+    }
+
+    private String premiumIndex(Map<String, String> query) {
+        long now = System.currentTimeMillis();
+        String symbol = query.get("symbol");
+        if (symbol != null)
+            return gson.toJson(premiumIndex(symbol, now));
+        JsonArray arr = new JsonArray();
+        for (String s : symbols)
+            arr.add(premiumIndex(s, now));
+        return gson.toJson(arr);
+    }
+
+    private JsonObject premiumIndex(String symbol, long now) {
+        double mark = price(symbol, now);
+        JsonObject obj = new JsonObject();
+        obj.addProperty("symbol", symbol);
+        obj.addProperty("markPrice", String.valueOf(mark));
+        obj.addProperty("indexPrice", String.valueOf(mark * 0.9999));
+        obj.addProperty("estimatedSettlePrice", String.valueOf(mark));
+        obj.addProperty("lastFundingRate", "0.00010000");
+        obj.addProperty("interestRate", "0.00010000");
+        obj.addProperty("nextFundingTime", (now / 28_800_000 + 1) * 28_800_000);
+        obj.addProperty("time", now);
+        return obj;
+    }
+
+    // 所有交易对各一条记录（与真实接口一样大多数没有持仓），前 POSITION_COUNT 个交易对多空交替持仓，盈亏随标记价格变化
+    private String positionRisk(Map<String, String> query) {
+        long now = System.currentTimeMillis();
+        JsonArray arr = new JsonArray();
+        for (int i = 0; i < symbols.size(); i++) {
+            String symbol = symbols.get(i);
+            double entry = basePrices.get(symbol);
+            double mark = price(symbol, now);
+            double amount = i < POSITION_COUNT ? (i % 2 == 0 ? 1 : -1) * Math.round(1000 / entry) : 0;
+            JsonObject obj = new JsonObject();
+            obj.addProperty("symbol", symbol);
+            obj.addProperty("positionAmt", String.valueOf(amount));
+            obj.addProperty("entryPrice", amount == 0 ? "0.0" : String.valueOf(entry));
+            obj.addProperty("markPrice", String.valueOf(mark));
+            obj.addProperty("unRealizedProfit", String.valueOf(amount * (mark - entry)));
+            obj.addProperty("liquidationPrice", "0");
+            obj.addProperty("leverage", "10");
+            obj.addProperty("maxNotionalValue", "1000000");
+            obj.addProperty("marginType", "cross");
+            obj.addProperty("isolatedMargin", "0.00000000");
+            obj.addProperty("isAutoAddMargin", "false");
+            obj.addProperty("positionSide", "BOTH");
+            obj.addProperty("notional", String.valueOf(amount * mark));
+            obj.addProperty("isolatedWallet", "0");
+            obj.addProperty("updateTime", now);
+            arr.add(obj);
+        }
+        return gson.toJson(arr);
+    }
+
+    private String leverageBracket(Map<String, String> query) {
+        String symbol = query.get("symbol");
+        JsonArray arr = new JsonArray();
+        for (String s : symbol != null ? Collections.singletonList(symbol) : symbols) {
+            JsonArray brackets = new JsonArray();
+            double[][] tiers = { { 125, 0, 50_000, 0.004 }, { 100, 50_000, 250_000, 0.005 },
+                    { 50, 250_000, 3_000_000, 0.01 }, { 20, 3_000_000, 20_000_000, 0.025 } };
+            double cum = 0;
+            for (int i = 0; i < tiers.length; i++) {
+                if (i > 0)
+                    cum += tiers[i][1] * (tiers[i][3] - tiers[i - 1][3]);
+                JsonObject b = new JsonObject();
+                b.addProperty("bracket", i + 1);
+                b.addProperty("initialLeverage", (int) tiers[i][0]);
+                b.addProperty("notionalCap", (long) tiers[i][2]);
+                b.addProperty("notionalFloor", (long) tiers[i][1]);
+                b.addProperty("maintMarginRatio", tiers[i][3]);
+                b.addProperty("cum", cum);
+                brackets.add(b);
+            }
+            JsonObject obj = new JsonObject();
+            obj.addProperty("symbol", s);
+            obj.add("brackets", brackets);
+            arr.add(obj);
+        }
+        return gson.toJson(arr);
+    }
+
+    // POST 申请、PUT 续期、DELETE 关闭
+    private String listenKey(String method) {
+        if ("POST".equalsIgnoreCase(method))
+            return "{\"listenKey\":\"mock" + Long.toHexString(random.nextLong()) + "\"}";
+        return "{}";
+    }
+
+    // ------------------- WxPusher 桩 -------------------
+
+    private void wxPusher(HttpExchange ex) throws IOException {
+        JsonObject req;
+        try (InputStreamReader reader = new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8)) {
+            req = gson.fromJson(reader, JsonObject.class);
+        }
+        if (wxFailRate > 0 && random.nextDouble() < wxFailRate) {
+            wxFailures.incrementAndGet();
+            reply(ex, 503, "{\"code\":503,\"msg\":\"mock failure\"}", -1, 0);
+            return;
+        }
+        int n = wxMessages.incrementAndGet();
+        String summary = req != null && req.has("summary") ? req.get("summary").getAsString() : "";
+        System.out.println("[模拟WxPusher] 第 " + n + " 条: " + summary);
+        reply(ex, 200, "{\"code\":1000,\"msg\":\"处理成功\",\"success\":true}", -1, 0);
+    }
+
+    /** 一行统计摘要 */
+    public String stats() {
+        return "请求：" + requests() + "，429：" + rejected429() + "，418：" + rejected418() + "，注入 503：" + injectedErrors()
+                + "，最大并发：" + maxConcurrent() + "，WxPusher 消息：" + wxMessages() + "（失败 " + wxFailures() + "）";
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8090;
+        int symbolCount = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int weightLimit = args.length > 2 ? Integer.parseInt(args[2]) : 2400;
+        double inject429Rate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        MockBinanceServer server = new MockBinanceServer(port, symbolCount, weightLimit, inject429Rate);
+        if (args.length > 4)
+            server.setWxPusherFailRate(Double.parseDouble(args[4]));
+        if (args.length > 5)
+            server.setLatency(Long.parseLong(args[5]), args.length > 6 ? Long.parseLong(args[6]) : 0);
+        if (args.length > 7)
+            server.setErrorRate(Double.parseDouble(args[7]));
+        server.start();
+        Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(
+                () -> System.out.println("[模拟REST] " + server.stats()), 10, 10, java.util.concurrent.TimeUnit.SECONDS);
+    }
+}
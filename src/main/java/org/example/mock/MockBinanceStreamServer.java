@@ -0,0 +1,259 @@
+package org.example.mock;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地模拟的币安合约 WebSocket 行情服务，用于离线调试推送模式。
+ * <p>
+ * 支持 combined stream 的 SUBSCRIBE / UNSUBSCRIBE 协议，按固定间隔为每个已订阅的
+ * {@code <symbol>@kline_5m} 推送随机游走的 K 线。可以通过 {@link #dropAllConnections()}
+ * 模拟服务端断线，验证客户端的重连与重新订阅。
+ * <p>
+ * 另外每秒推送一次全市场数组流 {@code !ticker@arr} / {@code !markPrice@arr@1s}，
+ * 交易对与 {@link MockBinanceServer} 一致（MOCK0USDT ...），用于调试价格提醒的推送模式。
+ * <p>
+ * 启动：{@code java -cp app.jar org.example.mock.MockBinanceStreamServer [port] [pushIntervalMs] [dropEverySeconds] [symbols]}，
+ * 然后以 {@code kline_mode=ws kline_stream_url=ws://127.0.0.1:<port>/stream} 或
+ * {@code alert_mode=ws alert_stream_url=ws://127.0.0.1:<port>/stream?streams=!ticker@arr} 启动主程序。
+ */
+public class MockBinanceStreamServer extends WebSocketServer {
+
+    private static final long KLINE_INTERVAL_MS = 5 * 60 * 1000;
+    private static final long ARRAY_PUSH_INTERVAL_MS = 1000;
+    static final String TICKER_ARR = "!ticker@arr";
+    static final String MARK_PRICE_ARR = "!markPrice@arr@1s";
+
+    private final Gson gson = new Gson();
+    private final Map<WebSocket, Set<String>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, double[]> prices = new ConcurrentHashMap<>(); // symbol -> [open, high, low, close, volume]
+    private final Map<String, Long> openTimes = new ConcurrentHashMap<>();
+    private final Random random = new Random(42);
+    private final ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor();
+    private final long pushIntervalMs;
+    private final String[] arraySymbols;
+    private final double[] lastPrices; // 数组流的最新价，与 arraySymbols 一一对应
+
+    public MockBinanceStreamServer(int port, long pushIntervalMs) {
+        this(port, pushIntervalMs, 300);
+    }
+
+    public MockBinanceStreamServer(int port, long pushIntervalMs, int symbolCount) {
+        super(new InetSocketAddress(port));
+        this.pushIntervalMs = pushIntervalMs;
+        this.arraySymbols = new String[symbolCount];
+        this.lastPrices = new double[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            arraySymbols[i] = "MOCK" + i + "USDT";
+            lastPrices[i] = 1 + random.nextDouble() * 100;
+        }
+        setReuseAddr(true);
+    }
+
+    @Override
+    public void onStart() {
+        System.out.println("[模拟行情] WebSocket 服务已启动，端口：" + getPort());
+        pusher.scheduleAtFixedRate(this::pushAll, pushIntervalMs, pushIntervalMs, TimeUnit.MILLISECONDS);
+        pusher.scheduleAtFixedRate(this::pushArrays, ARRAY_PUSH_INTERVAL_MS, ARRAY_PUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        Set<String> streams = ConcurrentHashMap.newKeySet();
+        // 兼容 /stream?streams=a@kline_5m/b@kline_5m 的 URL 订阅方式
+        String resource = handshake.getResourceDescriptor();
+        int idx = resource.indexOf("streams=");
+        if (idx >= 0) {
+            streams.addAll(Arrays.asList(resource.substring(idx + "streams=".length()).split("/")));
+        }
+        subscriptions.put(conn, streams);
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        subscriptions.remove(conn);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        JsonObject req = gson.fromJson(message, JsonObject.class);
+        String method = req.has("method") ? req.get("method").getAsString() : "";
+        Set<String> streams = subscriptions.get(conn);
+        if (streams == null)
+            return;
+        if (req.has("params")) {
+            for (JsonElement p : req.getAsJsonArray("params")) {
+                if ("SUBSCRIBE".equals(method))
+                    streams.add(p.getAsString());
+                else if ("UNSUBSCRIBE".equals(method))
+                    streams.remove(p.getAsString());
+            }
+        }
+        JsonObject resp = new JsonObject();
+        resp.add("result", null);
+        resp.add("id", req.get("id"));
+        conn.send(gson.toJson(resp));
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        System.err.println("[模拟行情] 异常: " + ex.getMessage());
+    }
+
+    /** 主动断开所有客户端，模拟币安的 24 小时断线或网络抖动 */
+    public void dropAllConnections() {
+        for (WebSocket conn : new ArrayList<>(subscriptions.keySet())) {
+            conn.close(1001, "mock drop");
+        }
+    }
+
+    /** 当前所有连接订阅的 stream 总数 */
+    public int subscribedStreams() {
+        int n = 0;
+        for (Set<String> s : subscriptions.values())
+            n += s.size();
+        return n;
+    }
+
+    private void pushAll() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<WebSocket, Set<String>> e : subscriptions.entrySet()) {
+                WebSocket conn = e.getKey();
+                if (!conn.isOpen())
+                    continue;
+                for (String stream : e.getValue()) {
+                    if (stream.endsWith("@kline_5m")) {
+                        conn.send(klineEvent(stream, now));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[模拟行情] 推送失败: " + e.getMessage());
+        }
+    }
+
+    private void pushArrays() {
+        try {
+            long now = System.currentTimeMillis();
+            stepArrayPrices();
+            String ticker = null, markPrice = null;
+            for (Map.Entry<WebSocket, Set<String>> e : subscriptions.entrySet()) {
+                WebSocket conn = e.getKey();
+                if (!conn.isOpen())
+                    continue;
+                Set<String> streams = e.getValue();
+                // 同一秒内所有连接收到相同的数据，每种流只序列化一次
+                if (streams.contains(TICKER_ARR)) {
+                    if (ticker == null)
+                        ticker = arrayEvent(TICKER_ARR, "24hrTicker", "c", now);
+                    conn.send(ticker);
+                }
+                if (streams.contains(MARK_PRICE_ARR)) {
+                    if (markPrice == null)
+                        markPrice = arrayEvent(MARK_PRICE_ARR, "markPriceUpdate", "p", now);
+                    conn.send(markPrice);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[模拟行情] 推送失败: " + e.getMessage());
+        }
+    }
+
+    // 随机游走：每秒 ±0.5%
+    private synchronized void stepArrayPrices() {
+        for (int i = 0; i < lastPrices.length; i++)
+            lastPrices[i] *= 1 + (random.nextDouble() - 0.5) * 0.01;
+    }
+
+    private synchronized String arrayEvent(String stream, String eventType, String priceField, long now) {
+        JsonArray data = new JsonArray();
+        for (int i = 0; i < arraySymbols.length; i++) {
+            JsonObject obj = new JsonObject();
+            obj.addProperty("e", eventType);
+            obj.addProperty("E", now);
+            obj.addProperty("s", arraySymbols[i]);
+            obj.addProperty(priceField, String.format(Locale.ROOT, "%.4f", lastPrices[i]));
+            data.add(obj);
+        }
+        JsonObject root = new JsonObject();
+        root.addProperty("stream", stream);
+        root.add("data", data);
+        return gson.toJson(root);
+    }
+
+    private synchronized String klineEvent(String stream, long now) {
+        String symbol = stream.substring(0, stream.indexOf('@')).toUpperCase(Locale.ROOT);
+        long openTime = now - now % KLINE_INTERVAL_MS;
+        Long lastOpen = openTimes.get(symbol);
+        double[] k = prices.get(symbol);
+        boolean closed = false;
+        if (k == null || lastOpen == null || lastOpen != openTime) {
+            double start = k == null ? 1 + random.nextInt(1000) : k[3];
+            k = new double[] { start, start, start, start, 0 };
+            prices.put(symbol, k);
+            openTimes.put(symbol, openTime);
+        }
+        // 随机游走：每次 ±0.2%
+        double close = k[3] * (1 + (random.nextDouble() - 0.5) * 0.004);
+        k[1] = Math.max(k[1], close);
+        k[2] = Math.min(k[2], close);
+        k[3] = close;
+        k[4] += random.nextInt(1000);
+        if (now + pushIntervalMs >= openTime + KLINE_INTERVAL_MS) {
+            closed = true;
+        }
+
+        JsonObject kline = new JsonObject();
+        kline.addProperty("t", openTime);
+        kline.addProperty("T", openTime + KLINE_INTERVAL_MS - 1);
+        kline.addProperty("s", symbol);
+        kline.addProperty("i", "5m");
+        kline.addProperty("o", String.valueOf(k[0]));
+        kline.addProperty("c", String.valueOf(k[3]));
+        kline.addProperty("h", String.valueOf(k[1]));
+        kline.addProperty("l", String.valueOf(k[2]));
+        kline.addProperty("v", String.valueOf(k[4]));
+        kline.addProperty("x", closed);
+
+        JsonObject data = new JsonObject();
+        data.addProperty("e", "kline");
+        data.addProperty("E", now);
+        data.addProperty("s", symbol);
+        data.add("k", kline);
+
+        JsonObject root = new JsonObject();
+        root.addProperty("stream", stream);
+        root.add("data", data);
+        return gson.toJson(root);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9443;
+        long pushIntervalMs = args.length > 1 ? Long.parseLong(args[1]) : 250;
+        long dropEverySeconds = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int symbolCount = args.length > 3 ? Integer.parseInt(args[3]) : 300;
+
+        MockBinanceStreamServer server = new MockBinanceStreamServer(port, pushIntervalMs, symbolCount);
+        server.start();
+        if (dropEverySeconds > 0) {
+            Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(() -> {
+                System.out.println("[模拟行情] 主动断开所有连接，当前订阅数：" + server.subscribedStreams());
+                server.dropAllConnections();
+            }, dropEverySeconds, dropEverySeconds, TimeUnit.SECONDS);
+        }
+    }
+}